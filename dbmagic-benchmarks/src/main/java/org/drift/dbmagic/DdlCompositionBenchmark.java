@@ -0,0 +1,76 @@
+package org.drift.dbmagic;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * DDL composition of whole models, per dialect. Lives in the core package to reach the package-private
+ * composition methods of {@link SchemaCreator}; none of them touches the database.
+ *
+ * @author Dima Frid
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DdlCompositionBenchmark {
+
+    @Param({"POSTGRESQL", "ORACLE", "H2"})
+    public DBType dialect;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int tables;
+
+    private SchemaCreator schemaCreator;
+
+    private List<TableDescription> model;
+
+    @Setup
+    public void setup() {
+        schemaCreator = new SchemaCreator(null, dialect);
+        model = SyntheticModel.tables(tables);
+    }
+
+    @Benchmark
+    public void composeTableCreationSql(Blackhole blackhole) {
+        for (TableDescription table : model) {
+            blackhole.consume(schemaCreator.composeTableCreationSql(table));
+        }
+    }
+
+    @Benchmark
+    public void composeColumnSQL(Blackhole blackhole) {
+        for (TableDescription table : model) {
+            String tableName = table.getFullTableName();
+            for (ColumnDescription column : table.getColumns().values()) {
+                blackhole.consume(schemaCreator.composeColumnSQL(tableName, column));
+            }
+        }
+    }
+
+    @Benchmark
+    public void composeIndexCreationSql(Blackhole blackhole) {
+        for (TableDescription table : model) {
+            String tableName = table.getFullTableName();
+            for (IndexDescription index : table.getIndexes()) {
+                String indexName = SchemaUtil.composeIndexName(index, table.getTableName());
+                blackhole.consume(schemaCreator.composeIndexCreationSql(index, indexName, tableName, false, 0, false));
+            }
+        }
+    }
+
+    @Benchmark
+    public void composeIndexName(Blackhole blackhole) {
+        for (TableDescription table : model) {
+            String tableName = table.getTableName();
+            for (IndexDescription index : table.getIndexes()) {
+                blackhole.consume(SchemaUtil.composeIndexName(index, tableName));
+            }
+        }
+    }
+}
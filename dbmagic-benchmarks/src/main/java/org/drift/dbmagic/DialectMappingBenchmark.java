@@ -0,0 +1,83 @@
+package org.drift.dbmagic;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Type and size mapping of every column of whole models, per dialect.
+ *
+ * @author Dima Frid
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DialectMappingBenchmark {
+
+    @Param({"POSTGRESQL", "ORACLE", "H2"})
+    public DBType dialectType;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int tables;
+
+    private Dialect dialect;
+
+    private List<TableDescription> model;
+
+    @Setup
+    public void setup() {
+        dialect = DialectFactory.getDialect(dialectType.toString());
+        model = SyntheticModel.tables(tables);
+    }
+
+    @Benchmark
+    public void toNativeType(Blackhole blackhole) {
+        for (TableDescription table : model) {
+            for (ColumnDescription column : table.getColumns().values()) {
+                blackhole.consume(dialect.toNativeType(column.getType()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void toMetadataType(Blackhole blackhole) {
+        for (TableDescription table : model) {
+            for (ColumnDescription column : table.getColumns().values()) {
+                blackhole.consume(dialect.toMetadataType(column.getType()));
+            }
+        }
+    }
+
+    @Benchmark
+    public void columnSize(Blackhole blackhole) {
+        for (TableDescription table : model) {
+            String tableName = table.getTableName();
+            for (ColumnDescription column : table.getColumns().values()) {
+                Integer size = column.getSize();
+                switch (column.getType()) {
+                    case VARCHAR:
+                        blackhole.consume(dialect.getVarcharColumnSize(tableName, column.getName(), size));
+                        break;
+                    case INTEGER:
+                        blackhole.consume(dialect.getIntegerColumnSize(size));
+                        break;
+                    case LONG:
+                    case ID:
+                        blackhole.consume(dialect.getLongColumnSize(size));
+                        break;
+                    case VARBINARY:
+                        blackhole.consume(dialect.getVarbinaryColumnSize(size));
+                        break;
+                    case BOOLEAN:
+                        blackhole.consume(dialect.getBooleanColumnSize());
+                        break;
+                }
+            }
+        }
+    }
+}
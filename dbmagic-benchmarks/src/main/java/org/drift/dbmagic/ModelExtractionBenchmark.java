@@ -0,0 +1,153 @@
+package org.drift.dbmagic;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.persistence.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of table descriptions from JPA entities: models of the given number of entity classes, drawn from
+ * a field-access and a property-access entity, each one defined anew by a class loader of its own so that the
+ * cache sees as many distinct classes as there are tables. {@code cached} is what callers get; {@code uncached} is
+ * the reflective extraction the cache spares.
+ *
+ * @author Dima Frid
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelExtractionBenchmark {
+
+    @Param({"10", "100", "1000", "10000"})
+    public int tables;
+
+    private List<Class<?>> classes;
+
+    @Setup
+    public void setup() throws IOException {
+        classes = new ArrayList<Class<?>>(tables);
+        for (int i = 0; i < tables; i++) {
+            classes.add(new EntityLoader().define(i % 2 == 0 ? FieldEntity.class : PropertyEntity.class));
+        }
+    }
+
+    @Benchmark
+    public void cached(Blackhole blackhole) {
+        for (Class<?> clazz : classes) {
+            blackhole.consume(TableDescriptionUtil.getTableDescription(clazz));
+        }
+    }
+
+    @Benchmark
+    public void uncached(Blackhole blackhole) {
+        for (Class<?> clazz : classes) {
+            blackhole.consume(TableDescriptionUtil.extractTableDescription(clazz));
+        }
+    }
+
+    @Benchmark
+    public List<TableDescription> parallel() {
+        return TableDescriptionUtil.getTableDescriptions(classes);
+    }
+
+    /**
+     * Defines a copy of an entity class, distinct from the original and from the copies of other loaders;
+     * everything else, the annotations included, comes from the parent.
+     */
+    private static class EntityLoader extends ClassLoader {
+
+        EntityLoader() {
+            super(ModelExtractionBenchmark.class.getClassLoader());
+        }
+
+        Class<?> define(Class<?> entity) throws IOException {
+            InputStream in = getParent().getResourceAsStream(entity.getName().replace('.', '/') + ".class");
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                for (int n; (n = in.read(buffer)) != -1; ) {
+                    bytes.write(buffer, 0, n);
+                }
+                return defineClass(entity.getName(), bytes.toByteArray(), 0, bytes.size());
+            } finally {
+                in.close();
+            }
+        }
+    }
+
+    @Table(name = "FIELD_ENTITY")
+    public static class FieldEntity {
+        @Id
+        private long id;
+        @Column(length = 100, nullable = false, unique = true)
+        private String name;
+        @Column
+        private String description;
+        @Column
+        private Long ownerId;
+        @Column
+        private int status;
+        @Column
+        private boolean active;
+        @Column
+        private Timestamp created;
+        @Column
+        private double amount;
+        @Lob
+        @Compressed
+        private String payload;
+    }
+
+    @Table(name = "PROPERTY_ENTITY")
+    public static class PropertyEntity {
+        @Id
+        public long getId() {
+            return 0;
+        }
+
+        @Column(length = 100, nullable = false, unique = true)
+        public String getName() {
+            return null;
+        }
+
+        @Column
+        public String getDescription() {
+            return null;
+        }
+
+        @Column
+        public Long getOwnerId() {
+            return null;
+        }
+
+        @Column
+        public int getStatus() {
+            return 0;
+        }
+
+        @Column
+        public boolean isActive() {
+            return false;
+        }
+
+        @Column
+        public Timestamp getCreated() {
+            return null;
+        }
+
+        @Lob
+        public byte[] getPayload() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package org.drift.dbmagic;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end timing of {@link SchemaCreator#createTables} against embedded H2, on synthetic schemas:
+ * <ul>
+ * <li>coldCreate - all the tables in an empty database</li>
+ * <li>noopResync - the same tables again, nothing changed</li>
+ * <li>addColumn, widenVarchar, addIndex - the respective change in a share of the tables</li>
+ * </ul>
+ * Every iteration of every scenario runs on a database of its own. The results are written as JSON; if a thresholds
+ * file is given, scenarios whose median exceeds their threshold fail the run.
+ * <p/>
+ * Configured by system properties: tables (200), columns (10), indexes (2), joinTables (1), changedPercent (10),
+ * iterations (5), parallelism (1), out (sync-benchmark.json), thresholds (none; a properties file of
+ * scenario = max median millis).
+ *
+ * @author Dima Frid
+ */
+public class SchemaSyncBenchmark {
+
+    private static final AtomicInteger databases = new AtomicInteger();
+
+    private final int tables = Integer.getInteger("tables", 200);
+    private final int columns = Integer.getInteger("columns", 10);
+    private final int indexes = Integer.getInteger("indexes", 2);
+    private final int joinTables = Integer.getInteger("joinTables", 1);
+    private final int changedPercent = Integer.getInteger("changedPercent", 10);
+    private final int iterations = Integer.getInteger("iterations", 5);
+    private final int parallelism = Integer.getInteger("parallelism", 1);
+
+    private static abstract class Scenario {
+        final String name;
+
+        Scenario(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the model to sync, after the tables were (or weren't) set up with the original one
+         */
+        abstract List<TableDescription> change(List<TableDescription> model);
+
+        boolean coldStart() {
+            return false;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        new SchemaSyncBenchmark().run(System.getProperty("out", "sync-benchmark.json"), System.getProperty("thresholds"));
+    }
+
+    public void run(String out, String thresholdsFile) throws IOException {
+        Map<String, long[]> results = new LinkedHashMap<String, long[]>();
+        for (Scenario scenario : scenarios()) {
+            long[] millis = new long[iterations];
+            for (int i = 0; i < iterations; i++) {
+                millis[i] = time(scenario);
+            }
+            Arrays.sort(millis);
+            results.put(scenario.name, millis);
+            System.out.println(scenario.name + ": median " + median(millis) + " ms, min " + millis[0] +
+                               " ms, max " + millis[millis.length - 1] + " ms");
+        }
+
+        String json = toJson(results);
+        Writer writer = new FileWriter(out);
+        try {
+            writer.write(json);
+        } finally {
+            writer.close();
+        }
+        System.out.println("Results written to " + out);
+
+        if (thresholdsFile != null) {
+            checkThresholds(results, thresholdsFile);
+        }
+    }
+
+    private List<Scenario> scenarios() {
+        return Arrays.asList(
+            new Scenario("coldCreate") {
+                List<TableDescription> change(List<TableDescription> model) {
+                    return model;
+                }
+
+                @Override
+                boolean coldStart() {
+                    return true;
+                }
+            },
+            new Scenario("noopResync") {
+                List<TableDescription> change(List<TableDescription> model) {
+                    return model;
+                }
+            },
+            new Scenario("addColumn") {
+                List<TableDescription> change(List<TableDescription> model) {
+                    List<TableDescription> changed = copy(model);
+                    for (TableDescription table : changedTables(changed)) {
+                        table.addColumn("ADDED_COL").ofType(ColumnType.VARCHAR).ofSize(30);
+                    }
+                    return changed;
+                }
+            },
+            new Scenario("widenVarchar") {
+                List<TableDescription> change(List<TableDescription> model) {
+                    List<TableDescription> changed = copy(model);
+                    for (TableDescription table : changedTables(changed)) {
+                        for (ColumnDescription column : table.getColumns().values()) {
+                            if (column.getType() == ColumnType.VARCHAR) {
+                                column.ofSize(column.getSize() + 100);
+                                break;
+                            }
+                        }
+                    }
+                    return changed;
+                }
+            },
+            new Scenario("addIndex") {
+                List<TableDescription> change(List<TableDescription> model) {
+                    List<TableDescription> changed = copy(model);
+                    for (TableDescription table : changedTables(changed)) {
+                        table.addIndex(new IndexDescription("ID", "COL_" + (columns - 1)));
+                    }
+                    return changed;
+                }
+            });
+    }
+
+    private long time(Scenario scenario) {
+        DriverManagerDataSource ds = new DriverManagerDataSource(
+            "jdbc:h2:mem:sync" + databases.incrementAndGet() + ";DB_CLOSE_DELAY=-1", "sa", "");
+        try {
+            List<TableDescription> model = SyntheticModel.tables(tables, columns, indexes, joinTables);
+            if (!scenario.coldStart()) {
+                sync(newSchemaCreator(ds), model);
+            }
+
+            List<TableDescription> changed = scenario.change(model);
+            SchemaCreator schemaCreator = newSchemaCreator(ds);
+            long start = System.nanoTime();
+            sync(schemaCreator, changed);
+            return (System.nanoTime() - start) / 1000000;
+        } finally {
+            new JdbcTemplate(ds).execute("drop all objects");
+        }
+    }
+
+    private SchemaCreator newSchemaCreator(DriverManagerDataSource ds) {
+        SchemaCreator schemaCreator = new SchemaCreator(ds, DBType.H2);
+        schemaCreator.setParallelism(parallelism);
+        return schemaCreator;
+    }
+
+    private void sync(SchemaCreator schemaCreator, List<TableDescription> model) {
+        Map<TableDescription, Exception> failures = new LinkedHashMap<TableDescription, Exception>();
+        schemaCreator.createTables(model, failures);
+        if (!failures.isEmpty()) {
+            Map.Entry<TableDescription, Exception> failure = failures.entrySet().iterator().next();
+            throw new IllegalStateException(failures.size() + " tables failed to sync; first: " + failure.getKey(),
+                                            failure.getValue());
+        }
+    }
+
+    private List<TableDescription> copy(List<TableDescription> model) {
+        List<TableDescription> copy = new ArrayList<TableDescription>(model.size());
+        for (TableDescription table : model) {
+            copy.add(table.copy());
+        }
+        return copy;
+    }
+
+    private List<TableDescription> changedTables(List<TableDescription> model) {
+        int count = Math.max(1, model.size() * changedPercent / 100);
+        return model.subList(0, Math.min(count, model.size()));
+    }
+
+    private void checkThresholds(Map<String, long[]> results, String thresholdsFile) throws IOException {
+        Properties thresholds = new Properties();
+        InputStream in = new FileInputStream(thresholdsFile);
+        try {
+            thresholds.load(in);
+        } finally {
+            in.close();
+        }
+
+        List<String> regressions = new ArrayList<String>();
+        for (Map.Entry<String, long[]> entry : results.entrySet()) {
+            String threshold = thresholds.getProperty(entry.getKey());
+            long median = median(entry.getValue());
+            if (threshold != null && median > Long.parseLong(threshold.trim())) {
+                regressions.add(entry.getKey() + ": median " + median + " ms > " + threshold.trim() + " ms");
+            }
+        }
+
+        if (!regressions.isEmpty()) {
+            throw new IllegalStateException("Schema sync regressed: " + regressions);
+        }
+        System.out.println("All scenarios within the thresholds of " + thresholdsFile);
+    }
+
+    private static long median(long[] sorted) {
+        return sorted[sorted.length / 2];
+    }
+
+    private String toJson(Map<String, long[]> results) {
+        StringBuilder json = new StringBuilder("{\n");
+        json.append("  \"config\": {\"tables\": ").append(tables)
+            .append(", \"columns\": ").append(columns)
+            .append(", \"indexes\": ").append(indexes)
+            .append(", \"joinTables\": ").append(joinTables)
+            .append(", \"changedPercent\": ").append(changedPercent)
+            .append(", \"iterations\": ").append(iterations)
+            .append(", \"parallelism\": ").append(parallelism).append("},\n");
+        json.append("  \"scenarios\": {");
+        String separator = "\n";
+        for (Map.Entry<String, long[]> entry : results.entrySet()) {
+            long[] millis = entry.getValue();
+            json.append(separator).append("    \"").append(entry.getKey()).append("\": {")
+                .append("\"medianMillis\": ").append(median(millis))
+                .append(", \"minMillis\": ").append(millis[0])
+                .append(", \"maxMillis\": ").append(millis[millis.length - 1])
+                .append(", \"samples\": ").append(Arrays.toString(millis))
+                .append("}");
+            separator = ",\n";
+        }
+        json.append("\n  }\n}\n");
+        return json.toString();
+    }
+}
@@ -0,0 +1,96 @@
+package org.drift.dbmagic;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic models of any size for the benchmarks: tables with a mix of column types, sizes, defaults and
+ * constraints, composite and lower indexes, and checks, roughly like a real-life schema.
+ *
+ * @author Dima Frid
+ */
+public class SyntheticModel {
+
+    public static List<TableDescription> tables(int count) {
+        List<TableDescription> tables = new ArrayList<TableDescription>(count);
+        for (int i = 0; i < count; i++) {
+            tables.add(table(i));
+        }
+        return tables;
+    }
+
+    /**
+     * @param columns number of columns per table, on top of the ID
+     * @param indexes number of (single-column) indexes per table
+     * @param joinTables number of join tables per table
+     */
+    public static List<TableDescription> tables(int count, int columns, int indexes, int joinTables) {
+        List<TableDescription> tables = new ArrayList<TableDescription>(count);
+        for (int i = 0; i < count; i++) {
+            tables.add(table(i, columns, indexes, joinTables));
+        }
+        return tables;
+    }
+
+    public static TableDescription table(int i, int columns, int indexes, int joinTables) {
+        TableDescription table = new TableDescription("SYNC_TABLE_" + i);
+        table.addColumn("ID").ofType(ColumnType.ID);
+        for (int c = 0; c < columns; c++) {
+            ColumnDescription column = table.addColumn("COL_" + c);
+            switch (c % 5) {
+                case 0:
+                    column.ofType(ColumnType.VARCHAR).ofSize(50 + c);
+                    break;
+                case 1:
+                    column.ofType(ColumnType.LONG);
+                    break;
+                case 2:
+                    column.ofType(ColumnType.INTEGER).ofDefaultValue("0");
+                    break;
+                case 3:
+                    column.ofType(ColumnType.TIMESTAMP);
+                    break;
+                default:
+                    column.ofType(ColumnType.BOOLEAN);
+            }
+        }
+        table.setPrimaryKey(new IndexDescription("ID"));
+
+        for (int x = 0; x < Math.min(indexes, columns); x++) {
+            table.addIndex(new IndexDescription("COL_" + x));
+        }
+
+        for (int j = 0; j < joinTables; j++) {
+            TableDescription joinTable = new TableDescription(table.getTableName() + "_J" + j);
+            joinTable.addColumn("OWNER_ID").ofType(ColumnType.LONG).notNullable();
+            joinTable.addColumn("ITEM_ID").ofType(ColumnType.LONG).notNullable();
+            joinTable.setPrimaryKey(new IndexDescription("OWNER_ID", "ITEM_ID"));
+            table.addJoinTableDescription(joinTable);
+        }
+        return table;
+    }
+
+    public static TableDescription table(int i) {
+        TableDescription table = new TableDescription("BENCH_TABLE_" + i);
+        table.addColumn("ID").ofType(ColumnType.ID);
+        table.addColumn("NAME").ofType(ColumnType.VARCHAR).ofSize(50 + i % 200).notNullable();
+        table.addColumn("DESCRIPTION").ofType(ColumnType.VARCHAR);
+        table.addColumn("OWNER_ID").ofType(ColumnType.LONG);
+        table.addColumn("STATUS").ofType(ColumnType.INTEGER).ofDefaultValue("0");
+        table.addColumn("ACTIVE").ofType(ColumnType.BOOLEAN);
+        table.addColumn("CREATED").ofType(ColumnType.TIMESTAMP);
+        table.addColumn("EXTERNAL_ID").ofType(ColumnType.UUID_STR);
+        table.addColumn("AMOUNT").ofType(ColumnType.DOUBLE);
+        if (i % 10 == 0) {
+            table.addColumn("PAYLOAD").ofType(ColumnType.CLOB).setCompressed(true);
+        }
+
+        table.setPrimaryKey(new IndexDescription("ID"));
+        table.addIndex(new IndexDescription("OWNER_ID", "STATUS"));
+        table.addIndex(new IndexDescription("NAME").unique().lower());
+        if (i % 5 == 0) {
+            table.addCheck("STATUS >= 0");
+        }
+        return table;
+    }
+}
@@ -0,0 +1,468 @@
+package org.drift.dbmagic.processor;
+
+import javax.annotation.processing.*;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates, at compile time, what {@code TableDescriptionUtil} extracts reflectively at runtime:
+ * a {@code DBTable} implementation per JPA entity ({@code <Entity>DBTable}, next to the entity) and a registry listing
+ * them all, so that the schema can be synced without reflection or classpath scanning:
+ * <pre>
+ *     schemaCreator.createTables(DBTables.getTableDescriptions());
+ * </pre>
+ * The registry is {@value #DEFAULT_REGISTRY} unless the {@value #REGISTRY_OPTION} option names another class.
+ * <p/>
+ * The entities are the concrete classes that have, or inherit, a named {@code @Table}. They're mapped the same way
+ * {@code TableDescriptionUtil} maps them; an entity with a property type it can't map fails the compilation.
+ *
+ * @author Dima Frid
+ */
+@SupportedAnnotationTypes("*")
+@SupportedOptions(TableDescriptionProcessor.REGISTRY_OPTION)
+public class TableDescriptionProcessor extends AbstractProcessor {
+    public static final String REGISTRY_OPTION = "dbmagic.registry";
+    public static final String DEFAULT_REGISTRY = "org.drift.dbmagic.generated.DBTables";
+
+    static final String GENERATED_SUFFIX = "DBTable";
+
+    private static final String TABLE = "javax.persistence.Table";
+    private static final String COLUMN = "javax.persistence.Column";
+    private static final String ID = "javax.persistence.Id";
+    private static final String LOB = "javax.persistence.Lob";
+    private static final String ENUMERATED = "javax.persistence.Enumerated";
+    private static final String ELEMENT_COLLECTION = "javax.persistence.ElementCollection";
+    private static final String COMPRESSED = "org.drift.dbmagic.Compressed";
+
+    private final List<String> generatedClasses = new ArrayList<String>();
+
+    private Elements elements;
+    private Types types;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        elements = processingEnv.getElementUtils();
+        types = processingEnv.getTypeUtils();
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            if (!generatedClasses.isEmpty()) {
+                writeRegistry();
+            }
+            return false;
+        }
+
+        for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+            processType(type);
+        }
+        return false;
+    }
+
+    private void processType(TypeElement type) {
+        if (type.getKind() == ElementKind.CLASS && !type.getModifiers().contains(Modifier.ABSTRACT)) {
+            String tableName = getTableName(type);
+            if (tableName != null) {
+                try {
+                    generate(type, tableName);
+                } catch (UnsupportedOperationException e) {
+                    processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, e.getMessage(), type);
+                }
+            }
+        }
+
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            if (nested.getModifiers().contains(Modifier.STATIC)) {
+                processType(nested);
+            }
+        }
+    }
+
+    /**
+     * @return the name in the {@code @Table} of the class or of its closest annotated superclass; null if none or empty
+     */
+    private String getTableName(TypeElement type) {
+        TypeElement current = type;
+        while (current != null) {
+            AnnotationMirror table = getAnnotation(current, TABLE);
+            if (table != null) {
+                String name = (String) getValue(table, "name");
+                return name == null || name.isEmpty() ? null : name;
+            }
+            current = getSuperclass(current);
+        }
+        return null;
+    }
+
+    private void generate(TypeElement entity, String tableName) {
+        List<? extends Element> members;
+        if (isFieldAccess(entity)) {
+            members = getAllFields(entity);
+        } else if (isPropertyAccess(entity)) {
+            members = getPublicMethods(entity);
+        } else {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING,
+                                                     "No mapped fields or properties; no DBTable generated", entity);
+            return;
+        }
+
+        StringBuilder body = new StringBuilder();
+        body.append("        TableDescription table = new TableDescription(").append(literal(tableName)).append(");\n");
+        body.append("        ColumnDescription column;\n");
+        for (Element member : members) {
+            describeMember(member, body);
+        }
+
+        String packageName = elements.getPackageOf(entity).getQualifiedName().toString();
+        String className = getFlatName(entity) + GENERATED_SUFFIX;
+        String qualifiedName = packageName.isEmpty() ? className : packageName + "." + className;
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import org.drift.dbmagic.*;\n\n");
+        source.append("/**\n");
+        source.append(" * Generated by ").append(getClass().getName()).append(" from ")
+              .append(entity.getQualifiedName()).append("; don't edit.\n");
+        source.append(" */\n");
+        source.append("public class ").append(className).append(" implements DBTable {\n");
+        source.append("    public static final TableDescription TABLE_DESCRIPTION = describe();\n\n");
+        source.append("    public TableDescription tableDescription() {\n");
+        source.append("        return describe();\n");
+        source.append("    }\n\n");
+        source.append("    private static TableDescription describe() {\n");
+        source.append(body);
+        source.append("        return table;\n");
+        source.append("    }\n");
+        source.append("}\n");
+
+        write(qualifiedName, source.toString(), entity);
+        generatedClasses.add(qualifiedName);
+    }
+
+    /**
+     * Mirrors TableDescriptionUtil.process() for a single field or getter
+     */
+    private void describeMember(Element member, StringBuilder body) {
+        TypeMirror type = getElementType(member);
+
+        if (hasAnnotation(member, LOB)) {
+            String name = getColumnNameBySpecialAnnotation(member);
+            body.append("        column = table.addColumn(").append(literal(name)).append(");\n");
+            if (isType(type, "java.lang.String")) {
+                body.append("        column.ofType(ColumnType.CLOB);\n");
+                AnnotationMirror compressed = getAnnotation(member, COMPRESSED);
+                if (compressed != null) {
+                    Object compression = getValue(compressed, "value");
+                    body.append("        column.compressed(Compression.")
+                        .append(compression == null ? "MEDIUM" : ((VariableElement) compression).getSimpleName()).append(");\n");
+                }
+            } else {
+                body.append("        column.ofType(ColumnType.BLOB);\n");
+            }
+            return;
+        }
+
+        if (hasAnnotation(member, ID)) {
+            String name = getColumnNameBySpecialAnnotation(member);
+            String columnType = "VARCHAR".equals(convertToColumnType(member)) ? "UUID_STR" : "ID";
+            body.append("        table.addColumn(").append(literal(name)).append(").ofType(ColumnType.").append(columnType).append(");\n");
+            body.append("        table.setPrimaryKey(new IndexDescription(").append(literal(name)).append("));\n");
+            return;
+        }
+
+        AnnotationMirror column = getAnnotation(member, COLUMN);
+        if (column == null || hasAnnotation(member, ELEMENT_COLLECTION)) {
+            return;
+        }
+
+        String name = elementName(member, column).toUpperCase();
+        body.append("        table.addColumn(new ColumnDescription(").append(literal(name)).append(")")
+            .append(".ofSize(").append(elementSize(member, column)).append(")")
+            .append(".setNullable(").append(getBooleanValue(column, "nullable", true)).append(")")
+            .append(".ofType(ColumnType.").append(convertToColumnType(member)).append("));\n");
+
+        if (getBooleanValue(column, "unique", false)) {
+            body.append("        table.addIndex(new IndexDescription(").append(literal(name)).append(").unique());\n");
+        }
+    }
+
+    private void writeRegistry() {
+        String registry = processingEnv.getOptions().get(REGISTRY_OPTION);
+        if (registry == null || registry.isEmpty()) {
+            registry = DEFAULT_REGISTRY;
+        }
+        int dot = registry.lastIndexOf('.');
+        String packageName = dot == -1 ? "" : registry.substring(0, dot);
+        String className = registry.substring(dot + 1);
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("import org.drift.dbmagic.DBTable;\n");
+        source.append("import org.drift.dbmagic.TableDescription;\n\n");
+        source.append("import java.util.ArrayList;\n");
+        source.append("import java.util.Arrays;\n");
+        source.append("import java.util.List;\n\n");
+        source.append("/**\n");
+        source.append(" * Generated by ").append(getClass().getName()).append("; don't edit.\n");
+        source.append(" */\n");
+        source.append("public final class ").append(className).append(" {\n");
+        source.append("    private static final List<Class<? extends DBTable>> TABLE_CLASSES = Arrays.<Class<? extends DBTable>>asList(");
+        String separator = "\n";
+        for (String generatedClass : generatedClasses) {
+            source.append(separator).append("        ").append(generatedClass).append(".class");
+            separator = ",\n";
+        }
+        source.append(");\n\n");
+        source.append("    private ").append(className).append("() { }\n\n");
+        source.append("    public static List<Class<? extends DBTable>> getTableClasses() {\n");
+        source.append("        return TABLE_CLASSES;\n");
+        source.append("    }\n\n");
+        source.append("    public static List<TableDescription> getTableDescriptions() {\n");
+        source.append("        List<TableDescription> tables = new ArrayList<TableDescription>();\n");
+        for (String generatedClass : generatedClasses) {
+            source.append("        tables.add(new ").append(generatedClass).append("().tableDescription());\n");
+        }
+        source.append("        return tables;\n");
+        source.append("    }\n");
+        source.append("}\n");
+
+        write(registry, source.toString());
+    }
+
+    private void write(String qualifiedName, String source, Element... originatingElements) {
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedName, originatingElements);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(source);
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, "Failed to write " + qualifiedName + ": " + e);
+        }
+    }
+
+    private String convertToColumnType(Element member) {
+        TypeMirror type = getElementType(member);
+
+        if (hasAnnotation(member, ENUMERATED)) {
+            return "VARCHAR";
+        }
+
+        if (type.getKind() == TypeKind.LONG || isType(type, "java.lang.Long")) {
+            return "LONG";
+        } else if (type.getKind() == TypeKind.BOOLEAN || isType(type, "java.lang.Boolean")) {
+            return "BOOLEAN";
+        } else if (type.getKind() == TypeKind.INT || isType(type, "java.lang.Integer")) {
+            return "INTEGER";
+        } else if (isType(type, "java.sql.Timestamp")) {
+            return "TIMESTAMP";
+        } else if (isType(type, "java.lang.String")) {
+            return "VARCHAR";
+        } else if (isEnum(type)) {
+            return "INTEGER";
+        } else if (isAssignableFrom(type, "java.util.Map")) {
+            return "BLOB";
+        } else if (isAssignableFrom(type, "java.lang.Double") || type.getKind() == TypeKind.DOUBLE) {
+            return "DOUBLE";
+        } else if (isAssignableFrom(type, "java.util.Date")) {
+            return "DATE";
+        } else {
+            throw new UnsupportedOperationException("Unsupported type: " + type + " of " + member);
+        }
+    }
+
+    private int elementSize(Element member, AnnotationMirror column) {
+        TypeMirror type = getElementType(member);
+        if (isNumeric(type)) {
+            return getIntValue(column, "precision", 0);
+        }
+        if (isType(type, "java.lang.String")) {
+            return getIntValue(column, "length", 255);
+        }
+        return 0;
+    }
+
+    private String elementName(Element member, AnnotationMirror column) {
+        String name = (String) getValue(column, "name");
+        if (name == null || name.isEmpty()) {
+            name = getPropertyName(member);
+        }
+        return name;
+    }
+
+    private String getColumnNameBySpecialAnnotation(Element member) {
+        AnnotationMirror column = getAnnotation(member, COLUMN);
+        return column == null ? getPropertyName(member) : elementName(member, column);
+    }
+
+    private String getPropertyName(Element member) {
+        String name = member.getSimpleName().toString();
+        if (member.getKind() == ElementKind.FIELD) {
+            return name;
+        }
+        if (name.startsWith("get")) {
+            return name.substring("get".length()).toLowerCase();
+        } else {
+            return name.substring("is".length()).toLowerCase();
+        }
+    }
+
+    private boolean isFieldAccess(TypeElement type) {
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            if (columnAnnotated(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isPropertyAccess(TypeElement type) {
+        for (ExecutableElement method : getPublicMethods(type)) {
+            if (columnAnnotated(method)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean columnAnnotated(Element element) {
+        return hasAnnotation(element, COLUMN) || hasAnnotation(element, LOB) || hasAnnotation(element, ID);
+    }
+
+    /**
+     * @return fields of the class and of its superclasses, like ReflectionUtils.getAllFields()
+     */
+    private List<VariableElement> getAllFields(TypeElement type) {
+        List<VariableElement> fields = new ArrayList<VariableElement>();
+        for (TypeElement current = type; current != null; current = getSuperclass(current)) {
+            fields.addAll(ElementFilter.fieldsIn(current.getEnclosedElements()));
+        }
+        return fields;
+    }
+
+    /**
+     * @return public methods of the class, including the inherited ones, like Class.getMethods()
+     */
+    private List<ExecutableElement> getPublicMethods(TypeElement type) {
+        List<ExecutableElement> methods = new ArrayList<ExecutableElement>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            if (method.getModifiers().contains(Modifier.PUBLIC)) {
+                methods.add(method);
+            }
+        }
+        return methods;
+    }
+
+    private TypeElement getSuperclass(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        if (superclass.getKind() != TypeKind.DECLARED) {
+            return null;
+        }
+        TypeElement element = (TypeElement) types.asElement(superclass);
+        return element.getQualifiedName().contentEquals("java.lang.Object") ? null : element;
+    }
+
+    private String getFlatName(TypeElement type) {
+        String flatName = elements.getBinaryName(type).toString();
+        return flatName.substring(flatName.lastIndexOf('.') + 1).replace('$', '_');
+    }
+
+    private TypeMirror getElementType(Element member) {
+        return member.getKind() == ElementKind.METHOD ? ((ExecutableElement) member).getReturnType() : member.asType();
+    }
+
+    private boolean isType(TypeMirror type, String className) {
+        TypeElement element = elements.getTypeElement(className);
+        return element != null && types.isSameType(types.erasure(type), types.erasure(element.asType()));
+    }
+
+    /**
+     * @return whether the type is the given class or one of its supertypes, like Class.isAssignableFrom()
+     */
+    private boolean isAssignableFrom(TypeMirror type, String className) {
+        TypeElement element = elements.getTypeElement(className);
+        return element != null && type.getKind() == TypeKind.DECLARED &&
+               types.isAssignable(types.erasure(element.asType()), types.erasure(type));
+    }
+
+    private boolean isEnum(TypeMirror type) {
+        return type.getKind() == TypeKind.DECLARED && ((DeclaredType) type).asElement().getKind() == ElementKind.ENUM;
+    }
+
+    private boolean isNumeric(TypeMirror type) {
+        switch (type.getKind()) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+            case FLOAT:
+            case DOUBLE:
+                return true;
+            case DECLARED:
+                TypeElement number = elements.getTypeElement("java.lang.Number");
+                return types.isAssignable(types.erasure(type), number.asType());
+            default:
+                return false;
+        }
+    }
+
+    private boolean hasAnnotation(Element element, String annotationName) {
+        return getAnnotation(element, annotationName) != null;
+    }
+
+    private AnnotationMirror getAnnotation(Element element, String annotationName) {
+        for (AnnotationMirror annotation : element.getAnnotationMirrors()) {
+            if (((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().contentEquals(annotationName)) {
+                return annotation;
+            }
+        }
+        return null;
+    }
+
+    private Object getValue(AnnotationMirror annotation, String name) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : annotation.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(name)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private boolean getBooleanValue(AnnotationMirror annotation, String name, boolean defaultValue) {
+        Object value = getValue(annotation, name);
+        return value == null ? defaultValue : (Boolean) value;
+    }
+
+    private int getIntValue(AnnotationMirror annotation, String name, int defaultValue) {
+        Object value = getValue(annotation, name);
+        return value == null ? defaultValue : (Integer) value;
+    }
+
+    private static String literal(String value) {
+        return "\"" + value.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
@@ -0,0 +1,127 @@
+package org.drift.dbmagic.processor;
+
+import org.drift.dbmagic.DBTable;
+import org.drift.dbmagic.TableDescription;
+import org.drift.dbmagic.TableDescriptionUtil;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.tools.*;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Dima Frid
+ */
+public class TableDescriptionProcessorTest {
+
+    private static final String PROPERTY_ENTITY =
+        "package tst;\n" +
+        "import javax.persistence.*;\n" +
+        "import java.sql.Timestamp;\n" +
+        "@Table(name = \"PROPERTY_ENTITY\")\n" +
+        "public class PropertyEntity {\n" +
+        "    public static enum Status { GOOD, BAD }\n" +
+        "    @Column(name = \"BOOL\") public boolean isBooleanField() { return false; }\n" +
+        "    @Column @Enumerated(EnumType.STRING) public Status getEnumField() { return null; }\n" +
+        "    @Column public Status getOrdinalField() { return null; }\n" +
+        "    @Id public long getId() { return 0; }\n" +
+        "    @Lob @org.drift.dbmagic.Compressed(org.drift.dbmagic.Compression.HIGH) public String getLobField() { return null; }\n" +
+        "    @Column(length = 40, nullable = false, unique = true) public String getStringField() { return null; }\n" +
+        "    @Column(precision = 10) public Integer getIntField() { return null; }\n" +
+        "    @Column public Timestamp getTimestampField() { return null; }\n" +
+        "}\n";
+
+    private static final String FIELD_ENTITY =
+        "package tst;\n" +
+        "import javax.persistence.*;\n" +
+        "@Table(name = \"FIELD_ENTITY\")\n" +
+        "public class FieldEntity {\n" +
+        "    @Id @Column(name = \"UUID\") private String id;\n" +
+        "    @Column private double amount;\n" +
+        "    @Column private java.util.Date created;\n" +
+        "    @Lob private byte[] data;\n" +
+        "    private String notMapped;\n" +
+        "}\n";
+
+    private static final String SUB_ENTITY =
+        "package tst;\n" +
+        "import javax.persistence.*;\n" +
+        "public class SubEntity extends FieldEntity {\n" +
+        "    @Column private long extra;\n" +
+        "}\n";
+
+    private File dir;
+
+    @Before
+    public void be4() throws IOException {
+        dir = File.createTempFile("dbmagic-processor", "");
+        dir.delete();
+        dir.mkdirs();
+    }
+
+    @Test
+    public void testGeneratedDescriptionsMatchReflection() throws Exception {
+        ClassLoader classLoader = compile(PROPERTY_ENTITY, FIELD_ENTITY, SUB_ENTITY);
+
+        for (String entity : Arrays.asList("tst.PropertyEntity", "tst.FieldEntity", "tst.SubEntity")) {
+            TableDescription expected = TableDescriptionUtil.getTableDescription(classLoader.loadClass(entity));
+            DBTable generated = (DBTable) classLoader.loadClass(entity + TableDescriptionProcessor.GENERATED_SUFFIX).newInstance();
+            assertSameDescription(expected, generated.tableDescription());
+        }
+
+        Class<?> registry = classLoader.loadClass(TableDescriptionProcessor.DEFAULT_REGISTRY);
+        List<?> tables = (List<?>) registry.getMethod("getTableDescriptions").invoke(null);
+        assertEquals(3, tables.size());
+    }
+
+    private void assertSameDescription(TableDescription expected, TableDescription actual) {
+        assertEquals(expected.getTableName(), actual.getTableName());
+        assertEquals(expected.getColumns(), actual.getColumns());
+        for (String column : expected.getColumns().keySet()) {
+            assertEquals(expected.getColumns().get(column).getCompression(), actual.getColumns().get(column).getCompression());
+        }
+        assertEquals(expected.getPrimaryKey(), actual.getPrimaryKey());
+        assertEquals(new HashSet<Object>(expected.getIndexes()), new HashSet<Object>(actual.getIndexes()));
+    }
+
+    private ClassLoader compile(String... sources) throws IOException {
+        List<File> files = new ArrayList<File>();
+        File packageDir = new File(dir, "tst");
+        packageDir.mkdirs();
+        for (String source : sources) {
+            String className = source.substring(source.indexOf("public class ") + "public class ".length()).split(" ")[0];
+            File file = new File(packageDir, className + ".java");
+            FileWriter writer = new FileWriter(file);
+            try {
+                writer.write(source);
+            } finally {
+                writer.close();
+            }
+            files.add(file);
+        }
+
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(diagnostics, null, null);
+        try {
+            List<String> options = Arrays.asList("-d", dir.getPath(), "-s", dir.getPath(),
+                                                 "-classpath", System.getProperty("java.class.path"));
+            JavaCompiler.CompilationTask task = compiler.getTask(null, fileManager, diagnostics, options, null,
+                                                                 fileManager.getJavaFileObjectsFromFiles(files));
+            task.setProcessors(Collections.singletonList(new TableDescriptionProcessor()));
+            boolean compiled = task.call();
+            assertTrue(diagnostics.getDiagnostics().toString(), compiled);
+        } finally {
+            fileManager.close();
+        }
+
+        return new URLClassLoader(new URL[]{dir.toURI().toURL()}, getClass().getClassLoader());
+    }
+}
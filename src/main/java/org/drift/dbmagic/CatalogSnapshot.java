@@ -0,0 +1,221 @@
+package org.drift.dbmagic;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory picture of the schema catalog - tables, columns, indexes and PK constraints.
+ * It is filled by {@link Dialect#getCatalogSnapshot} with a few set-based queries, so that
+ * {@link SchemaCreator} can diff a whole model against it instead of querying the catalog table by table.
+ * <p/>
+ * Names are matched case-insensitively, since dialects disagree on the case they report. Schema-qualified names are
+ * covered only by a {@link #setSchemaQualified schema-qualified} snapshot.
+ * A table that was changed after the snapshot had been taken should be {@link #invalidate invalidated};
+ * the snapshot no longer {@link #covers covers} it and callers should ask the database directly.
+ * <p/>
+ * Tables synced concurrently update the snapshot concurrently; the per-table collections are guarded by the snapshot.
+ *
+ * @author Dima Frid
+ */
+public class CatalogSnapshot {
+    private final Set<String> tables = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private final Map<String, Map<String, ColumnDescription>> columns = new ConcurrentHashMap<String, Map<String, ColumnDescription>>();
+    private final Map<String, Set<String>> indexes = new ConcurrentHashMap<String, Set<String>>();
+    private final Map<String, Map<String, IndexDescription>> indexDefinitions = new ConcurrentHashMap<String, Map<String, IndexDescription>>();
+    private final Map<String, Set<String>> invalidIndexes = new ConcurrentHashMap<String, Set<String>>();
+    private final Map<String, Long> rowEstimates = new ConcurrentHashMap<String, Long>();
+    private final Map<String, String> primaryKeys = new ConcurrentHashMap<String, String>();
+    private final Set<String> staleTables = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    private volatile boolean schemaQualified;
+
+    /**
+     * @param schemaQualified whether every table is added under its schema-qualified name as well,
+     * so that the snapshot covers those names too
+     */
+    public void setSchemaQualified(boolean schemaQualified) {
+        this.schemaQualified = schemaQualified;
+    }
+
+    public void addTable(String tableName) {
+        tables.add(key(tableName));
+    }
+
+    public void setRowEstimate(String tableName, long rows) {
+        rowEstimates.put(key(tableName), rows);
+    }
+
+    public synchronized void addColumn(String tableName, ColumnDescription columnDescription) {
+        Map<String, ColumnDescription> tableColumns = columns.get(key(tableName));
+        if (tableColumns == null) {
+            tableColumns = new LinkedHashMap<String, ColumnDescription>();
+            columns.put(key(tableName), tableColumns);
+        }
+        tableColumns.put(columnDescription.getName(), columnDescription);
+    }
+
+    public synchronized void addIndex(String tableName, String indexName) {
+        Set<String> tableIndexes = indexes.get(key(tableName));
+        if (tableIndexes == null) {
+            tableIndexes = new LinkedHashSet<String>();
+            indexes.put(key(tableName), tableIndexes);
+        }
+        tableIndexes.add(indexName);
+    }
+
+    public synchronized void addIndexDefinition(String tableName, String indexName, IndexDescription indexDescription) {
+        addIndex(tableName, indexName);
+        Map<String, IndexDescription> tableIndexes = indexDefinitions.get(key(tableName));
+        if (tableIndexes == null) {
+            tableIndexes = new LinkedHashMap<String, IndexDescription>();
+            indexDefinitions.put(key(tableName), tableIndexes);
+        }
+        tableIndexes.put(indexName, indexDescription);
+    }
+
+    public synchronized void addInvalidIndex(String tableName, String indexName) {
+        Set<String> tableIndexes = invalidIndexes.get(key(tableName));
+        if (tableIndexes == null) {
+            tableIndexes = new LinkedHashSet<String>();
+            invalidIndexes.put(key(tableName), tableIndexes);
+        }
+        tableIndexes.add(indexName);
+    }
+
+    public synchronized void removeIndex(String tableName, String indexName) {
+        removeIgnoreCase(indexes.get(key(tableName)), indexName);
+        removeIgnoreCase(invalidIndexes.get(key(tableName)), indexName);
+        Map<String, IndexDescription> tableIndexes = indexDefinitions.get(key(tableName));
+        if (tableIndexes != null) {
+            removeIgnoreCase(tableIndexes.keySet(), indexName);
+        }
+    }
+
+    private static void removeIgnoreCase(Set<String> names, String name) {
+        if (names == null) {
+            return;
+        }
+
+        for (Iterator<String> it = names.iterator(); it.hasNext();) {
+            if (it.next().equalsIgnoreCase(name)) {
+                it.remove();
+            }
+        }
+    }
+
+    public void setPrimaryKey(String tableName, String pkName) {
+        primaryKeys.put(key(tableName), pkName);
+    }
+
+    public void removePrimaryKey(String tableName) {
+        primaryKeys.remove(key(tableName));
+    }
+
+    public boolean covers(String tableName) {
+        if (!schemaQualified && !SchemaUtil.getSchemaPrefix(tableName).isEmpty()) {
+            return false;
+        }
+        return !staleTables.contains(key(tableName));
+    }
+
+    public void invalidate(String tableName) {
+        staleTables.add(key(tableName));
+    }
+
+    public boolean tableExists(String tableName) {
+        return tables.contains(key(tableName));
+    }
+
+    /**
+     * @return the number of rows in the table according to the catalog statistics; 0 if unknown
+     */
+    public long getRowEstimate(String tableName) {
+        Long rows = rowEstimates.get(key(tableName));
+        return rows == null ? 0 : rows;
+    }
+
+    public synchronized Map<String, ColumnDescription> getColumns(String tableName) {
+        Map<String, ColumnDescription> tableColumns = columns.get(key(tableName));
+        if (tableColumns == null) {
+            return new HashMap<String, ColumnDescription>();
+        }
+        return new HashMap<String, ColumnDescription>(tableColumns);
+    }
+
+    public String getPrimaryKey(String tableName) {
+        return primaryKeys.get(key(tableName));
+    }
+
+    /**
+     * @return names of the table indexes, excluding the one backing the PK constraint
+     */
+    public synchronized Set<String> getIndexes(String tableName) {
+        Set<String> indexesNames = new HashSet<String>();
+        Set<String> tableIndexes = indexes.get(key(tableName));
+        if (tableIndexes == null) {
+            return indexesNames;
+        }
+
+        String pk = getPrimaryKey(tableName);
+        for (String indexName : tableIndexes) {
+            if (pk != null && pk.equalsIgnoreCase(indexName)) continue;
+            indexesNames.add(indexName);
+        }
+        return indexesNames;
+    }
+
+    /**
+     * @return definitions of the table indexes by their names, excluding the one backing the PK constraint
+     */
+    public synchronized Map<String, IndexDescription> getIndexDefinitions(String tableName) {
+        Map<String, IndexDescription> definitions = new LinkedHashMap<String, IndexDescription>();
+        Map<String, IndexDescription> tableIndexes = indexDefinitions.get(key(tableName));
+        if (tableIndexes == null) {
+            return definitions;
+        }
+
+        String pk = getPrimaryKey(tableName);
+        for (Map.Entry<String, IndexDescription> entry : tableIndexes.entrySet()) {
+            if (pk != null && pk.equalsIgnoreCase(entry.getKey())) continue;
+            definitions.put(entry.getKey(), entry.getValue());
+        }
+        return definitions;
+    }
+
+    public synchronized Set<String> getInvalidIndexes(String tableName) {
+        Set<String> tableIndexes = invalidIndexes.get(key(tableName));
+        if (tableIndexes == null) {
+            return new HashSet<String>();
+        }
+        return new HashSet<String>(tableIndexes);
+    }
+
+    public synchronized boolean indexExists(String indexName, String tableName) {
+        Set<String> tableIndexes = indexes.get(key(tableName));
+        if (tableIndexes == null) {
+            return false;
+        }
+
+        for (String existingIndex : tableIndexes) {
+            if (existingIndex.equalsIgnoreCase(indexName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getTableCount() {
+        return tables.size();
+    }
+
+    private static String key(String name) {
+        return name.toUpperCase();
+    }
+
+    @Override
+    public String toString() {
+        return "CatalogSnapshot{" +
+               "tables=" + tables.size() +
+               ", stale=" + staleTables.size() +
+               '}';
+    }
+}
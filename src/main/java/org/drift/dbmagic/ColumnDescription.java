@@ -13,12 +13,26 @@ public class ColumnDescription implements Serializable {
     private boolean isNullable = true;
     private String defaultValue = null;
     private String nativeType;
-    private boolean isCompressed = false;
+    private Compression compression;
 
     public ColumnDescription(String name) {
         this.name = name.toUpperCase();
     }
 
+    /**
+     * @return a copy that can be changed independently of this one
+     */
+    public ColumnDescription copy() {
+        ColumnDescription copy = new ColumnDescription(name);
+        copy.dbType = dbType;
+        copy.size = size;
+        copy.isNullable = isNullable;
+        copy.defaultValue = defaultValue;
+        copy.nativeType = nativeType;
+        copy.compression = compression;
+        return copy;
+    }
+
     public String getName() {
         return name;
     }
@@ -97,11 +111,26 @@ public class ColumnDescription implements Serializable {
     }
 
     public boolean isCompressed() {
-        return isCompressed;
+        return compression != null;
     }
 
+    /**
+     * Compresses the column at the {@link Compression#MEDIUM medium} level, or not at all.
+     */
     public void setCompressed(boolean compressed) {
-        isCompressed = compressed;
+        compression = compressed ? Compression.MEDIUM : null;
+    }
+
+    /**
+     * @param compression null not to compress the column
+     */
+    public ColumnDescription compressed(Compression compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public Compression getCompression() {
+        return compression;
     }
 
     @Override
@@ -3,10 +3,13 @@ package org.drift.dbmagic;
 import java.lang.annotation.*;
 
 /**
+ * Compresses the column (a String @Lob), see {@link Compression}.
+ *
  * @author Dima Frid
  */
 @Retention(RetentionPolicy.RUNTIME)
 @Target({ElementType.FIELD, ElementType.METHOD})
 @Inherited
 public @interface Compressed {
+    Compression value() default Compression.MEDIUM;
 }
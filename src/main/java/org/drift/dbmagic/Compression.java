@@ -0,0 +1,15 @@
+package org.drift.dbmagic;
+
+/**
+ * How hard a {@link Compressed} column is compressed: a higher level trades CPU on writes for space and I/O.
+ * <p/>
+ * Oracle compresses SecureFile LOBs at the very level; PostgreSQL compresses LOW and MEDIUM with lz4 (where the server
+ * supports it) and HIGH with pglz; H2 compresses all the LOBs of the database alike, with DEFLATE.
+ *
+ * @author Dima Frid
+ */
+public enum Compression {
+    LOW,
+    MEDIUM,
+    HIGH
+}
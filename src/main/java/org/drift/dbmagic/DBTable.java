@@ -1,6 +1,9 @@
 package org.drift.dbmagic;
 
 /**
+ * A class describing its table. A class that can do it without being instantiated may hold its description
+ * in a static field named {@link TableDescriptionUtil#TABLE_DESCRIPTION_FIELD}.
+ *
  * @author Dima Frid
  */
 public interface DBTable {
@@ -0,0 +1,247 @@
+package org.drift.dbmagic;
+
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs {@link DdlStep}s as a dependency graph: a step starts as soon as all of its dependencies are done,
+ * so only true dependencies serialize. Steps depending (directly or not) on a failed step are skipped.
+ * <p/>
+ * After {@link #execute} the per-step timings are available through {@link #getSteps} and the chain of steps
+ * that determined the total run time through {@link #getCriticalPath}.
+ *
+ * @author Dima Frid
+ */
+public class DdlScheduler {
+    private static final AtomicInteger poolNumber = new AtomicInteger(1);
+
+    private final int parallelism;
+
+    private final List<DdlStep> steps = new ArrayList<DdlStep>();
+
+    private long durationMillis;
+
+    private Logger log;
+
+    public DdlScheduler(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    public DdlStep add(DdlStep step) {
+        steps.add(step);
+        return step;
+    }
+
+    public List<DdlStep> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    public void execute() {
+        for (DdlStep step : steps) {
+            for (DdlStep dependency : step.getDependencies()) {
+                if (!steps.contains(dependency)) {
+                    throw new IllegalStateException("Step [" + step.getName() + "] depends on unscheduled step [" + dependency.getName() + "]");
+                }
+            }
+        }
+
+        Map<DdlStep, Integer> unmetDependencies = new HashMap<DdlStep, Integer>();
+        Map<DdlStep, List<DdlStep>> dependents = new HashMap<DdlStep, List<DdlStep>>();
+        for (DdlStep step : steps) {
+            unmetDependencies.put(step, step.getDependencies().size());
+            for (DdlStep dependency : step.getDependencies()) {
+                List<DdlStep> list = dependents.get(dependency);
+                if (list == null) {
+                    list = new ArrayList<DdlStep>();
+                    dependents.put(dependency, list);
+                }
+                list.add(step);
+            }
+        }
+
+        long start = System.currentTimeMillis();
+        final String namePrefix = "dbmagic-ddl-" + poolNumber.getAndIncrement() + "-";
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new ThreadFactory() {
+            private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        CompletionService<DdlStep> completionService = new ExecutorCompletionService<DdlStep>(executor);
+        try {
+            int running = 0;
+            int finished = 0;
+            for (DdlStep step : steps) {
+                if (unmetDependencies.get(step) == 0) {
+                    submit(completionService, step);
+                    running++;
+                }
+            }
+
+            while (running > 0) {
+                DdlStep step = completionService.take().get();
+                running--;
+                finished++;
+                logStep(step);
+
+                List<DdlStep> stepDependents = dependents.get(step);
+                if (stepDependents == null) {
+                    continue;
+                }
+
+                if (step.getStatus() == DdlStep.Status.DONE) {
+                    for (DdlStep dependent : stepDependents) {
+                        int unmet = unmetDependencies.get(dependent) - 1;
+                        unmetDependencies.put(dependent, unmet);
+                        if (unmet == 0 && dependent.getStatus() == DdlStep.Status.PENDING) {
+                            submit(completionService, dependent);
+                            running++;
+                        }
+                    }
+                } else {
+                    finished += skipDependents(step, dependents);
+                }
+            }
+
+            if (finished < steps.size()) {
+                throw new IllegalStateException("Cyclic dependencies between DDL steps; " + (steps.size() - finished) + " steps never ran");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while running DDL steps", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unexpected DDL scheduler failure", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            durationMillis = System.currentTimeMillis() - start;
+        }
+    }
+
+    private void submit(CompletionService<DdlStep> completionService, final DdlStep step) {
+        completionService.submit(new Callable<DdlStep>() {
+            public DdlStep call() {
+                step.run();
+                return step;
+            }
+        });
+    }
+
+    private int skipDependents(DdlStep failedStep, Map<DdlStep, List<DdlStep>> dependents) {
+        int skipped = 0;
+        LinkedList<DdlStep> queue = new LinkedList<DdlStep>();
+        queue.add(failedStep);
+        while (!queue.isEmpty()) {
+            List<DdlStep> stepDependents = dependents.get(queue.removeFirst());
+            if (stepDependents == null) {
+                continue;
+            }
+            for (DdlStep dependent : stepDependents) {
+                if (dependent.getStatus() == DdlStep.Status.PENDING) {
+                    dependent.skip();
+                    skipped++;
+                    logError("Skipping " + dependent.getName() + " since " + failedStep.getName() + " failed");
+                    queue.add(dependent);
+                }
+            }
+        }
+        return skipped;
+    }
+
+    /**
+     * @return the longest chain of dependent steps, by their actual durations; the first step is the first to run
+     */
+    public List<DdlStep> getCriticalPath() {
+        Map<DdlStep, Long> finishTimes = new HashMap<DdlStep, Long>();
+        Map<DdlStep, DdlStep> predecessors = new HashMap<DdlStep, DdlStep>();
+
+        DdlStep last = null;
+        for (DdlStep step : topologicalOrder()) {
+            long longestDependency = 0;
+            for (DdlStep dependency : step.getDependencies()) {
+                long finish = finishTimes.get(dependency);
+                if (predecessors.get(step) == null || finish > longestDependency) {
+                    longestDependency = finish;
+                    predecessors.put(step, dependency);
+                }
+            }
+            long finish = longestDependency + step.getDurationMillis();
+            finishTimes.put(step, finish);
+            if (last == null || finish > finishTimes.get(last)) {
+                last = step;
+            }
+        }
+
+        LinkedList<DdlStep> path = new LinkedList<DdlStep>();
+        for (DdlStep step = last; step != null; step = predecessors.get(step)) {
+            path.addFirst(step);
+        }
+        return path;
+    }
+
+    private List<DdlStep> topologicalOrder() {
+        List<DdlStep> ordered = new ArrayList<DdlStep>();
+        Set<DdlStep> visited = new HashSet<DdlStep>();
+        for (DdlStep step : steps) {
+            visit(step, visited, ordered);
+        }
+        return ordered;
+    }
+
+    private void visit(DdlStep step, Set<DdlStep> visited, List<DdlStep> ordered) {
+        if (!visited.add(step)) {
+            return;
+        }
+        for (DdlStep dependency : step.getDependencies()) {
+            visit(dependency, visited, ordered);
+        }
+        ordered.add(step);
+    }
+
+    public List<DdlStep> getFailedSteps() {
+        List<DdlStep> failed = new ArrayList<DdlStep>();
+        for (DdlStep step : steps) {
+            if (step.getStatus() == DdlStep.Status.FAILED) {
+                failed.add(step);
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * @return the wall-clock time of the whole run, in milliseconds
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setLog(Logger log) {
+        this.log = log;
+    }
+
+    private void logStep(DdlStep step) {
+        if (log == null) {
+            return;
+        }
+        if (step.getStatus() == DdlStep.Status.FAILED) {
+            log.error("Failed: " + step, step.getError());
+        } else {
+            log.debug("Done: " + step);
+        }
+    }
+
+    private void logError(String msg) {
+        if (log != null) {
+            log.error(msg);
+        }
+    }
+}
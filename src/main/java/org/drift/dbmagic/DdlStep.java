@@ -0,0 +1,99 @@
+package org.drift.dbmagic;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A single DDL step (create a table, an index, a PK etc.) scheduled by {@link DdlScheduler}.
+ * A step runs only after all the steps it {@link #dependsOn depends on} have completed successfully.
+ *
+ * @author Dima Frid
+ */
+public abstract class DdlStep {
+
+    public static enum Status {
+        PENDING, RUNNING, DONE, FAILED, SKIPPED
+    }
+
+    private final String name;
+    private final String target;
+    private final Set<DdlStep> dependencies = new LinkedHashSet<DdlStep>();
+
+    private volatile Status status = Status.PENDING;
+    private volatile long startTime;
+    private volatile long endTime;
+    private volatile Exception error;
+
+    protected DdlStep(String name, String target) {
+        this.name = name;
+        this.target = target;
+    }
+
+    protected abstract void execute() throws Exception;
+
+    public DdlStep dependsOn(DdlStep... steps) {
+        for (DdlStep step : steps) {
+            if (step != null && step != this) {
+                dependencies.add(step);
+            }
+        }
+        return this;
+    }
+
+    public Set<DdlStep> getDependencies() {
+        return Collections.unmodifiableSet(dependencies);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the name of the table the step works on
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public Exception getError() {
+        return error;
+    }
+
+    /**
+     * @return the wall-clock time the step took, in milliseconds; 0 if it didn't run
+     */
+    public long getDurationMillis() {
+        if (status != Status.DONE && status != Status.FAILED) {
+            return 0;
+        }
+        return (endTime - startTime) / 1000000;
+    }
+
+    void run() {
+        status = Status.RUNNING;
+        startTime = System.nanoTime();
+        try {
+            execute();
+            endTime = System.nanoTime();
+            status = Status.DONE;
+        } catch (Exception e) {
+            endTime = System.nanoTime();
+            error = e;
+            status = Status.FAILED;
+        }
+    }
+
+    void skip() {
+        status = Status.SKIPPED;
+    }
+
+    @Override
+    public String toString() {
+        return name + " [" + status + (getDurationMillis() > 0 ? ", " + getDurationMillis() + " ms" : "") + "]";
+    }
+}
@@ -2,7 +2,13 @@ package org.drift.dbmagic;
 
 import org.apache.log4j.Logger;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
 
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
 import java.util.*;
 
 /**
@@ -27,24 +33,127 @@ public abstract class Dialect {
 
     public abstract String indexExistenceQuery();
 
+    /**
+     * @return a query returning a row if there is any user table at all
+     */
+    public abstract String anyTableExistenceQuery();
+
+    /**
+     * @return a query returning a row if any row of the table matches the condition, without reading on past it
+     */
+    public String rowExistenceQuery(String tableName, String condition) {
+        return "select 1 from " + tableName + " where " + condition + " limit 1";
+    }
+
+    /**
+     * @return a query of the highest key (HI) and the number of rows (N) of the next chunk of at most chunkSize rows,
+     * in key order starting at the key given as its parameter; HI is null past the last row
+     * @param condition narrows down the rows of the chunk; null for all of them
+     */
+    public String getBackfillChunkQuery(String tableName, String keyColumn, String condition, int chunkSize) {
+        return "select max(" + keyColumn + ") as HI, count(*) as N from (select " + keyColumn + " from " + tableName +
+               " where " + keyColumn + " >= ?" + (condition != null ? " and " + condition : "") +
+               " order by " + keyColumn + " limit " + chunkSize + ") chunk";
+    }
+
+    /**
+     * The table names passed to the catalog queries below may be qualified by the schema.
+     */
     public abstract Map<String, ColumnDescription> getColumns(String tableName, JdbcTemplate template);
 
     public abstract String getPrimaryKey(String tableName, JdbcTemplate template);
 
+    /**
+     * @return names of the table indexes, excluding the one backing the PK constraint
+     */
     public abstract Set<String> getIndexes(String tableName, JdbcTemplate template);
 
+    /**
+     * @return definitions (columns, uniqueness, lower) of the table indexes by their names, excluding the PK
+     */
+    public abstract Map<String, IndexDescription> getIndexDefinitions(String tableName, JdbcTemplate template);
+
+    /**
+     * Loads tables, columns, indexes and PK constraints of the whole schema in a few set-based queries.
+     */
+    public abstract CatalogSnapshot getCatalogSnapshot(JdbcTemplate template);
+
+    /**
+     * @return the longest name of a table, column or index the database takes; 0 for no practical limit
+     */
+    public int getMaxIdentifierLength() {
+        return 0;
+    }
+
+    /**
+     * @return the number of rows to fetch per round trip when reading the catalog; 0 for the driver's default
+     */
+    public int getCatalogFetchSize() {
+        return 0;
+    }
+
+    /**
+     * Runs a catalog query with {@link #getCatalogFetchSize}; the other statements on the template keep the driver's default.
+     */
+    protected void queryCatalog(JdbcTemplate template, String sql, RowCallbackHandler rch, final Object... args) {
+        final int fetchSize = getCatalogFetchSize();
+        template.query(sql, new PreparedStatementSetter() {
+            public void setValues(PreparedStatement ps) throws SQLException {
+                if (fetchSize > 0) {
+                    ps.setFetchSize(fetchSize);
+                }
+                for (int i = 0; i < args.length; i++) {
+                    StatementCreatorUtils.setParameterValue(ps, i + 1, SqlTypeValue.TYPE_UNKNOWN, args[i]);
+                }
+            }
+        }, rch);
+    }
+
+    /**
+     * @param tableName qualified by the schema if the table is; {@link #tableExistenceQuery} looks in the schema of
+     * the current user only
+     */
     public boolean tableExists(String tableName, JdbcTemplate template) {
         String sql = tableExistenceQuery();
-        List<Object> res = template.queryForList(sql, Object.class, tableName);
+        List<Object> res = template.queryForList(sql, Object.class, SchemaUtil.stripSchema(tableName));
         return res != null && !res.isEmpty();
     }
 
+    public boolean isSchemaEmpty(JdbcTemplate template) {
+        List<Object> res = template.queryForList(anyTableExistenceQuery(), Object.class);
+        return res == null || res.isEmpty();
+    }
+
+    /**
+     * @return the statements combined into a single one that runs them all in one round trip,
+     * or null if the dialect can't do that and they should be sent as a JDBC batch
+     */
+    public String composeScript(List<String> statements) {
+        return null;
+    }
+
     public String toMetadataType(ColumnType type) {
         return toNativeType(type);
     }
 
     public String getAddColumnStatement(String tableName, String columnSQL) {
-        return "";
+        return "alter table " + tableName + " add column " + columnSQL;
+    }
+
+    /**
+     * @param addedColumns SQL of the columns to add
+     * @param alteredColumns dialect specific clauses changing existing columns, or the table itself
+     * @return statements applying all the changes; one statement per change unless the dialect can combine them
+     */
+    public List<String> composeAlterTableStatements(String tableName, List<String> addedColumns, List<String> alteredColumns) {
+        List<String> statements = new ArrayList<String>();
+        for (String columnSQL : addedColumns) {
+            statements.add(getAddColumnStatement(tableName, columnSQL));
+        }
+        for (String clause : alteredColumns) {
+            statements.add("alter table " + tableName + " " + clause);
+        }
+        return statements;
     }
 
     public int getVarcharColumnSize(String tableName, String columnName, Integer requiredSize) {
@@ -97,16 +206,392 @@ public abstract class Dialect {
 
     public abstract boolean pkRequiresIndex();
 
+    /**
+     * @return whether several indexes of the same table may be built at the same time
+     */
+    public boolean supportsConcurrentIndexBuilds() {
+        return false;
+    }
+
+    /**
+     * @param tableName qualified by the schema if the table is; see {@link #tableExists}
+     */
     public boolean indexExists(String indexName, String tableName, JdbcTemplate template) {
         String sql = indexExistenceQuery();
-        List<Object> res = template.queryForList(sql, Object.class, indexName, tableName);
+        List<Object> res = template.queryForList(sql, Object.class, indexName, SchemaUtil.stripSchema(tableName));
         return res != null && !res.isEmpty();
     }
 
+    public boolean supportsOnlineIndexBuilds() {
+        return false;
+    }
+
+    /**
+     * @return whether the indexes of a partitioned table can be built online, given {@link #supportsOnlineIndexBuilds}
+     */
+    public boolean supportsOnlinePartitionedIndexBuilds() {
+        return supportsOnlineIndexBuilds();
+    }
+
+    /**
+     * @return whether online index builds must run outside of a transaction
+     */
+    public boolean onlineIndexBuildsRequireAutoCommit() {
+        return false;
+    }
+
+    /**
+     * @return the modifier following "create [unique] index" that builds the index without blocking writes,
+     * or null if the dialect doesn't use one
+     */
+    public String getOnlineIndexModifier() {
+        return null;
+    }
+
+    /**
+     * @return the clauses to append to "create index" for an online, parallel or unlogged build
+     */
+    public String getIndexBuildClauses(boolean online, int parallelDegree, boolean noLogging) {
+        return "";
+    }
+
+    /**
+     * @return the statement restoring the defaults of an index built in parallel or unlogged, or null if none is needed
+     */
+    public String getIndexBuildResetStatement(String indexName, int parallelDegree, boolean noLogging) {
+        return null;
+    }
+
+    public String getDropIndexStatement(String indexName, boolean online) {
+        return "drop index " + indexName;
+    }
+
+    /**
+     * @param newIndexName not qualified by the schema
+     */
+    public String getRenameIndexStatement(String indexName, String newIndexName) {
+        return "alter index " + indexName + " rename to " + newIndexName;
+    }
+
+    /**
+     * @return the statement removing what a failed online build of the index left behind, or null if there's nothing to remove
+     */
+    public String getOnlineIndexBuildCleanupStatement(String indexName) {
+        return null;
+    }
+
+    /**
+     * @return whether {@link #getShadowColumnSyncStatements} and {@link #getShadowColumnSwapStatements} are supported,
+     * for online column type changes
+     */
+    public boolean supportsOnlineColumnTypeChanges() {
+        return false;
+    }
+
+    /**
+     * @return the statements (re)creating the trigger that copies the column into its shadow on every insert and update;
+     * none unless {@link #supportsOnlineColumnTypeChanges}
+     */
+    public List<String> getShadowColumnSyncStatements(String tableName, String columnName, String shadowColumnName) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return whether {@link #getShadowColumnSwapStatements} can move a primary key over to the shadow column
+     */
+    public boolean supportsOnlinePrimaryKeyTypeChanges() {
+        return false;
+    }
+
+    /**
+     * @param notNull whether the shadow column got a validated NOT NULL constraint (see {@link #getNotNullConstraintStatements})
+     * and the column should be NOT NULL
+     * @param pkName the primary key to move over to the shadow column, using the given unique index; null if the column
+     * isn't the PK
+     * @return the statements dropping the sync trigger and replacing the column with its shadow; run as one script
+     * (see {@link #composeScript}) where possible; none unless {@link #supportsOnlineColumnTypeChanges}
+     */
+    public List<String> getShadowColumnSwapStatements(String tableName, String columnName, String shadowColumnName,
+                                                      boolean notNull, String pkName, String pkIndexName) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the statements adding a NOT NULL constraint (named by {@link SchemaUtil#composeNotNullConstraintName})
+     * to the column without checking the existing rows, so that it takes effect instantly for new ones;
+     * null if the dialect can't tighten a column online
+     */
+    public List<String> getNotNullConstraintStatements(String tableName, String columnName) {
+        return null;
+    }
+
+    /**
+     * @return the statements checking the existing rows against the constraint added by
+     * {@link #getNotNullConstraintStatements}, without blocking writes for the duration of the check
+     */
+    public List<String> getNotNullValidationStatements(String tableName, String columnName) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the statements turning the validated constraint into the column's NOT NULL, if it isn't one already
+     */
+    public List<String> getNotNullPromotionStatements(String tableName, String columnName) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the session settings to apply before a DDL statement, so that it gives up waiting for its lock
+     * (rather than queueing all the traffic of the table behind it) and doesn't run for too long;
+     * empty if the dialect has no such settings
+     * @param lockTimeoutMillis 0 means no lock timeout
+     * @param statementTimeoutMillis 0 means no statement timeout
+     */
+    public List<String> getDdlTimeoutStatements(long lockTimeoutMillis, long statementTimeoutMillis) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the statements restoring the session settings changed by {@link #getDdlTimeoutStatements}
+     */
+    public List<String> getDdlTimeoutResetStatements() {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return whether the statement failed because it timed out waiting for a lock, so that it's worth retrying
+     */
+    public boolean isLockTimeout(SQLException e) {
+        return false;
+    }
+
+    public boolean supportsPartitioning() {
+        return false;
+    }
+
+    /**
+     * @return whether the primary key and the unique indexes of a partitioned table must include the partition column
+     */
+    public boolean uniqueKeysRequirePartitionColumn() {
+        return false;
+    }
+
+    /**
+     * @param firstPeriod start of the first period of a range partitioned table
+     * @return the clause following the column list of "create table"; empty unless {@link #supportsPartitioning}
+     */
+    public String getPartitionByClause(String tableName, PartitionDescription partitioning, Date firstPeriod) {
+        return "";
+    }
+
+    /**
+     * @return the statements creating the partitions of a list or hash partitioned table just created;
+     * empty if they are created by {@link #getPartitionByClause}
+     */
+    public List<String> getPartitionCreationStatements(String tableName, PartitionDescription partitioning) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the statement creating the partition of the period [from, to), or null if the database creates
+     * the partitions of new periods on its own
+     */
+    public String getRangePartitionCreationStatement(String tableName, String partitionName, Date from, Date to) {
+        return null;
+    }
+
+    /**
+     * @param drop whether to drop the partition along with its rows, or detach it into a table of its own
+     * @return the statement removing the partition from the table, or null if the dialect can't
+     */
+    public String getExpiredPartitionStatement(String tableName, String partitionName, boolean drop) {
+        return null;
+    }
+
+    /**
+     * @return the bounds of the range partitions (the expressions the catalog reports, see
+     * {@link PartitionDescription#parseUpperBound}) by the partition names; null if the table isn't partitioned
+     */
+    public Map<String, String> getPartitionBounds(String tableName, JdbcTemplate template) {
+        return null;
+    }
+
+    /**
+     * @param index whether the options are of an index rather than a table
+     * @return the clause setting the storage options, to append to "create table" (before the partitioning clause)
+     * or to the column list of "create index"; empty if none of them apply
+     */
+    public String getStorageClause(StorageOptions storage, boolean index) {
+        return "";
+    }
+
+    /**
+     * @return the values the storage options set, under the names {@link #readStorageParameters} reports them by;
+     * only these are synced, so the ones that can't be changed on an existing table or index are left out
+     */
+    public Map<String, String> getStorageParameters(StorageOptions storage, boolean index) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * @param indexName null for the storage parameters of the table itself
+     */
+    public Map<String, String> readStorageParameters(String tableName, String indexName, JdbcTemplate template) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * @param parameters the storage parameters of the table to change, as {@link #getStorageParameters} names them
+     * @return clauses changing them, sent along with the changes of the table's columns (see
+     * {@link #composeAlterTableStatements}); empty if the change takes {@link #getStorageAlterationStatements} of its own
+     */
+    public List<String> getStorageAlterationClauses(Map<String, String> parameters) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @param indexName null to alter the table itself
+     * @param parameters the storage parameters to change, as {@link #getStorageParameters} names them
+     */
+    public List<String> getStorageAlterationStatements(String tableName, String indexName, Map<String, String> parameters) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return the compression methods the server has to choose from, if the dialect chooses one; read once per sync
+     */
+    public List<String> getCompressionMethods(JdbcTemplate template) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @param compressionMethods as {@link #getCompressionMethods} reported them
+     * @return how the column is to be compressed, the way {@link #readColumnCompressions} reports it; null if the dialect
+     * can't compress columns of its type
+     */
+    public String getColumnCompression(ColumnDescription column, List<String> compressionMethods) {
+        return null;
+    }
+
+    /**
+     * @param compressionMethods as {@link #getCompressionMethods} reported them
+     * @return how the columns of the table that can be compressed are compressed now, by upper-cased column names
+     */
+    public Map<String, String> readColumnCompressions(String tableName, List<String> compressionMethods, JdbcTemplate template) {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * @return whether the compression is set for the whole database rather than per column, in which case
+     * {@link #getColumnCompressionStatements} are issued at most once per sync
+     */
+    public boolean isCompressionDatabaseWide() {
+        return false;
+    }
+
+    /**
+     * @param compression as {@link #getColumnCompression} requires it
+     * @param current as {@link #readColumnCompressions} reported it, or null if unknown (e.g. the column isn't added yet)
+     * @return clauses changing the compression, sent along with the other changes of the table's columns (see
+     * {@link #composeAlterTableStatements}); empty if the change takes {@link #getColumnCompressionStatements} of its own
+     */
+    public List<String> getColumnCompressionClauses(String columnName, String compression, String current) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @param compression as {@link #getColumnCompression} requires it
+     * @param current as {@link #readColumnCompressions} reported it, or null if unknown (e.g. the column isn't added yet)
+     * @return statements changing the compression, if {@link #getColumnCompressionClauses} has none; they are issued
+     * after the other changes of the table's columns
+     */
+    public List<String> getColumnCompressionStatements(String tableName, String columnName, String compression, String current) {
+        return Collections.emptyList();
+    }
+
+    /**
+     * @return whether changing the compression of a column rewrites its values, rather than applying to new ones only
+     */
+    public boolean compressionRewritesColumn() {
+        return false;
+    }
+
+    /**
+     * @return names of the table indexes that exist but can't be used, e.g. leftovers of failed online builds
+     */
+    public Set<String> getInvalidIndexes(String tableName, JdbcTemplate template) {
+        return new HashSet<String>();
+    }
+
+    /**
+     * @return whether {@link #lowerIndex} creates a real function-based index
+     */
+    public boolean supportsLowerIndex() {
+        return false;
+    }
+
+    /**
+     * Adds a column of a catalog index to the index definitions, creating the index definition on its first column.
+     *
+     * @param definitions index definitions by table and by index names
+     */
+    protected static void addIndexColumn(Map<String, Map<String, IndexDescription>> definitions, String tableName, String indexName,
+                                         String columnName, boolean unique, boolean lower) {
+        Map<String, IndexDescription> tableIndexes = definitions.get(tableName);
+        if (tableIndexes == null) {
+            tableIndexes = new LinkedHashMap<String, IndexDescription>();
+            definitions.put(tableName, tableIndexes);
+        }
+
+        IndexDescription indexDescription = tableIndexes.get(indexName);
+        if (indexDescription == null) {
+            indexDescription = new IndexDescription();
+            tableIndexes.put(indexName, indexDescription);
+        }
+
+        indexDescription.addColumn(columnName.toUpperCase());
+        if (unique) {
+            indexDescription.unique();
+        }
+        if (lower) {
+            indexDescription.lower();
+        }
+    }
+
     public String lowerIndex(String column) {
         return "(" + column + ")"; // default is not supported -> return column name
     }
 
+    /**
+     * @return whether {@link #partialIndexColumn} and {@link #getPartialIndexClause} index only the rows matching
+     * a predicate
+     */
+    public boolean supportsPartialIndexes() {
+        return false;
+    }
+
+    /**
+     * @param column the column, or the expression lower indexes it by
+     * @return what a partial index indexes the column by
+     */
+    public String partialIndexColumn(String column, String predicate) {
+        return column;
+    }
+
+    /**
+     * @return the clause following the column list (and the storage clause) of a partial index
+     */
+    public String getPartialIndexClause(String predicate) {
+        return "";
+    }
+
+    /**
+     * @return whether an index can carry non-key columns (INCLUDE)
+     */
+    public boolean supportsIncludedColumns() {
+        return false;
+    }
+
     public void addCheckConstraints(TableDescription tableDescription, StringBuffer sql, String expressionSeparator) {
     }
 
@@ -1,8 +1,17 @@
 package org.drift.dbmagic;
 
+import org.drift.dbmagic.utils.StringUtils;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
 import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -13,6 +22,10 @@ public class H2Dialect extends Dialect {
 
     private static final EnumMap<ColumnType, String> TYPE_MAP = new EnumMap<ColumnType, String>(ColumnType.class);
 
+    private static final Map<String, String> CATALOG_TYPES = new HashMap<String, String>();
+
+    private static final String USER_TABLES = "table_schema <> 'INFORMATION_SCHEMA'";
+
     static {
         TYPE_MAP.put(ColumnType.BOOLEAN, "TINYINT"); // There is a BOOLEAN type, but it returns java.lang.Boolean which we are not used to
         TYPE_MAP.put(ColumnType.INTEGER, "INT");
@@ -29,10 +42,27 @@ public class H2Dialect extends Dialect {
         TYPE_MAP.put(ColumnType.UUID_STR, "VARCHAR");
     }
 
+    static {
+        // INFORMATION_SCHEMA.COLUMNS reports the names H2 resolves the aliases to
+        CATALOG_TYPES.put("INT", "INTEGER");
+        CATALOG_TYPES.put("FLOAT", "DOUBLE");
+        CATALOG_TYPES.put("RAW", "VARBINARY");
+    }
+
     protected EnumMap<ColumnType, String> getTypeMappings() {
         return TYPE_MAP;
     }
 
+    @Override
+    public String anyTableExistenceQuery() {
+        return "select 1 from information_schema.tables where " + USER_TABLES + " limit 1";
+    }
+
+    @Override
+    public String composeScript(List<String> statements) {
+        return StringUtils.join(statements, ";\n");
+    }
+
     @Override
     public String tableExistenceQuery() {
         return "select 1 from information_schema.tables where table_name = ?";
@@ -45,17 +75,176 @@ public class H2Dialect extends Dialect {
 
     @Override
     public Map<String, ColumnDescription> getColumns(String tableName, JdbcTemplate template) {
-        throw new UnsupportedOperationException();
+        String name = SchemaUtil.stripSchema(tableName);
+        Map<String, Map<String, ColumnDescription>> columns = readColumns(template, " and table_name = ?", name);
+        Map<String, ColumnDescription> tableColumns = columns.get(name);
+        if (tableColumns == null) {
+            return new HashMap<String, ColumnDescription>();
+        }
+        return tableColumns;
+    }
+
+    private Map<String, Map<String, ColumnDescription>> readColumns(JdbcTemplate template, String where, Object... args) {
+        final Map<String, Map<String, ColumnDescription>> columns = new LinkedHashMap<String, Map<String, ColumnDescription>>();
+        String sqlString = "select table_name, column_name, type_name, character_maximum_length, is_nullable, column_default " +
+                           "from information_schema.columns where " + USER_TABLES + where + " order by table_name, ordinal_position";
+        template.query(sqlString, new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                String tableName = rs.getString("table_name");
+                Map<String, ColumnDescription> tableColumns = columns.get(tableName);
+                if (tableColumns == null) {
+                    tableColumns = new HashMap<String, ColumnDescription>();
+                    columns.put(tableName, tableColumns);
+                }
+                ColumnDescription column = readColumn(rs);
+                tableColumns.put(column.getName(), column);
+            }
+        }, args);
+        return columns;
+    }
+
+    private ColumnDescription readColumn(ResultSet rs) throws SQLException {
+        String columnName = rs.getString("column_name");
+        String nativeType = rs.getString("type_name");
+        // H2 reports the precision of every type there, but only the length of strings and binaries is enforced
+        int size = ("VARCHAR".equals(nativeType) || "VARBINARY".equals(nativeType)) ? rs.getInt("character_maximum_length") : 0;
+        return new ColumnDescription(columnName).setNullable("YES".equals(rs.getString("is_nullable")))
+            .ofSize(size).setNativeType(nativeType).ofDefaultValue(readDefaultValue(rs.getString("column_default")));
+    }
+
+    /**
+     * @return the default value of the column as it was given, out of the SQL expression H2 keeps, e.g. <code>'abc'</code>
+     */
+    private static String readDefaultValue(String expression) {
+        if (StringUtils.isEmpty(expression) || "NULL".equalsIgnoreCase(expression)) {
+            return null;
+        }
+        if (expression.length() > 1 && expression.startsWith("'") && expression.endsWith("'")) {
+            return expression.substring(1, expression.length() - 1).replace("''", "'");
+        }
+        return expression;
     }
 
     @Override
     public String getPrimaryKey(String tableName, JdbcTemplate template) {
-        throw new UnsupportedOperationException();
+        String sqlQuery = "select constraint_name from information_schema.constraints where table_name = ? and constraint_type = 'PRIMARY KEY'";
+        List<String> res = template.queryForList(sqlQuery, String.class, SchemaUtil.stripSchema(tableName));
+        if (res.size() == 0) {
+            return null;
+        }
+        return res.get(0);
     }
 
     @Override
     public Set<String> getIndexes(String tableName, JdbcTemplate template) {
-        throw new UnsupportedOperationException();
+        Set<String> indexesNames = new LinkedHashSet<String>();
+        String pk = getPrimaryKey(tableName, template);
+        for (String indexName : getIndexDefinitions(tableName, template).keySet()) {
+            if (pk != null && pk.equalsIgnoreCase(indexName)) continue;
+            indexesNames.add(indexName);
+        }
+        return indexesNames;
+    }
+
+    @Override
+    public Map<String, IndexDescription> getIndexDefinitions(String tableName, JdbcTemplate template) {
+        String name = SchemaUtil.stripSchema(tableName);
+        Map<String, Map<String, IndexDescription>> definitions = readIndexDefinitions(template, " and table_name = ?", name);
+        Map<String, IndexDescription> tableIndexes = definitions.get(name);
+        if (tableIndexes == null) {
+            return new LinkedHashMap<String, IndexDescription>();
+        }
+        return tableIndexes;
+    }
+
+    private Map<String, Map<String, IndexDescription>> readIndexDefinitions(JdbcTemplate template, String where, Object... args) {
+        final Map<String, Map<String, IndexDescription>> definitions = new LinkedHashMap<String, Map<String, IndexDescription>>();
+        // the PK constraint is backed by an internal index of its own
+        String sqlString = "select table_name, index_name, non_unique, column_name from information_schema.indexes " +
+                           "where primary_key = false" + where + " order by table_name, index_name, ordinal_position";
+        template.query(sqlString, new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                addIndexColumn(definitions, rs.getString("table_name"), rs.getString("index_name"), rs.getString("column_name"),
+                               !rs.getBoolean("non_unique"), false);
+            }
+        }, args);
+        return definitions;
+    }
+
+    @Override
+    public CatalogSnapshot getCatalogSnapshot(JdbcTemplate template) {
+        final CatalogSnapshot snapshot = new CatalogSnapshot();
+
+        template.query("select table_name from information_schema.tables where " + USER_TABLES, new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                snapshot.addTable(rs.getString("table_name"));
+            }
+        });
+
+        Map<String, Map<String, ColumnDescription>> columns = readColumns(template, "");
+        for (Map.Entry<String, Map<String, ColumnDescription>> tableColumns : columns.entrySet()) {
+            for (ColumnDescription column : tableColumns.getValue().values()) {
+                snapshot.addColumn(tableColumns.getKey(), column);
+            }
+        }
+
+        Map<String, Map<String, IndexDescription>> definitions = readIndexDefinitions(template, "");
+        for (Map.Entry<String, Map<String, IndexDescription>> tableIndexes : definitions.entrySet()) {
+            for (Map.Entry<String, IndexDescription> index : tableIndexes.getValue().entrySet()) {
+                snapshot.addIndexDefinition(tableIndexes.getKey(), index.getKey(), index.getValue());
+            }
+        }
+
+        template.query("select table_name, constraint_name from information_schema.constraints where constraint_type = 'PRIMARY KEY'",
+                       new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                snapshot.setPrimaryKey(rs.getString("table_name"), rs.getString("constraint_name"));
+            }
+        });
+
+        return snapshot;
+    }
+
+    @Override
+    public String toMetadataType(ColumnType type) {
+        String nativeType = getTypeMappings().get(type);
+        String metadataType = CATALOG_TYPES.get(nativeType);
+        if (metadataType == null) {
+            return nativeType;
+        }
+        return metadataType;
+    }
+
+    /**
+     * H2 has no constraints that skip the existing rows, so nothing is added up front; once the nulls are backfilled
+     * the column is simply altered, which checks the rows under the table lock (no concern for a test database)
+     */
+    @Override
+    public List<String> getNotNullConstraintStatements(String tableName, String columnName) {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public List<String> getNotNullPromotionStatements(String tableName, String columnName) {
+        return Collections.singletonList("alter table " + tableName + " alter column " + columnName + " set not null");
+    }
+
+    @Override
+    public List<String> getDdlTimeoutStatements(long lockTimeoutMillis, long statementTimeoutMillis) {
+        if (lockTimeoutMillis <= 0) {
+            return Collections.emptyList();
+        }
+        return Collections.singletonList("set lock_timeout " + lockTimeoutMillis);
+    }
+
+    @Override
+    public List<String> getDdlTimeoutResetStatements() {
+        return Collections.singletonList("set lock_timeout 1000"); // H2's default
+    }
+
+    @Override
+    public boolean isLockTimeout(SQLException e) {
+        return e.getErrorCode() == 50200; // LOCK_TIMEOUT_1
     }
 
     @Override
@@ -63,4 +252,35 @@ public class H2Dialect extends Dialect {
         return true;
     }
 
+    /**
+     * H2 compresses all the LOBs of the database alike (COMPRESS_LOB), so all compressed columns get DEFLATE.
+     */
+    @Override
+    public String getColumnCompression(ColumnDescription column, List<String> compressionMethods) {
+        return SchemaUtil.isLOB(column) ? "DEFLATE" : null;
+    }
+
+    @Override
+    public Map<String, String> readColumnCompressions(String tableName, List<String> compressionMethods, JdbcTemplate template) {
+        final Map<String, String> compressions = new HashMap<String, String>();
+        template.query("select c.column_name, s.value from information_schema.columns c " +
+                       "left join information_schema.settings s on s.name = 'COMPRESS_LOB' " +
+                       "where c.table_name = ? and c.type_name in ('CLOB', 'BLOB')", new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                compressions.put(rs.getString("column_name"), rs.getString("value") == null ? "NO" : rs.getString("value"));
+            }
+        }, SchemaUtil.stripSchema(tableName).toUpperCase());
+        return compressions;
+    }
+
+    @Override
+    public boolean isCompressionDatabaseWide() {
+        return true;
+    }
+
+    @Override
+    public List<String> getColumnCompressionStatements(String tableName, String columnName, String compression, String current) {
+        return Collections.singletonList("set compress_lob " + compression.toLowerCase());
+    }
+
 }
\ No newline at end of file
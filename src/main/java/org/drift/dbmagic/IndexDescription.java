@@ -11,13 +11,35 @@ import java.util.List;
 public class IndexDescription implements Serializable {
 
     private List<String> columnNames = new ArrayList<String>();
+    private List<String> includedColumnNames = new ArrayList<String>();
+    private String predicate;
     private boolean unique;
     private boolean lower;
+    private boolean online;
+    private int parallelDegree;
+    private boolean noLogging;
+    private StorageOptions storage;
 
     public IndexDescription(String... columnNames) {
         this.columnNames.addAll(Arrays.asList(columnNames));
     }
 
+    /**
+     * @return a copy that can be changed independently of this one
+     */
+    public IndexDescription copy() {
+        IndexDescription copy = new IndexDescription(columnNames.toArray(new String[columnNames.size()]));
+        copy.includedColumnNames.addAll(includedColumnNames);
+        copy.predicate = predicate;
+        copy.unique = unique;
+        copy.lower = lower;
+        copy.online = online;
+        copy.parallelDegree = parallelDegree;
+        copy.noLogging = noLogging;
+        copy.storage = storage == null ? null : storage.copy();
+        return copy;
+    }
+
     public IndexDescription addColumn(String columnName) {
         columnNames.add(columnName);
         return this;
@@ -41,6 +63,88 @@ public class IndexDescription implements Serializable {
         return lower;
     }
 
+    /**
+     * Indexes only the rows matching the predicate (an SQL condition on the table's columns, e.g. STATUS = 'PENDING').
+     * On PostgreSQL it's the WHERE of a partial index; on Oracle the indexed columns become CASE expressions that
+     * are null, and so not indexed, for the other rows, and only queries using the same expressions can use the index.
+     * Where partial indexes aren't supported, a non-unique index covers all the rows and a unique one isn't created.
+     */
+    public IndexDescription where(String predicate) {
+        this.predicate = predicate;
+        return this;
+    }
+
+    public String getPredicate() {
+        return predicate;
+    }
+
+    public boolean isPartial() {
+        return predicate != null;
+    }
+
+    /**
+     * Adds non-key columns to the index, so that queries reading only them can be answered from the index alone
+     * (INCLUDE on PostgreSQL 11+). Elsewhere they become trailing key columns of a non-unique index, and are
+     * left out of a unique one.
+     */
+    public IndexDescription include(String... columnNames) {
+        includedColumnNames.addAll(Arrays.asList(columnNames));
+        return this;
+    }
+
+    public List<String> getIncludedColumnNames() {
+        return includedColumnNames;
+    }
+
+    /**
+     * Builds the index without blocking writes to an existing table, where the dialect supports it.
+     */
+    public IndexDescription online() {
+        online = true;
+        return this;
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    /**
+     * Builds the index using the given degree of parallelism, where the dialect supports it.
+     */
+    public IndexDescription parallel(int degree) {
+        parallelDegree = degree;
+        return this;
+    }
+
+    public int getParallelDegree() {
+        return parallelDegree;
+    }
+
+    /**
+     * Builds the index without redo logging, where the dialect supports it.
+     */
+    public IndexDescription noLogging() {
+        noLogging = true;
+        return this;
+    }
+
+    public boolean isNoLogging() {
+        return noLogging;
+    }
+
+    /**
+     * Storage options aren't part of the index definition: an existing index drifting from them is altered rather than
+     * rebuilt.
+     */
+    public IndexDescription storage(StorageOptions storage) {
+        this.storage = storage;
+        return this;
+    }
+
+    public StorageOptions getStorage() {
+        return storage;
+    }
+
     public List<String> getColumnNames() {
         return columnNames;
     }
@@ -55,6 +159,8 @@ public class IndexDescription implements Serializable {
         if (unique != that.unique) return false;
         if (lower != that.lower) return false;
         if (columnNames != null ? !columnNames.equals(that.columnNames) : that.columnNames != null) return false;
+        if (!includedColumnNames.equals(that.includedColumnNames)) return false;
+        if (predicate != null ? !predicate.equals(that.predicate) : that.predicate != null) return false;
 
         return true;
     }
@@ -68,6 +174,7 @@ public class IndexDescription implements Serializable {
 
     @Override
     public String toString() {
-        return columnNames.toString() + (isUnique() ? "; unique" : "") +  (isLower() ? "; lower" : "");
+        return columnNames.toString() + (isUnique() ? "; unique" : "") +  (isLower() ? "; lower" : "") +
+               (includedColumnNames.isEmpty() ? "" : "; include " + includedColumnNames) + (isPartial() ? "; where " + predicate : "");
     }
 }
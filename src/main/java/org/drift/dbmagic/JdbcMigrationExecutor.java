@@ -0,0 +1,358 @@
+package org.drift.dbmagic;
+
+import org.apache.log4j.Logger;
+import org.springframework.dao.CannotAcquireLockException;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The default {@link MigrationExecutor}: executes steps through a {@link JdbcTemplate}, so that they join
+ * a transaction bound to the current thread, if any. Steps that must run outside of a transaction get a connection
+ * of their own, in auto-commit mode. Retryable steps (e.g. online index builds) are retried with a growing delay,
+ * after their cleanup statement removed what the failed attempt left behind.
+ * <p/>
+ * With a {@link #setLockTimeout lock timeout} set, every statement runs in a session that gives up waiting for its lock
+ * after that long, rather than queueing all the traffic of the table behind it; statements that timed out are retried
+ * with a jittered, exponentially growing delay until the {@link #setLockRetryBudget retry budget} is spent.
+ *
+ * @author Dima Frid
+ */
+public class JdbcMigrationExecutor implements MigrationExecutor {
+
+    private final DataSource dataSource;
+
+    private final JdbcTemplate template;
+
+    private int retryAttempts = 3;
+
+    private long retryDelay = 1000;
+
+    private Dialect dialect;
+
+    private long lockTimeout = 0;
+
+    private long statementTimeout = 0;
+
+    private long lockRetryBudget = 60000;
+
+    private long lockRetryDelay = 100;
+
+    private long maxLockRetryDelay = 5000;
+
+    private Logger log;
+
+    public JdbcMigrationExecutor(DataSource dataSource) {
+        this.dataSource = dataSource;
+        this.template = new JdbcTemplate(dataSource);
+    }
+
+    public void execute(MigrationStep step) {
+        if (!step.isRetryable()) {
+            executeWithLockRetries(step);
+            return;
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                executeWithLockRetries(step);
+                return;
+            } catch (DataAccessException e) {
+                cleanUp(step);
+
+                if (e instanceof DataIntegrityViolationException || e instanceof LockRetriesExhaustedException ||
+                    attempt >= retryAttempts) {
+                    throw e;
+                }
+
+                logError("Step " + step + " failed (attempt " + attempt + " of " + retryAttempts + "); retrying", e);
+                try {
+                    Thread.sleep(retryDelay * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * Executes the step, retrying it as long as it times out waiting for its lock and the retry budget allows
+     */
+    private void executeWithLockRetries(MigrationStep step) {
+        long start = System.currentTimeMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                execute(step.getSql(), step.isOutsideTransaction());
+                return;
+            } catch (DataAccessException e) {
+                // a failed statement dooms the transaction it ran in (on PostgreSQL); it's up to the caller to retry it all
+                if (!isLockTimeout(e) || !step.isOutsideTransaction() && TransactionSynchronizationManager.isActualTransactionActive()) {
+                    throw e;
+                }
+
+                long delay = ThreadLocalRandom.current().nextLong(getLockRetryDelay(attempt) + 1);
+                long elapsed = System.currentTimeMillis() - start;
+                if (elapsed + delay > lockRetryBudget) {
+                    throw new LockRetriesExhaustedException("Gave up on step " + step + " after " + attempt +
+                                                            " lock timeouts in " + elapsed + " ms", e);
+                }
+
+                logInfo("Step " + step + " timed out waiting for its lock (attempt " + attempt + "); retrying in " + delay + " ms");
+                if (step.isRetryable()) {
+                    cleanUp(step);
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the upper bound of the delay before the given retry: doubled with every attempt, up to the max delay
+     */
+    long getLockRetryDelay(int attempt) {
+        long delay = lockRetryDelay << Math.min(attempt - 1, 30);
+        return delay > 0 && delay < maxLockRetryDelay ? delay : maxLockRetryDelay;
+    }
+
+    private boolean isLockTimeout(DataAccessException e) {
+        if (lockTimeout <= 0 || dialect == null) {
+            return false;
+        }
+
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException && dialect.isLockTimeout((SQLException) cause)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An index build is cleaned up after only if it left the index invalid: it may as well have failed because
+     * a concurrent sync had built the index already, and that one stays.
+     */
+    private void cleanUp(MigrationStep step) {
+        if (step.getType() == MigrationStep.Type.CREATE_INDEX && dialect != null) {
+            String indexName = SchemaUtil.stripSchema(step.getTarget());
+            String tableName = SchemaUtil.getSchemaPrefix(step.getTarget()) + step.getTableName();
+            boolean invalid = false;
+            for (String invalidIndex : dialect.getInvalidIndexes(tableName, template)) {
+                invalid |= invalidIndex.equalsIgnoreCase(indexName);
+            }
+            if (!invalid) {
+                logInfo("The failed step left no invalid index behind: " + step);
+                return;
+            }
+        }
+
+        logInfo("Cleaning up after the failed step: " + step.getRetryCleanupSql());
+        execute(step.getRetryCleanupSql(), step.isOutsideTransaction());
+    }
+
+    private void execute(final String sql, boolean outsideTransaction) {
+        if (outsideTransaction) {
+            executeOutsideTransaction(sql);
+        } else if (!hasTimeouts()) {
+            template.execute(sql);
+        } else {
+            // the session settings have to apply to the very connection the statement runs on
+            template.execute(new ConnectionCallback<Void>() {
+                public Void doInConnection(Connection connection) throws SQLException {
+                    execute(connection, sql);
+                    return null;
+                }
+            });
+        }
+    }
+
+    /**
+     * Executes the statement on a connection of its own, in auto-commit mode, so that it doesn't join
+     * a transaction that might be bound to the current thread.
+     */
+    private void executeOutsideTransaction(String sql) {
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            if (!connection.getAutoCommit()) {
+                connection.setAutoCommit(true);
+            }
+            execute(connection, sql);
+        } catch (SQLException e) {
+            throw template.getExceptionTranslator().translate("Executing outside of transaction", sql, e);
+        } finally {
+            JdbcUtils.closeConnection(connection);
+        }
+    }
+
+    private void execute(Connection connection, String sql) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            if (!hasTimeouts()) {
+                statement.execute(sql);
+                return;
+            }
+
+            for (String setting : dialect.getDdlTimeoutStatements(lockTimeout, statementTimeout)) {
+                statement.execute(setting);
+            }
+            if (statementTimeout > 0) {
+                statement.setQueryTimeout((int) ((statementTimeout + 999) / 1000));
+            }
+            try {
+                statement.execute(sql);
+            } finally {
+                resetTimeouts(statement);
+            }
+        } finally {
+            JdbcUtils.closeStatement(statement);
+        }
+    }
+
+    /**
+     * Restores the session settings, so that they don't stick to a pooled connection. Failures are only logged:
+     * the statement's own failure (if any) is what matters; in an aborted transaction the settings are rolled back anyway.
+     */
+    private void resetTimeouts(Statement statement) {
+        try {
+            statement.setQueryTimeout(0);
+            for (String reset : dialect.getDdlTimeoutResetStatements()) {
+                statement.execute(reset);
+            }
+        } catch (SQLException e) {
+            logError("Failed to reset the DDL timeouts", e);
+        }
+    }
+
+    private boolean hasTimeouts() {
+        return dialect != null && (lockTimeout > 0 || statementTimeout > 0);
+    }
+
+    public int getRetryAttempts() {
+        return retryAttempts;
+    }
+
+    public void setRetryAttempts(int retryAttempts) {
+        this.retryAttempts = retryAttempts;
+    }
+
+    public long getRetryDelay() {
+        return retryDelay;
+    }
+
+    /**
+     * @param retryDelay base delay, in milliseconds, before a failed step is retried; it grows with every attempt
+     */
+    public void setRetryDelay(long retryDelay) {
+        this.retryDelay = retryDelay;
+    }
+
+    public Dialect getDialect() {
+        return dialect;
+    }
+
+    /**
+     * @param dialect needed for the {@link #setLockTimeout lock} and {@link #setStatementTimeout statement} timeouts
+     */
+    public void setDialect(Dialect dialect) {
+        this.dialect = dialect;
+    }
+
+    public long getLockTimeout() {
+        return lockTimeout;
+    }
+
+    /**
+     * @param lockTimeout max time, in milliseconds, a statement waits for its lock before it fails and is retried
+     * (PostgreSQL's lock_timeout, Oracle's DDL_LOCK_TIMEOUT - in whole seconds, H2's LOCK_TIMEOUT); 0 (the default)
+     * means the database default
+     */
+    public void setLockTimeout(long lockTimeout) {
+        this.lockTimeout = lockTimeout;
+    }
+
+    public long getStatementTimeout() {
+        return statementTimeout;
+    }
+
+    /**
+     * @param statementTimeout max time, in milliseconds, a statement may run (PostgreSQL's statement_timeout,
+     * the JDBC query timeout - in whole seconds - elsewhere); 0 (the default) means no limit. Statements that exceed it
+     * aren't retried.
+     */
+    public void setStatementTimeout(long statementTimeout) {
+        this.statementTimeout = statementTimeout;
+    }
+
+    public long getLockRetryBudget() {
+        return lockRetryBudget;
+    }
+
+    /**
+     * @param lockRetryBudget max time, in milliseconds, to keep retrying a statement that times out waiting for its lock
+     */
+    public void setLockRetryBudget(long lockRetryBudget) {
+        this.lockRetryBudget = lockRetryBudget;
+    }
+
+    public long getLockRetryDelay() {
+        return lockRetryDelay;
+    }
+
+    /**
+     * @param lockRetryDelay base delay, in milliseconds, before a statement that timed out waiting for its lock is retried;
+     * it doubles with every attempt, up to {@link #setMaxLockRetryDelay}, and the actual delay is a random fraction of it
+     */
+    public void setLockRetryDelay(long lockRetryDelay) {
+        this.lockRetryDelay = lockRetryDelay;
+    }
+
+    public long getMaxLockRetryDelay() {
+        return maxLockRetryDelay;
+    }
+
+    public void setMaxLockRetryDelay(long maxLockRetryDelay) {
+        this.maxLockRetryDelay = maxLockRetryDelay;
+    }
+
+    public void setLog(Logger log) {
+        this.log = log;
+    }
+
+    private void logInfo(String msg) {
+        if (log != null) {
+            log.info(msg);
+        }
+    }
+
+    /**
+     * Thrown when a statement kept timing out waiting for its lock until the retry budget was spent
+     */
+    public static class LockRetriesExhaustedException extends CannotAcquireLockException {
+        private static final long serialVersionUID = 1L;
+
+        public LockRetriesExhaustedException(String msg, Throwable cause) {
+            super(msg, cause);
+        }
+    }
+
+    private void logError(String msg, Exception e) {
+        if (log != null) {
+            log.error(msg, e);
+        }
+    }
+}
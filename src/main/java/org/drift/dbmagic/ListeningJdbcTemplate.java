@@ -0,0 +1,111 @@
+package org.drift.dbmagic;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.SqlProvider;
+
+import javax.sql.DataSource;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * The template {@link SchemaCreator} introspects the catalog with: reports every query, along with its duration
+ * and the number of rows read, as a {@link MigrationEvent.Type#CATALOG_QUERY} event. All the query variants
+ * of {@link JdbcTemplate} end up in one of the two overridden here; the row callback ones are routed through
+ * a counting extractor first, as their results carry no rows to count.
+ *
+ * @author Dima Frid
+ */
+class ListeningJdbcTemplate extends JdbcTemplate {
+
+    interface QueryListener {
+        void queried(String sql, long durationMillis, long rows, Exception failure);
+    }
+
+    private final QueryListener listener;
+
+    ListeningJdbcTemplate(DataSource dataSource, QueryListener listener) {
+        super(dataSource);
+        this.listener = listener;
+    }
+
+    @Override
+    public void query(String sql, RowCallbackHandler rch) throws DataAccessException {
+        query(sql, new RowCountingExtractor(rch));
+    }
+
+    @Override
+    public void query(String sql, PreparedStatementSetter pss, RowCallbackHandler rch) throws DataAccessException {
+        query(sql, pss, new RowCountingExtractor(rch));
+    }
+
+    @Override
+    public void query(PreparedStatementCreator psc, RowCallbackHandler rch) throws DataAccessException {
+        query(psc, new RowCountingExtractor(rch));
+    }
+
+    @Override
+    public <T> T query(String sql, ResultSetExtractor<T> rse) throws DataAccessException {
+        long start = System.currentTimeMillis();
+        try {
+            T result = super.query(sql, rse);
+            listener.queried(sql, System.currentTimeMillis() - start, countRows(rse, result), null);
+            return result;
+        } catch (DataAccessException e) {
+            listener.queried(sql, System.currentTimeMillis() - start, -1, e);
+            throw e;
+        }
+    }
+
+    @Override
+    public <T> T query(PreparedStatementCreator psc, PreparedStatementSetter pss, ResultSetExtractor<T> rse) throws DataAccessException {
+        String sql = psc instanceof SqlProvider ? ((SqlProvider) psc).getSql() : null;
+        long start = System.currentTimeMillis();
+        try {
+            T result = super.query(psc, pss, rse);
+            listener.queried(sql, System.currentTimeMillis() - start, countRows(rse, result), null);
+            return result;
+        } catch (DataAccessException e) {
+            listener.queried(sql, System.currentTimeMillis() - start, -1, e);
+            throw e;
+        }
+    }
+
+    private static long countRows(ResultSetExtractor<?> rse, Object result) {
+        if (rse instanceof RowCountingExtractor) {
+            return ((RowCountingExtractor) rse).rows;
+        }
+        if (result instanceof Collection) {
+            return ((Collection<?>) result).size();
+        }
+        if (result instanceof Map) {
+            return ((Map<?, ?>) result).size();
+        }
+        return -1;
+    }
+
+    private static class RowCountingExtractor implements ResultSetExtractor<Object> {
+
+        private final RowCallbackHandler rch;
+
+        private long rows;
+
+        RowCountingExtractor(RowCallbackHandler rch) {
+            this.rch = rch;
+        }
+
+        public Object extractData(ResultSet rs) throws SQLException {
+            while (rs.next()) {
+                rch.processRow(rs);
+                rows++;
+            }
+            return null;
+        }
+    }
+}
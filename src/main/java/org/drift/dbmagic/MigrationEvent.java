@@ -0,0 +1,121 @@
+package org.drift.dbmagic;
+
+/**
+ * What {@link SchemaCreator} tells its {@link MigrationListener}s. Events are immutable.
+ *
+ * @author Dima Frid
+ */
+public class MigrationEvent {
+
+    public static enum Type {
+        /** a query of the catalog (or of dbmagic's own tables); affected is the number of rows read */
+        CATALOG_QUERY,
+        /** a DDL statement is about to be executed */
+        DDL_START,
+        /**
+         * a DDL statement was executed; affected is the number of rows it read or rewrote as estimated by its step
+         * (see {@link MigrationStep#getEstimatedCost}), or the number of statements of a batch
+         */
+        DDL_END,
+        /** a table is about to be created or updated */
+        TABLE_START,
+        /** a table was created or updated; affected is the number of DDL statements it took */
+        TABLE_END,
+        /** a catalog query, a DDL statement or a table failed; see {@link #getFailure} */
+        FAILURE
+    }
+
+    private final Type type;
+    private final String tableName;
+    private final String target;
+    private final MigrationStep.Type stepType;
+    private final String sql;
+    private final long durationMillis;
+    private final long affected;
+    private final Exception failure;
+
+    public MigrationEvent(Type type, String tableName, String target, MigrationStep.Type stepType, String sql,
+                          long durationMillis, long affected, Exception failure) {
+        this.type = type;
+        this.tableName = tableName;
+        this.target = target;
+        this.stepType = stepType;
+        this.sql = sql;
+        this.durationMillis = durationMillis;
+        this.affected = affected;
+        this.failure = failure;
+    }
+
+    static MigrationEvent ofStep(Type type, MigrationStep step, long durationMillis, long affected, Exception failure) {
+        return new MigrationEvent(type, step.getTableName(), step.getTarget(), step.getType(), step.getSql(),
+                                  durationMillis, affected, failure);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the table being synced; null for catalog queries that aren't about a specific table (e.g. the snapshot)
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return the object the event is about: table, column, index or constraint; null for catalog queries
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    /**
+     * @return the kind of the DDL statement; null for other events
+     */
+    public MigrationStep.Type getStepType() {
+        return stepType;
+    }
+
+    /**
+     * @return the statement executed; null for table events
+     */
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return how long it took; 0 for start events
+     */
+    public long getDurationMillis() {
+        return durationMillis;
+    }
+
+    /**
+     * @return the number of rows or objects affected, as per the event type; -1 if unknown
+     */
+    public long getAffected() {
+        return affected;
+    }
+
+    public Exception getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(type.toString());
+        if (tableName != null) {
+            sb.append(" ").append(tableName);
+        }
+        if (target != null && !target.equals(tableName)) {
+            sb.append(" [").append(target).append("]");
+        }
+        if (sql != null) {
+            sb.append(": ").append(sql);
+        }
+        if (type != Type.DDL_START && type != Type.TABLE_START) {
+            sb.append(" (").append(durationMillis).append(" ms)");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,11 @@
+package org.drift.dbmagic;
+
+/**
+ * Applies {@link MigrationStep}s to a database. {@link SchemaCreator} sends every DDL statement it issues through
+ * its executor, so plugging one in (see {@link SchemaCreator#setMigrationExecutor}) controls how DDL gets executed.
+ *
+ * @author Dima Frid
+ */
+public interface MigrationExecutor {
+    void execute(MigrationStep step);
+}
@@ -0,0 +1,13 @@
+package org.drift.dbmagic;
+
+/**
+ * Gets notified of the catalog queries, DDL statements and tables {@link SchemaCreator} goes through
+ * (see {@link SchemaCreator#addMigrationListener}). Listeners are called synchronously, on the thread doing the work
+ * (which may be one of several parallel workers), so they should be quick and thread safe; whatever they throw
+ * is logged and ignored. See {@link MigrationMetrics} for a ready made one.
+ *
+ * @author Dima Frid
+ */
+public interface MigrationListener {
+    void onEvent(MigrationEvent event);
+}
@@ -0,0 +1,260 @@
+package org.drift.dbmagic;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link MigrationListener} aggregating the events into counters, latency histograms and the slowest tables
+ * and objects; exposed over JMX once {@link #register registered}:
+ * <pre>
+ *     MigrationMetrics metrics = new MigrationMetrics();
+ *     metrics.register("myapp");
+ *     schemaCreator.addMigrationListener(metrics);
+ * </pre>
+ *
+ * @author Dima Frid
+ */
+public class MigrationMetrics implements MigrationListener, MigrationMetricsMXBean {
+
+    public static final String DOMAIN = "org.drift.dbmagic";
+
+    private static final int TOP = 10;
+
+    private final AtomicLong catalogQueries = new AtomicLong();
+    private final AtomicLong catalogQueryMillis = new AtomicLong();
+    private final AtomicLong catalogRowsRead = new AtomicLong();
+    private final Histogram catalogQueryLatency = new Histogram();
+
+    private final AtomicLong ddlStatements = new AtomicLong();
+    private final AtomicLong ddlMillis = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> ddlStatementsByType = new ConcurrentHashMap<String, AtomicLong>();
+    private final Histogram ddlLatency = new Histogram();
+
+    private final AtomicLong tablesSynced = new AtomicLong();
+    private final AtomicLong tableMillis = new AtomicLong();
+    private final Histogram tableLatency = new Histogram();
+
+    private final AtomicLong failures = new AtomicLong();
+    private volatile String lastFailure;
+
+    private final ConcurrentMap<String, AtomicLong> tableTotals = new ConcurrentHashMap<String, AtomicLong>();
+    private final ConcurrentMap<String, AtomicLong> targetTotals = new ConcurrentHashMap<String, AtomicLong>();
+
+    private ObjectName objectName;
+
+    public void onEvent(MigrationEvent event) {
+        switch (event.getType()) {
+            case CATALOG_QUERY:
+                catalogQueries.incrementAndGet();
+                catalogQueryMillis.addAndGet(event.getDurationMillis());
+                if (event.getAffected() > 0) {
+                    catalogRowsRead.addAndGet(event.getAffected());
+                }
+                catalogQueryLatency.record(event.getDurationMillis());
+                break;
+            case DDL_END:
+                ddlStatements.incrementAndGet();
+                ddlMillis.addAndGet(event.getDurationMillis());
+                if (event.getStepType() != null) {
+                    increment(ddlStatementsByType, event.getStepType().toString(), 1);
+                }
+                ddlLatency.record(event.getDurationMillis());
+                if (event.getTarget() != null) {
+                    increment(targetTotals, event.getTarget(), event.getDurationMillis());
+                }
+                break;
+            case TABLE_END:
+                tablesSynced.incrementAndGet();
+                tableMillis.addAndGet(event.getDurationMillis());
+                tableLatency.record(event.getDurationMillis());
+                increment(tableTotals, event.getTableName(), event.getDurationMillis());
+                break;
+            case FAILURE:
+                failures.incrementAndGet();
+                lastFailure = event + (event.getFailure() != null ? " - " + event.getFailure() : "");
+                break;
+        }
+    }
+
+    private static void increment(ConcurrentMap<String, AtomicLong> counters, String key, long delta) {
+        AtomicLong counter = counters.get(key);
+        if (counter == null) {
+            AtomicLong newCounter = new AtomicLong();
+            counter = counters.putIfAbsent(key, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.addAndGet(delta);
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server, as org.drift.dbmagic:type=MigrationMetrics,name=[name]
+     */
+    public synchronized void register(String name) {
+        try {
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=MigrationMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.objectName = objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("Failed to register migration metrics " + name, e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (objectName == null) {
+            return;
+        }
+
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+        } catch (JMException e) {
+            throw new RuntimeException("Failed to unregister migration metrics " + objectName, e);
+        } finally {
+            objectName = null;
+        }
+    }
+
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    public long getCatalogQueries() {
+        return catalogQueries.get();
+    }
+
+    public long getCatalogQueryMillis() {
+        return catalogQueryMillis.get();
+    }
+
+    public long getCatalogRowsRead() {
+        return catalogRowsRead.get();
+    }
+
+    public Map<String, Long> getCatalogQueryLatencyHistogram() {
+        return catalogQueryLatency.toMap();
+    }
+
+    public long getDdlStatements() {
+        return ddlStatements.get();
+    }
+
+    public long getDdlMillis() {
+        return ddlMillis.get();
+    }
+
+    public Map<String, Long> getDdlStatementsByType() {
+        return toMap(ddlStatementsByType);
+    }
+
+    public Map<String, Long> getDdlLatencyHistogram() {
+        return ddlLatency.toMap();
+    }
+
+    public long getTablesSynced() {
+        return tablesSynced.get();
+    }
+
+    public long getTableMillis() {
+        return tableMillis.get();
+    }
+
+    public Map<String, Long> getTableLatencyHistogram() {
+        return tableLatency.toMap();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    public String getLastFailure() {
+        return lastFailure;
+    }
+
+    public Map<String, Long> getSlowestTables() {
+        return top(tableTotals);
+    }
+
+    public Map<String, Long> getSlowestTargets() {
+        return top(targetTotals);
+    }
+
+    public void reset() {
+        for (AtomicLong counter : Arrays.asList(catalogQueries, catalogQueryMillis, catalogRowsRead, ddlStatements,
+                                                ddlMillis, tablesSynced, tableMillis, failures)) {
+            counter.set(0);
+        }
+        catalogQueryLatency.reset();
+        ddlLatency.reset();
+        tableLatency.reset();
+        ddlStatementsByType.clear();
+        tableTotals.clear();
+        targetTotals.clear();
+        lastFailure = null;
+    }
+
+    private static Map<String, Long> toMap(Map<String, AtomicLong> counters) {
+        Map<String, Long> map = new TreeMap<String, Long>();
+        for (Map.Entry<String, AtomicLong> entry : counters.entrySet()) {
+            map.put(entry.getKey(), entry.getValue().get());
+        }
+        return map;
+    }
+
+    private static Map<String, Long> top(Map<String, AtomicLong> totals) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<Map.Entry<String, Long>>(toMap(totals).entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String, Long>>() {
+            public int compare(Map.Entry<String, Long> e1, Map.Entry<String, Long> e2) {
+                return e2.getValue().compareTo(e1.getValue());
+            }
+        });
+
+        Map<String, Long> top = new LinkedHashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : entries.subList(0, Math.min(TOP, entries.size()))) {
+            top.put(entry.getKey(), entry.getValue());
+        }
+        return top;
+    }
+
+    /**
+     * Counts of durations in fixed, roughly logarithmic, buckets
+     */
+    static class Histogram {
+        static final long[] BOUNDS = {1, 5, 10, 50, 100, 500, 1000, 5000, 10000, 60000};
+
+        private final AtomicLongArray counts = new AtomicLongArray(BOUNDS.length + 1);
+
+        void record(long millis) {
+            int bucket = 0;
+            while (bucket < BOUNDS.length && millis > BOUNDS[bucket]) {
+                bucket++;
+            }
+            counts.incrementAndGet(bucket);
+        }
+
+        void reset() {
+            for (int i = 0; i < counts.length(); i++) {
+                counts.set(i, 0);
+            }
+        }
+
+        Map<String, Long> toMap() {
+            Map<String, Long> map = new LinkedHashMap<String, Long>();
+            for (int i = 0; i < BOUNDS.length; i++) {
+                map.put("<=" + BOUNDS[i] + "ms", counts.get(i));
+            }
+            map.put(">" + BOUNDS[BOUNDS.length - 1] + "ms", counts.get(BOUNDS.length));
+            return map;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package org.drift.dbmagic;
+
+import java.util.Map;
+
+/**
+ * The JMX view of {@link MigrationMetrics}. Durations are in milliseconds; histograms map the upper bound
+ * of every bucket ("<=10ms", ..., ">60000ms") to the number of events that fell in it.
+ *
+ * @author Dima Frid
+ */
+public interface MigrationMetricsMXBean {
+
+    long getCatalogQueries();
+
+    long getCatalogQueryMillis();
+
+    long getCatalogRowsRead();
+
+    Map<String, Long> getCatalogQueryLatencyHistogram();
+
+    /**
+     * @return the DDL statements executed; a batch (see {@link SchemaCreator#setBootstrapEnabled}) counts as one
+     */
+    long getDdlStatements();
+
+    long getDdlMillis();
+
+    Map<String, Long> getDdlStatementsByType();
+
+    Map<String, Long> getDdlLatencyHistogram();
+
+    long getTablesSynced();
+
+    long getTableMillis();
+
+    Map<String, Long> getTableLatencyHistogram();
+
+    long getFailures();
+
+    String getLastFailure();
+
+    /**
+     * @return the tables that took the longest to sync, with their total durations, slowest first
+     */
+    Map<String, Long> getSlowestTables();
+
+    /**
+     * @return the objects (columns, indexes, constraints) whose DDL took the longest, with their total durations,
+     * slowest first
+     */
+    Map<String, Long> getSlowestTargets();
+
+    void reset();
+}
@@ -0,0 +1,86 @@
+package org.drift.dbmagic;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * The ordered steps that bring a schema in line with a set of {@link TableDescription}s, as computed by
+ * {@link SchemaCreator#plan} without changing anything. A plan is immutable; it can be reviewed, stored and applied
+ * later (see {@link SchemaCreator#apply}), possibly to many databases sharing the same schema.
+ * <p/>
+ * Steps of the same table must run in the given order; steps of different tables are independent.
+ *
+ * @author Dima Frid
+ */
+public class MigrationPlan implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final List<MigrationStep> steps;
+
+    public MigrationPlan(List<MigrationStep> steps) {
+        this.steps = Collections.unmodifiableList(new ArrayList<MigrationStep>(steps));
+    }
+
+    public List<MigrationStep> getSteps() {
+        return steps;
+    }
+
+    public List<MigrationStep> getSteps(String tableName) {
+        List<MigrationStep> tableSteps = new ArrayList<MigrationStep>();
+        for (MigrationStep step : steps) {
+            if (step.getTableName().equalsIgnoreCase(tableName)) {
+                tableSteps.add(step);
+            }
+        }
+        return tableSteps;
+    }
+
+    /**
+     * @return names of the tables the plan changes, in the order of their first steps
+     */
+    public Set<String> getTableNames() {
+        Set<String> tableNames = new LinkedHashSet<String>();
+        for (MigrationStep step : steps) {
+            tableNames.add(step.getTableName());
+        }
+        return tableNames;
+    }
+
+    public long getEstimatedCost() {
+        long cost = 0;
+        for (MigrationStep step : steps) {
+            cost += step.getEstimatedCost();
+        }
+        return cost;
+    }
+
+    public boolean isEmpty() {
+        return steps.isEmpty();
+    }
+
+    public int size() {
+        return steps.size();
+    }
+
+    /**
+     * @return the plan as an SQL script, one statement per line; a {@link MigrationStep.Chunking chunked} statement
+     * appears as a single one
+     */
+    public String toScript() {
+        StringBuilder script = new StringBuilder();
+        for (MigrationStep step : steps) {
+            script.append(step.getSql()).append(";\n");
+        }
+        return script.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "MigrationPlan{" +
+               "steps=" + steps.size() +
+               ", tables=" + getTableNames().size() +
+               ", estimatedCost=" + getEstimatedCost() +
+               '}';
+    }
+}
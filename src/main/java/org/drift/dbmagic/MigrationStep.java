@@ -0,0 +1,170 @@
+package org.drift.dbmagic;
+
+import java.io.Serializable;
+
+/**
+ * A single statement of a {@link MigrationPlan}, along with what it changes and how expensive it is expected to be.
+ * Steps are immutable.
+ *
+ * @author Dima Frid
+ */
+public class MigrationStep implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static enum Type {
+        CREATE_TABLE,
+        ALTER_TABLE,
+        ADD_COLUMN,
+        ALTER_COLUMN,
+        ALTER_STORAGE,
+        DROP_PRIMARY_KEY,
+        ADD_PRIMARY_KEY,
+        DROP_INDEX,
+        CREATE_INDEX,
+        ALTER_INDEX,
+        /** keeps the shadow column of an online type change in sync with the column (a trigger) */
+        SYNC_COLUMN,
+        /** fills in a column, e.g. copies the column into its shadow; in chunks, see {@link Chunking} */
+        BACKFILL_COLUMN,
+        /** replaces the column with its shadow */
+        SWAP_COLUMN,
+        CREATE_PARTITION,
+        /** drops or detaches an expired partition */
+        DROP_PARTITION
+    }
+
+    private final Type type;
+    private final String tableName;
+    private final String target;
+    private final String sql;
+    private final long estimatedCost;
+    private final boolean outsideTransaction;
+    private final String retryCleanupSql;
+    private final Chunking chunking;
+
+    public MigrationStep(Type type, String tableName, String target, String sql, long estimatedCost) {
+        this(type, tableName, target, sql, estimatedCost, false, null);
+    }
+
+    /**
+     * @param outsideTransaction whether the statement must run in auto-commit mode, outside of any transaction
+     * @param retryCleanupSql if not null, the step may be retried after a failure, once this statement cleaned up after it
+     */
+    public MigrationStep(Type type, String tableName, String target, String sql, long estimatedCost,
+                         boolean outsideTransaction, String retryCleanupSql) {
+        this(type, tableName, target, sql, estimatedCost, outsideTransaction, retryCleanupSql, null);
+    }
+
+    /**
+     * @param chunking if not null, the statement is run in chunks of key ranges rather than as is
+     */
+    public MigrationStep(Type type, String tableName, String target, String sql, long estimatedCost,
+                         boolean outsideTransaction, String retryCleanupSql, Chunking chunking) {
+        this.type = type;
+        this.tableName = tableName;
+        this.target = target;
+        this.sql = sql;
+        this.estimatedCost = estimatedCost;
+        this.outsideTransaction = outsideTransaction;
+        this.retryCleanupSql = retryCleanupSql;
+        this.chunking = chunking;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the name of the table the step belongs to
+     */
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return the name of the object the step creates or changes: table, column, index or constraint
+     */
+    public String getTarget() {
+        return target;
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    /**
+     * @return the estimated number of rows the step has to read or rewrite; 0 for catalog-only changes
+     * and for tables of unknown size
+     */
+    public long getEstimatedCost() {
+        return estimatedCost;
+    }
+
+    public boolean isOutsideTransaction() {
+        return outsideTransaction;
+    }
+
+    public boolean isRetryable() {
+        return retryCleanupSql != null;
+    }
+
+    public String getRetryCleanupSql() {
+        return retryCleanupSql;
+    }
+
+    /**
+     * @return how the statement is split into chunks when it runs; null if it runs as is
+     */
+    public Chunking getChunking() {
+        return chunking;
+    }
+
+    /**
+     * An update of a whole table, run as a series of updates of key ranges, each committed on its own. The ranges
+     * are found when the step runs, against the rows the table has then, so a planned step fits any database.
+     */
+    public static class Chunking implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String tableName;
+        private final String keyColumn;
+        private final String condition;
+
+        /**
+         * @param tableName qualified by the schema, if any
+         * @param keyColumn the single numeric PK column
+         * @param condition the where clause of the statement, if any; the ranges are appended to it
+         */
+        public Chunking(String tableName, String keyColumn, String condition) {
+            this.tableName = tableName;
+            this.keyColumn = keyColumn;
+            this.condition = condition;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        public String getKeyColumn() {
+            return keyColumn;
+        }
+
+        public String getCondition() {
+            return condition;
+        }
+
+        /**
+         * @return the statement limited to the given key range
+         */
+        public String getChunkSql(String sql, long from, long to) {
+            return sql + (condition != null ? " and " : " where ") + keyColumn + " between " + from + " and " + to;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + target + ": " + sql;
+    }
+}
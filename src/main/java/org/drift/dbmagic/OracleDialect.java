@@ -1,5 +1,6 @@
 package org.drift.dbmagic;
 
+import org.drift.dbmagic.utils.StringUtils;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowCallbackHandler;
 
@@ -34,6 +35,36 @@ public class OracleDialect extends Dialect {
         return TYPE_MAP;
     }
 
+    @Override
+    public String anyTableExistenceQuery() {
+        return "select 1 from user_tables where rownum = 1";
+    }
+
+    @Override
+    public String rowExistenceQuery(String tableName, String condition) {
+        return "select 1 from " + tableName + " where (" + condition + ") and rownum = 1";
+    }
+
+    @Override
+    public String getBackfillChunkQuery(String tableName, String keyColumn, String condition, int chunkSize) {
+        return "select max(" + keyColumn + ") as HI, count(*) as N from (select " + keyColumn + " from " + tableName +
+               " where " + keyColumn + " >= ?" + (condition != null ? " and " + condition : "") +
+               " order by " + keyColumn + ") where rownum <= " + chunkSize;
+    }
+
+    /**
+     * DDL can't be batched, so the statements are wrapped in an anonymous PL/SQL block
+     */
+    @Override
+    public String composeScript(List<String> statements) {
+        StringBuilder block = new StringBuilder("BEGIN\n");
+        for (String statement : statements) {
+            block.append("EXECUTE IMMEDIATE '").append(statement.replace("'", "''")).append("';\n");
+        }
+        block.append("END;");
+        return block.toString();
+    }
+
     @Override
     public String tableExistenceQuery() {
         return "select 1 from user_tables where table_name = ?";
@@ -46,29 +77,73 @@ public class OracleDialect extends Dialect {
 
     @Override
     public Map<String, ColumnDescription> getColumns(String tableName, JdbcTemplate template) {
-        final Map<String, ColumnDescription> columns = new HashMap<String, ColumnDescription>();
-        String sqlString = "SELECT COLUMN_NAME,DATA_TYPE,DATA_LENGTH,DATA_PRECISION,NULLABLE,DATA_DEFAULT FROM USER_TAB_COLUMNS WHERE TABLE_NAME=?";
-        template.query(sqlString, new RowCallbackHandler() {
+        String name = SchemaUtil.stripSchema(tableName); // the USER_ views cover the schema of the current user only
+        Map<String, Map<String, ColumnDescription>> columns = readColumns(template, " AND c.TABLE_NAME = ?", name);
+        Map<String, ColumnDescription> tableColumns = columns.get(name);
+        if (tableColumns == null) {
+            return new HashMap<String, ColumnDescription>();
+        }
+        return tableColumns;
+    }
+
+    /**
+     * DATA_DEFAULT is a LONG, and a LONG in the select list makes the driver fetch the rows one by one; so the columns
+     * are read without it, in batches of {@link #getCatalogFetchSize}, and the defaults of the few columns that have
+     * one are read separately.
+     */
+    private Map<String, Map<String, ColumnDescription>> readColumns(JdbcTemplate template, String where, Object... args) {
+        final Map<String, Map<String, ColumnDescription>> columns = new LinkedHashMap<String, Map<String, ColumnDescription>>();
+        final boolean[] defaults = new boolean[1];
+        queryCatalog(template, "SELECT c.TABLE_NAME,c.COLUMN_NAME,c.DATA_TYPE,c.DATA_LENGTH,c.DATA_PRECISION,c.NULLABLE,c.DEFAULT_LENGTH " +
+                       "FROM USER_TAB_COLUMNS c JOIN USER_TABLES t ON t.TABLE_NAME = c.TABLE_NAME WHERE t.DROPPED = 'NO'" + where,
+                       new RowCallbackHandler() {
             public void processRow(ResultSet rs) throws SQLException {
-                String columnName = rs.getString("COLUMN_NAME");
-                String defaultValue = rs.getString("DATA_DEFAULT");
-                if (defaultValue != null && defaultValue.trim().equals("null")) {
-                    defaultValue = null;
+                String tableName = rs.getString("TABLE_NAME");
+                Map<String, ColumnDescription> tableColumns = columns.get(tableName);
+                if (tableColumns == null) {
+                    tableColumns = new HashMap<String, ColumnDescription>();
+                    columns.put(tableName, tableColumns);
                 }
-                String nativeType = rs.getString("DATA_TYPE");
-                int size = ("NUMBER".equals(nativeType) ? rs.getInt("DATA_PRECISION") : rs.getInt("DATA_LENGTH"));
-                columns.put(columnName, new ColumnDescription(columnName).ofSize(size).
-                    setNullable("Y".equals(rs.getString("NULLABLE"))).setNativeType(nativeType).
-                    ofDefaultValue(defaultValue));
+                ColumnDescription column = readColumn(rs);
+                tableColumns.put(column.getName(), column);
+                defaults[0] |= rs.getInt("DEFAULT_LENGTH") > 0;
             }
-        }, tableName);
+        }, args);
+
+        if (defaults[0]) {
+            queryCatalog(template, "SELECT c.TABLE_NAME,c.COLUMN_NAME,c.DATA_DEFAULT FROM USER_TAB_COLUMNS c WHERE c.DEFAULT_LENGTH > 0" + where,
+                           new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    Map<String, ColumnDescription> tableColumns = columns.get(rs.getString("TABLE_NAME"));
+                    ColumnDescription column = tableColumns == null ? null : tableColumns.get(rs.getString("COLUMN_NAME"));
+                    if (column != null) {
+                        column.ofDefaultValue(readDefaultValue(rs.getString("DATA_DEFAULT")));
+                    }
+                }
+            }, args);
+        }
         return columns;
     }
 
+    private ColumnDescription readColumn(ResultSet rs) throws SQLException {
+        String columnName = rs.getString("COLUMN_NAME");
+        String nativeType = rs.getString("DATA_TYPE");
+        int size = ("NUMBER".equals(nativeType) ? rs.getInt("DATA_PRECISION") : rs.getInt("DATA_LENGTH"));
+        return new ColumnDescription(columnName).ofSize(size).
+            setNullable("Y".equals(rs.getString("NULLABLE"))).setNativeType(nativeType);
+    }
+
+    private static String readDefaultValue(String defaultValue) {
+        if (defaultValue != null && defaultValue.trim().equals("null")) {
+            return null;
+        }
+        return defaultValue;
+    }
+
     @Override
     public String getPrimaryKey(String tableName, JdbcTemplate template) {
         String sqlQuery = "SELECT CONSTRAINT_NAME FROM user_constraints WHERE TABLE_NAME = ? AND constraint_type = 'P'";
-        List<String> res = template.queryForList(sqlQuery, String.class, tableName);
+        List<String> res = template.queryForList(sqlQuery, String.class, SchemaUtil.stripSchema(tableName));
         if (res.size() == 0) {
             return null;
         }
@@ -76,29 +151,459 @@ public class OracleDialect extends Dialect {
     }
 
     public Set<String> getIndexes(String tableName, JdbcTemplate template) {
-        String sqlString = "SELECT INDEX_NAME FROM USER_IND_COLUMNS WHERE TABLE_NAME=?";
-        Set<String> indexesNames = new HashSet<String>();
-        List<String> indexes = template.queryForList(sqlString, String.class, tableName);
-        String pk = getPrimaryKey(tableName, template);
-        for (String indexName : indexes) {
-            if (pk != null && pk.equalsIgnoreCase(indexName)) continue;
-            indexesNames.add(indexName);
+        return new HashSet<String>(getIndexDefinitions(tableName, template).keySet());
+    }
+
+    /**
+     * The index backing the PK constraint is left out by the query itself, so the PK isn't looked up.
+     */
+    @Override
+    public Map<String, IndexDescription> getIndexDefinitions(String tableName, JdbcTemplate template) {
+        String name = SchemaUtil.stripSchema(tableName);
+        Map<String, Map<String, IndexDescription>> definitions = readIndexDefinitions(template,
+            " AND i.TABLE_NAME = ? AND NOT EXISTS (SELECT 1 FROM USER_CONSTRAINTS k " +
+            "WHERE k.TABLE_NAME = i.TABLE_NAME AND k.INDEX_NAME = i.INDEX_NAME AND k.CONSTRAINT_TYPE = 'P')", name);
+        Map<String, IndexDescription> tableIndexes = definitions.get(name);
+        if (tableIndexes == null) {
+            return new LinkedHashMap<String, IndexDescription>();
+        }
+        return tableIndexes;
+    }
+
+    /**
+     * Reads index definitions from the index columns, resolving function-based columns (lower) through their expressions.
+     * COLUMN_EXPRESSION is a LONG too (see {@link #readColumns}), so the expressions are read separately, and only if
+     * there are function-based indexes at all.
+     */
+    private Map<String, Map<String, IndexDescription>> readIndexDefinitions(JdbcTemplate template, String where, Object... args) {
+        final List<String[]> indexColumns = new ArrayList<String[]>();
+        final boolean[] functionBased = new boolean[1];
+        String sqlString = "SELECT i.TABLE_NAME,i.INDEX_NAME,i.INDEX_TYPE,i.UNIQUENESS,c.COLUMN_NAME,c.COLUMN_POSITION " +
+                           "FROM USER_INDEXES i JOIN USER_IND_COLUMNS c ON c.INDEX_NAME = i.INDEX_NAME " +
+                           "WHERE i.DROPPED = 'NO'" + where + " ORDER BY i.TABLE_NAME,i.INDEX_NAME,c.COLUMN_POSITION";
+        queryCatalog(template, sqlString, new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                indexColumns.add(new String[]{rs.getString("TABLE_NAME"), rs.getString("INDEX_NAME"), rs.getString("UNIQUENESS"),
+                                              rs.getString("COLUMN_NAME"), rs.getString("COLUMN_POSITION")});
+                functionBased[0] |= rs.getString("INDEX_TYPE").startsWith("FUNCTION-BASED");
+            }
+        }, args);
+
+        final Map<String, String> expressions = new HashMap<String, String>();
+        if (functionBased[0]) {
+            queryCatalog(template, "SELECT e.INDEX_NAME,e.COLUMN_POSITION,e.COLUMN_EXPRESSION FROM USER_IND_EXPRESSIONS e " +
+                           "JOIN USER_INDEXES i ON i.INDEX_NAME = e.INDEX_NAME WHERE i.DROPPED = 'NO'" + where, new RowCallbackHandler() {
+                public void processRow(ResultSet rs) throws SQLException {
+                    expressions.put(rs.getString("INDEX_NAME") + ":" + rs.getString("COLUMN_POSITION"), rs.getString("COLUMN_EXPRESSION"));
+                }
+            }, args);
+        }
+
+        Map<String, Map<String, IndexDescription>> definitions = new LinkedHashMap<String, Map<String, IndexDescription>>();
+        for (String[] indexColumn : indexColumns) {
+            String column = indexColumn[3];
+            String expression = expressions.get(indexColumn[1] + ":" + indexColumn[4]);
+            boolean lower = false;
+            String predicate = null;
+            if (expression != null) {
+                // a partial index column, see partialIndexColumn: CASE WHEN <predicate> THEN <column> END
+                expression = expression.trim();
+                String upperExpression = expression.toUpperCase();
+                if (upperExpression.startsWith("CASE") && upperExpression.endsWith("END")) {
+                    int then = upperExpression.lastIndexOf(" THEN ");
+                    predicate = expression.substring(upperExpression.indexOf("WHEN ") + "WHEN ".length(), then).trim();
+                    expression = expression.substring(then + " THEN ".length(), expression.length() - "END".length()).trim();
+                }
+                lower = expression.toUpperCase().startsWith("LOWER(");
+                int open = expression.indexOf('('); // there's none for descending columns, e.g. "STR_COL"
+                column = (open == -1 ? expression : expression.substring(open + 1, expression.lastIndexOf(')'))).replace("\"", "");
+            }
+            addIndexColumn(definitions, indexColumn[0], indexColumn[1], column, "UNIQUE".equals(indexColumn[2]), lower);
+            if (predicate != null) {
+                definitions.get(indexColumn[0]).get(indexColumn[1]).where(predicate);
+            }
         }
-        return indexesNames;
+        return definitions;
+    }
+
+    @Override
+    public CatalogSnapshot getCatalogSnapshot(JdbcTemplate template) {
+        final CatalogSnapshot snapshot = new CatalogSnapshot();
+
+        queryCatalog(template, "SELECT TABLE_NAME,NUM_ROWS FROM USER_TABLES WHERE DROPPED = 'NO'", new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                snapshot.addTable(rs.getString("TABLE_NAME"));
+                snapshot.setRowEstimate(rs.getString("TABLE_NAME"), rs.getLong("NUM_ROWS"));
+            }
+        });
+
+        Map<String, Map<String, ColumnDescription>> columns = readColumns(template, "");
+        for (Map.Entry<String, Map<String, ColumnDescription>> tableColumns : columns.entrySet()) {
+            for (ColumnDescription column : tableColumns.getValue().values()) {
+                snapshot.addColumn(tableColumns.getKey(), column);
+            }
+        }
+
+        Map<String, Map<String, IndexDescription>> definitions = readIndexDefinitions(template, "");
+        for (Map.Entry<String, Map<String, IndexDescription>> tableIndexes : definitions.entrySet()) {
+            for (Map.Entry<String, IndexDescription> index : tableIndexes.getValue().entrySet()) {
+                snapshot.addIndexDefinition(tableIndexes.getKey(), index.getKey(), index.getValue());
+            }
+        }
+
+        queryCatalog(template, "SELECT TABLE_NAME,CONSTRAINT_NAME FROM USER_CONSTRAINTS WHERE CONSTRAINT_TYPE = 'P'", new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                snapshot.setPrimaryKey(rs.getString("TABLE_NAME"), rs.getString("CONSTRAINT_NAME"));
+            }
+        });
+
+        return snapshot;
+    }
+
+    /**
+     * The driver fetches 10 rows per round trip by default, and each one is expensive on the data dictionary views
+     */
+    @Override
+    public int getCatalogFetchSize() {
+        return 1000;
+    }
+
+    /**
+     * 128 since 12.2, but only with COMPATIBLE set to 12.2 or higher
+     */
+    @Override
+    public int getMaxIdentifierLength() {
+        return 30;
     }
 
     public String getAddColumnStatement(String tableName, String columnSQL) {
         return "alter table " + tableName + " add (" + columnSQL + ")";
     }
 
+    /**
+     * All the changes go into a single statement: alter column clauses are column definitions for the modify list
+     */
+    @Override
+    public List<String> composeAlterTableStatements(String tableName, List<String> addedColumns, List<String> alteredColumns) {
+        StringBuilder sql = new StringBuilder("alter table " + tableName);
+        if (!addedColumns.isEmpty()) {
+            sql.append(" add (").append(StringUtils.join(addedColumns, ", ")).append(")");
+        }
+        if (!alteredColumns.isEmpty()) {
+            sql.append(" modify (").append(StringUtils.join(alteredColumns, ", ")).append(")");
+        }
+        return Collections.singletonList(sql.toString());
+    }
+
     @Override
     public boolean pkRequiresIndex() {
         return true;
     }
 
+    @Override
+    public boolean supportsOnlineIndexBuilds() {
+        return true;
+    }
+
+    @Override
+    public String getIndexBuildClauses(boolean online, int parallelDegree, boolean noLogging) {
+        StringBuilder clauses = new StringBuilder();
+        if (online) {
+            clauses.append(" online");
+        }
+        if (parallelDegree > 1) {
+            clauses.append(" parallel ").append(parallelDegree);
+        }
+        if (noLogging) {
+            clauses.append(" nologging");
+        }
+        return clauses.toString();
+    }
+
+    @Override
+    public String getIndexBuildResetStatement(String indexName, int parallelDegree, boolean noLogging) {
+        if (parallelDegree <= 1 && !noLogging) {
+            return null;
+        }
+        return "alter index " + indexName + (parallelDegree > 1 ? " noparallel" : "") + (noLogging ? " logging" : "");
+    }
+
+    @Override
+    public boolean supportsOnlineColumnTypeChanges() {
+        return true;
+    }
+
+    @Override
+    public List<String> getShadowColumnSyncStatements(String tableName, String columnName, String shadowColumnName) {
+        String trigger = SchemaUtil.getSchemaPrefix(tableName) + SchemaUtil.composeSyncTriggerName(tableName, columnName);
+        return Collections.singletonList("create or replace trigger " + trigger + " before insert or update of " + columnName +
+                                         " on " + tableName + " for each row begin :new." + shadowColumnName + " := :new." +
+                                         columnName + "; end;");
+    }
+
+    /**
+     * DDL commits on its own in Oracle, so the swap isn't atomic; renames and set unused are catalog-only though,
+     * so it's short. Moving a PK over isn't supported.
+     */
+    @Override
+    public List<String> getShadowColumnSwapStatements(String tableName, String columnName, String shadowColumnName,
+                                                      boolean notNull, String pkName, String pkIndexName) {
+        String retiredColumnName = SchemaUtil.composeRetiredColumnName(columnName);
+        return Arrays.asList(
+            "drop trigger " + SchemaUtil.getSchemaPrefix(tableName) + SchemaUtil.composeSyncTriggerName(tableName, columnName),
+            "alter table " + tableName + " rename column " + columnName + " to " + retiredColumnName,
+            "alter table " + tableName + " rename column " + shadowColumnName + " to " + columnName,
+            "alter table " + tableName + " set unused (" + retiredColumnName + ")");
+    }
+
+    /**
+     * A real NOT NULL constraint, enabled for new rows only; once validated, the column is NOT NULL as far as
+     * the catalog goes, so there's nothing to promote. Adding it again (when resuming) is a no-op.
+     */
+    @Override
+    public List<String> getNotNullConstraintStatements(String tableName, String columnName) {
+        String constraint = SchemaUtil.composeNotNullConstraintName(tableName, columnName);
+        // ORA-01442: column to be modified to NOT NULL is already NOT NULL, ORA-02264: name already used by an existing constraint
+        return Collections.singletonList(
+            "BEGIN EXECUTE IMMEDIATE 'alter table " + tableName + " modify (" + columnName + " constraint " + constraint +
+            " not null enable novalidate)'; EXCEPTION WHEN OTHERS THEN IF SQLCODE NOT IN (-1442, -2264) THEN RAISE; END IF; END;");
+    }
+
+    @Override
+    public List<String> getNotNullValidationStatements(String tableName, String columnName) {
+        return Collections.singletonList("alter table " + tableName + " modify constraint " +
+                                         SchemaUtil.composeNotNullConstraintName(tableName, columnName) + " validate");
+    }
+
+    /**
+     * Oracle has no statement timeout of its own; the JDBC query timeout takes care of it.
+     */
+    @Override
+    public List<String> getDdlTimeoutStatements(long lockTimeoutMillis, long statementTimeoutMillis) {
+        if (lockTimeoutMillis <= 0) {
+            return Collections.emptyList();
+        }
+        // in whole seconds
+        return Collections.singletonList("alter session set ddl_lock_timeout = " + (lockTimeoutMillis + 999) / 1000);
+    }
+
+    @Override
+    public List<String> getDdlTimeoutResetStatements() {
+        return Collections.singletonList("alter session set ddl_lock_timeout = 0");
+    }
+
+    @Override
+    public boolean isLockTimeout(SQLException e) {
+        // ORA-00054: resource busy and acquire with NOWAIT specified or timeout expired, ORA-04021: timeout occurred while waiting to lock object
+        return e.getErrorCode() == 54 || e.getErrorCode() == 4021;
+    }
+
+    @Override
+    public boolean supportsPartitioning() {
+        return true;
+    }
+
+    /**
+     * Range partitioning is interval partitioning: the partition of a period is created by the first insert into it,
+     * so only the one holding the rows preceding the first period is declared. List partitions are declared inline.
+     */
+    @Override
+    public String getPartitionByClause(String tableName, PartitionDescription partitioning, Date firstPeriod) {
+        StringBuilder clause = new StringBuilder(" partition by ").append(partitioning.getType().toString().toLowerCase())
+            .append(" (").append(partitioning.getColumnName()).append(")");
+        switch (partitioning.getType()) {
+            case RANGE:
+                String interval = partitioning.getInterval().toString();
+                clause.append(" interval (").append(partitioning.getInterval() == PartitionDescription.Interval.DAY
+                                                    ? "numtodsinterval(1, '" + interval + "')"
+                                                    : "numtoyminterval(1, '" + interval + "')")
+                    .append(") (partition ").append(SchemaUtil.composePartitionName(tableName, "INITIAL"))
+                    .append(" values less than (date '").append(PartitionDescription.formatDate(firstPeriod)).append("'))");
+                break;
+            case LIST:
+                String comma = " (";
+                for (Map.Entry<String, List<String>> list : partitioning.getLists().entrySet()) {
+                    clause.append(comma).append("partition ").append(SchemaUtil.composePartitionName(tableName, list.getKey()))
+                        .append(" values (").append(StringUtils.join(list.getValue(), ", ")).append(")");
+                    comma = ", ";
+                }
+                clause.append(")");
+                break;
+            case HASH:
+                clause.append(" partitions ").append(partitioning.getHashPartitions());
+                break;
+        }
+        return clause.toString();
+    }
+
+    /**
+     * Partitions can't be detached into tables of their own short of an exchange with a table created up front,
+     * so expired partitions can only be dropped.
+     */
+    @Override
+    public String getExpiredPartitionStatement(String tableName, String partitionName, boolean drop) {
+        return drop ? "alter table " + tableName + " drop partition " + partitionName + " update global indexes" : null;
+    }
+
+    /**
+     * Only the partitions created by the interval partitioning are reported, as the initial one can't be dropped.
+     */
+    @Override
+    public Map<String, String> getPartitionBounds(String tableName, JdbcTemplate template) {
+        String bareTableName = SchemaUtil.stripSchema(tableName).toUpperCase();
+        if (template.queryForList("SELECT 1 FROM USER_PART_TABLES WHERE TABLE_NAME = ?", Integer.class, bareTableName).isEmpty()) {
+            return null;
+        }
+
+        final Map<String, String> bounds = new LinkedHashMap<String, String>();
+        template.query("SELECT PARTITION_NAME,HIGH_VALUE FROM USER_TAB_PARTITIONS WHERE TABLE_NAME = ? AND INTERVAL = 'YES'",
+                       new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                bounds.put(rs.getString("PARTITION_NAME"), rs.getString("HIGH_VALUE"));
+            }
+        }, bareTableName);
+        return bounds;
+    }
+
+    /**
+     * The fill factor goes in as PCTFREE, the part of the block kept free for updates.
+     */
+    @Override
+    public String getStorageClause(StorageOptions storage, boolean index) {
+        StringBuilder clause = new StringBuilder();
+        if (storage.isDeferredSegmentCreation() && !index) {
+            clause.append(" segment creation deferred");
+        }
+        if (storage.getFillFactor() > 0) {
+            clause.append(" pctfree ").append(100 - storage.getFillFactor());
+        }
+        if (storage.getInitTrans() > 0) {
+            clause.append(" initrans ").append(storage.getInitTrans());
+        }
+        return clause.toString();
+    }
+
+    /**
+     * The PCTFREE of an index can't be changed short of a rebuild, so it's only set when the index is built.
+     */
+    @Override
+    public Map<String, String> getStorageParameters(StorageOptions storage, boolean index) {
+        Map<String, String> parameters = new TreeMap<String, String>();
+        if (storage.getFillFactor() > 0 && !index) {
+            parameters.put("PCT_FREE", String.valueOf(100 - storage.getFillFactor()));
+        }
+        if (storage.getInitTrans() > 0) {
+            parameters.put("INI_TRANS", String.valueOf(storage.getInitTrans()));
+        }
+        return parameters;
+    }
+
+    /**
+     * A partitioned table has no segment of its own; the defaults of its new partitions are reported instead.
+     */
+    @Override
+    public Map<String, String> readStorageParameters(String tableName, String indexName, JdbcTemplate template) {
+        final Map<String, String> parameters = new TreeMap<String, String>();
+        RowCallbackHandler handler = new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                for (String name : Arrays.asList("PCT_FREE", "INI_TRANS")) {
+                    if (rs.getString(name) != null) {
+                        parameters.put(name, rs.getString(name));
+                    }
+                }
+            }
+        };
+        if (indexName == null) {
+            template.query("SELECT NVL(t.PCT_FREE, p.DEF_PCT_FREE) AS PCT_FREE, NVL(t.INI_TRANS, p.DEF_INI_TRANS) AS INI_TRANS " +
+                           "FROM USER_TABLES t LEFT JOIN USER_PART_TABLES p ON p.TABLE_NAME = t.TABLE_NAME " +
+                           "WHERE t.TABLE_NAME = ?", handler, SchemaUtil.stripSchema(tableName).toUpperCase());
+        } else {
+            template.query("SELECT PCT_FREE,INI_TRANS FROM USER_INDEXES WHERE INDEX_NAME = ?", handler,
+                           SchemaUtil.stripSchema(indexName).toUpperCase());
+        }
+        return parameters;
+    }
+
+    /**
+     * For a partitioned table, the changed attributes are the defaults of its new partitions.
+     */
+    @Override
+    public List<String> getStorageAlterationStatements(String tableName, String indexName, Map<String, String> parameters) {
+        StringBuilder sql = new StringBuilder("alter ")
+            .append(indexName == null ? "table " + tableName : "index " + SchemaUtil.getSchemaPrefix(tableName) + indexName);
+        if (parameters.containsKey("PCT_FREE")) {
+            sql.append(" pctfree ").append(parameters.get("PCT_FREE"));
+        }
+        if (parameters.containsKey("INI_TRANS")) {
+            sql.append(" initrans ").append(parameters.get("INI_TRANS"));
+        }
+        return Collections.singletonList(sql.toString());
+    }
+
+    /**
+     * Only SecureFile LOBs are compressed (it takes the Advanced Compression option).
+     */
+    @Override
+    public String getColumnCompression(ColumnDescription column, List<String> compressionMethods) {
+        return SchemaUtil.isLOB(column) ? column.getCompression().toString() : null;
+    }
+
+    /**
+     * A BasicFile LOB is reported as BASICFILE, the compression of a SecureFile one as NO, LOW, MEDIUM or HIGH.
+     */
+    @Override
+    public Map<String, String> readColumnCompressions(String tableName, List<String> compressionMethods, JdbcTemplate template) {
+        final Map<String, String> compressions = new HashMap<String, String>();
+        template.query("SELECT COLUMN_NAME,SECUREFILE,COMPRESSION FROM USER_LOBS WHERE TABLE_NAME = ?", new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                compressions.put(rs.getString("COLUMN_NAME"),
+                                 "YES".equals(rs.getString("SECUREFILE")) ? rs.getString("COMPRESSION") : "BASICFILE");
+            }
+        }, SchemaUtil.stripSchema(tableName).toUpperCase());
+        return compressions;
+    }
+
+    /**
+     * A BasicFile LOB is moved into a SecureFile one, which rebuilds the table's indexes along with it. New LOBs are
+     * SecureFile ones as of 12c.
+     */
+    @Override
+    public List<String> getColumnCompressionStatements(String tableName, String columnName, String compression, String current) {
+        if ("BASICFILE".equals(current)) {
+            return Collections.singletonList("alter table " + tableName + " move lob (" + columnName + ") store as securefile" +
+                                             " (compress " + compression.toLowerCase() + ") update indexes");
+        }
+        return Collections.singletonList("alter table " + tableName + " modify lob (" + columnName + ")" +
+                                         " (compress " + compression.toLowerCase() + ")");
+    }
+
+    @Override
+    public boolean compressionRewritesColumn() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsLowerIndex() {
+        return true;
+    }
+
     @Override
     public String lowerIndex(String column) {
         return "lower(" + column +")";
     }
 
+    /**
+     * Rows for which all the indexed expressions are null aren't indexed, so the columns are indexed as CASE expressions
+     * null for the rows not matching the predicate.
+     */
+    @Override
+    public boolean supportsPartialIndexes() {
+        return true;
+    }
+
+    @Override
+    public String partialIndexColumn(String column, String predicate) {
+        return "(case when " + predicate + " then " + column + " end)";
+    }
+
 }
@@ -0,0 +1,273 @@
+package org.drift.dbmagic;
+
+import java.io.Serializable;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * How a table is partitioned: by range of a date column into periods of a fixed {@link Interval}, by lists of values
+ * or by hash into a number of partitions.
+ * <p/>
+ * Range partitions are kept by {@link SchemaCreator#maintainPartitions}: the partitions of the next periods are created
+ * ahead of time, and those older than the retention are dropped or detached, so that rows expire a partition at a time
+ * rather than by deletes.
+ *
+ * @author Dima Frid
+ */
+public class PartitionDescription implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    public static enum Type {
+        RANGE,
+        LIST,
+        HASH
+    }
+
+    public static enum Interval {
+        DAY("yyyyMMdd", Calendar.DAY_OF_MONTH),
+        MONTH("yyyyMM", Calendar.MONTH),
+        YEAR("yyyy", Calendar.YEAR);
+
+        private final String suffixPattern;
+        private final int field;
+
+        Interval(String suffixPattern, int field) {
+            this.suffixPattern = suffixPattern;
+            this.field = field;
+        }
+    }
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private static final Pattern DATE = Pattern.compile("\\d{4}-\\d{2}-\\d{2}");
+
+    private static final int DEFAULT_PREMAKE = 3;
+
+    private final Type type;
+    private final String columnName;
+    private Interval interval;
+    private int premake = DEFAULT_PREMAKE;
+    private int retention;
+    private boolean dropExpired;
+    private Map<String, List<String>> lists = new LinkedHashMap<String, List<String>>();
+    private int hashPartitions;
+
+    private PartitionDescription(Type type, String columnName) {
+        this.type = type;
+        this.columnName = columnName;
+    }
+
+    /**
+     * Partitions by periods of the date or timestamp column.
+     */
+    public static PartitionDescription range(String columnName, Interval interval) {
+        PartitionDescription partitioning = new PartitionDescription(Type.RANGE, columnName);
+        partitioning.interval = interval;
+        return partitioning;
+    }
+
+    /**
+     * Partitions by the values of the column; see {@link #addList}.
+     */
+    public static PartitionDescription list(String columnName) {
+        return new PartitionDescription(Type.LIST, columnName);
+    }
+
+    public static PartitionDescription hash(String columnName, int partitions) {
+        PartitionDescription partitioning = new PartitionDescription(Type.HASH, columnName);
+        partitioning.hashPartitions = partitions;
+        return partitioning;
+    }
+
+    /**
+     * @return a copy that can be changed independently of this one
+     */
+    public PartitionDescription copy() {
+        PartitionDescription copy = new PartitionDescription(type, columnName);
+        copy.interval = interval;
+        copy.premake = premake;
+        copy.retention = retention;
+        copy.dropExpired = dropExpired;
+        for (Map.Entry<String, List<String>> list : lists.entrySet()) {
+            copy.lists.put(list.getKey(), new ArrayList<String>(list.getValue()));
+        }
+        copy.hashPartitions = hashPartitions;
+        return copy;
+    }
+
+    /**
+     * Adds a partition of a list partitioned table, named by {@link SchemaUtil#composePartitionName}.
+     *
+     * @param values SQL literals
+     */
+    public PartitionDescription addList(String name, String... values) {
+        lists.put(name.toUpperCase(), new ArrayList<String>(Arrays.asList(values)));
+        return this;
+    }
+
+    /**
+     * @param periods number of periods, following the current one, to create the partitions of ahead of time
+     */
+    public PartitionDescription premake(int periods) {
+        premake = periods;
+        return this;
+    }
+
+    /**
+     * @param periods number of periods, preceding the current one, to keep the partitions of; 0 (the default) keeps them all
+     */
+    public PartitionDescription retain(int periods) {
+        retention = periods;
+        return this;
+    }
+
+    /**
+     * Drops the partitions older than the retention, rather than detach them into tables of their own.
+     */
+    public PartitionDescription dropExpired() {
+        dropExpired = true;
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public Interval getInterval() {
+        return interval;
+    }
+
+    public int getPremake() {
+        return premake;
+    }
+
+    public int getRetention() {
+        return retention;
+    }
+
+    public boolean isDropExpired() {
+        return dropExpired;
+    }
+
+    public Map<String, List<String>> getLists() {
+        return lists;
+    }
+
+    public int getHashPartitions() {
+        return hashPartitions;
+    }
+
+    /**
+     * @return the start (in UTC) of the period the given time falls into
+     */
+    public Date getPeriodStart(Date time) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTime(time);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        if (interval != Interval.DAY) {
+            calendar.set(Calendar.DAY_OF_MONTH, 1);
+        }
+        if (interval == Interval.YEAR) {
+            calendar.set(Calendar.MONTH, Calendar.JANUARY);
+        }
+        return calendar.getTime();
+    }
+
+    /**
+     * @param periods may be negative
+     */
+    public Date addPeriods(Date periodStart, int periods) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.setTime(periodStart);
+        calendar.add(interval.field, periods);
+        return calendar.getTime();
+    }
+
+    /**
+     * @return the suffix of the name of the partition of the period, e.g. P202610
+     */
+    public String getPeriodSuffix(Date periodStart) {
+        return "P" + format(periodStart, interval.suffixPattern);
+    }
+
+    /**
+     * @return the date as yyyy-MM-dd, in UTC
+     */
+    public static String formatDate(Date date) {
+        return format(date, "yyyy-MM-dd");
+    }
+
+    /**
+     * @return the date in yyyy-MM-dd (in UTC) form, or null if there is none in the given bound expression
+     * (the last one is taken, e.g. the upper bound of <code>FOR VALUES FROM ('2026-10-01') TO ('2026-11-01')</code>)
+     */
+    public static Date parseUpperBound(String boundExpression) {
+        Matcher matcher = DATE.matcher(boundExpression);
+        String date = null;
+        while (matcher.find()) {
+            date = matcher.group();
+        }
+        if (date == null) {
+            return null;
+        }
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd");
+        dateFormat.setTimeZone(UTC);
+        try {
+            return dateFormat.parse(date);
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
+    private static String format(Date date, String pattern) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat(pattern);
+        dateFormat.setTimeZone(UTC);
+        return dateFormat.format(date);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PartitionDescription that = (PartitionDescription) o;
+
+        if (type != that.type) return false;
+        if (!columnName.equals(that.columnName)) return false;
+        if (interval != that.interval) return false;
+        if (premake != that.premake) return false;
+        if (retention != that.retention) return false;
+        if (dropExpired != that.dropExpired) return false;
+        if (hashPartitions != that.hashPartitions) return false;
+        if (!lists.equals(that.lists)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = type.hashCode();
+        result = 31 * result + columnName.hashCode();
+        result = 31 * result + (interval != null ? interval.hashCode() : 0);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return type + " " + columnName + (interval != null ? " by " + interval : "") + (lists.isEmpty() ? "" : " " + lists) +
+               (hashPartitions > 0 ? " into " + hashPartitions : "") +
+               (type == Type.RANGE ? "; premake " + premake + "; retain " + retention + (dropExpired ? "; drop" : "; detach") : "");
+    }
+}
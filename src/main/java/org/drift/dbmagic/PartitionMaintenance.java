@@ -0,0 +1,60 @@
+package org.drift.dbmagic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the partitions of range partitioned tables up to date between schema syncs: creates the partitions of the
+ * upcoming periods ahead of time and drops or detaches the expired ones, see {@link SchemaCreator#maintainPartitions}.
+ * <p/>
+ * Either {@link #run} it from a scheduler of one's own, or {@link #start} it on a daemon thread.
+ *
+ * @author Dima Frid
+ */
+public class PartitionMaintenance implements Runnable {
+
+    private final SchemaCreator schemaCreator;
+
+    private final List<TableDescription> tables;
+
+    private ScheduledExecutorService executor;
+
+    public PartitionMaintenance(SchemaCreator schemaCreator, Collection<TableDescription> tables) {
+        this.schemaCreator = schemaCreator;
+        this.tables = new ArrayList<TableDescription>(tables);
+    }
+
+    public void run() {
+        schemaCreator.maintainPartitions(tables);
+    }
+
+    /**
+     * Runs the maintenance right away and then every period (counted from the end of the previous run);
+     * a period well below the partition interval leaves time to retry failures before a partition is needed.
+     */
+    public synchronized void start(long period, TimeUnit unit) {
+        if (executor != null) {
+            throw new IllegalStateException("Partition maintenance is already started");
+        }
+        executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "dbmagic-partition-maintenance");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        executor.scheduleWithFixedDelay(this, 0, period, unit);
+    }
+
+    public synchronized void stop() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+}
@@ -19,6 +19,34 @@ public class PostgreSQLDialect extends Dialect {
 
     private static final String VARCHAR_METADATA_NOTATION = "character varying";
 
+    private static final Map<String, String> STORAGES = new HashMap<String, String>();
+
+    private static final String SYSTEM_SCHEMAS = "('pg_catalog', 'information_schema')";
+
+    /**
+     * Columns straight from pg_attribute, under the names and in the format of information_schema.columns,
+     * which is a lot slower on a big catalog
+     */
+    private static final String COLUMNS_QUERY =
+        "select t.relname as table_name, a.attname as column_name, format_type(a.atttypid, null) as data_type, " +
+        "case when a.atttypmod > 4 then a.atttypmod - 4 end as character_maximum_length, " +
+        "not a.attnotnull as is_nullable, pg_get_expr(d.adbin, d.adrelid) as column_default " +
+        "from pg_attribute a join pg_class t on t.oid = a.attrelid join pg_namespace n on n.oid = t.relnamespace " +
+        "left join pg_attrdef d on d.adrelid = a.attrelid and d.adnum = a.attnum " +
+        "where t.relkind in ('r', 'p') and a.attnum > 0 and not a.attisdropped";
+
+    private static final String INDEXES_QUERY =
+        "select t.relname as tablename, c.relname as indexname, i.indisvalid, pg_get_indexdef(i.indexrelid) as indexdef " +
+        "from pg_index i join pg_class c on c.oid = i.indexrelid join pg_class t on t.oid = i.indrelid " +
+        "join pg_namespace n on n.oid = t.relnamespace where t.relkind in ('r', 'p')";
+
+    private static final String TABLE_EXISTENCE_QUERY =
+        "select 1 from pg_class t join pg_namespace n on n.oid = t.relnamespace where t.relkind in ('r', 'p') and ";
+
+    private static final String INDEX_EXISTENCE_QUERY =
+        "select 1 from pg_index i join pg_class c on c.oid = i.indexrelid join pg_class t on t.oid = i.indrelid " +
+        "join pg_namespace n on n.oid = t.relnamespace where c.relname = ? and ";
+
     static {
         TYPE_MAP.put(ColumnType.BOOLEAN, "BOOLEAN");
         TYPE_MAP.put(ColumnType.INTEGER, "INTEGER");
@@ -39,44 +67,85 @@ public class PostgreSQLDialect extends Dialect {
         CATALOG_TYPES.put("VARCHAR", VARCHAR_METADATA_NOTATION);
     }
 
+    static {
+        STORAGES.put("p", "plain");
+        STORAGES.put("m", "main");
+        STORAGES.put("e", "external");
+        STORAGES.put("x", "extended");
+    }
+
     protected EnumMap<ColumnType, String> getTypeMappings() {
         return TYPE_MAP;
     }
 
+    @Override
+    public String anyTableExistenceQuery() {
+        return "select 1 from pg_tables where schemaname not in " + SYSTEM_SCHEMAS + " limit 1";
+    }
+
+    @Override
+    public String composeScript(List<String> statements) {
+        return StringUtils.join(statements, ";\n"); // the simple query protocol runs them all in one round trip
+    }
+
+    /**
+     * @return the query for a table the search_path resolves the name to; {@link #tableExists} also looks in the
+     * schema the name is qualified by
+     */
     @Override
     public String tableExistenceQuery() {
-        return "select 1 from pg_tables where tablename = ?";
+        return TABLE_EXISTENCE_QUERY + tableCondition("");
     }
 
     @Override
     public String indexExistenceQuery() {
-        return "select 1 from pg_indexes where indexname = ? and tablename = ?";
+        return INDEX_EXISTENCE_QUERY + tableCondition("");
     }
 
     @Override
     public Map<String, ColumnDescription> getColumns(String tableName, JdbcTemplate template) {
-        return getColumnsFromCatalog(tableName, template);
-    }
-
-    private Map<String, ColumnDescription> getColumnsFromCatalog(String tableName, JdbcTemplate template) {
         final Map<String, ColumnDescription> columns = new HashMap<String, ColumnDescription>();
-        String sqlString = "select * from information_schema.columns where table_name = ?";
-        template.query(sqlString, new RowCallbackHandler() {
+        template.query(COLUMNS_QUERY + " and " + tableCondition(tableName), new RowCallbackHandler() {
             public void processRow(ResultSet rs) throws SQLException {
-                String columnName = rs.getString("column_name").toUpperCase();
-                String defaultValue = removeTypeDescriptionFromValue(rs.getString("column_default"));
-
-                String nativeType = rs.getString("data_type");
-                int size = (VARCHAR_METADATA_NOTATION.equals(nativeType) ? rs.getInt("character_maximum_length") : 0);
-
-                String isNullable = rs.getString("is_nullable");
-                columns.put(columnName, new ColumnDescription(columnName).setNullable(booleanValue(isNullable))
-                            .ofSize(size).setNativeType(nativeType).ofDefaultValue(defaultValue));
+                ColumnDescription column = readColumn(rs);
+                columns.put(column.getName(), column);
             }
-        }, tableName.toLowerCase());
+        }, tableArgs(tableName));
         return columns;
     }
 
+    /**
+     * @return the condition (on pg_class t and pg_namespace n) picking the table of the given schema,
+     * or the one the search_path resolves the name to if it isn't qualified; see {@link #tableArgs}
+     */
+    private static String tableCondition(String tableName) {
+        if (SchemaUtil.getSchemaPrefix(tableName).isEmpty()) {
+            return "t.relname = ? and pg_table_is_visible(t.oid)";
+        }
+        return "t.relname = ? and n.nspname = ?";
+    }
+
+    private static Object[] tableArgs(String tableName) {
+        String schemaPrefix = SchemaUtil.getSchemaPrefix(tableName);
+        String relationName = SchemaUtil.stripSchema(tableName).toLowerCase();
+        if (schemaPrefix.isEmpty()) {
+            return new Object[]{relationName};
+        }
+        return new Object[]{relationName, schemaPrefix.substring(0, schemaPrefix.length() - 1).toLowerCase()};
+    }
+
+    private ColumnDescription readColumn(ResultSet rs) throws SQLException {
+        String columnName = rs.getString("column_name").toUpperCase();
+        String defaultValue = removeTypeDescriptionFromValue(rs.getString("column_default"));
+
+        String nativeType = rs.getString("data_type");
+        int size = (VARCHAR_METADATA_NOTATION.equals(nativeType) ? rs.getInt("character_maximum_length") : 0);
+
+        String isNullable = rs.getString("is_nullable");
+        return new ColumnDescription(columnName).setNullable(booleanValue(isNullable))
+            .ofSize(size).setNativeType(nativeType).ofDefaultValue(defaultValue);
+    }
+
     private boolean booleanValue(String value) {
         return "true".equalsIgnoreCase(value) || "t".equalsIgnoreCase(value) || "1".equalsIgnoreCase(value)
             || "yes".equalsIgnoreCase(value);
@@ -97,8 +166,9 @@ public class PostgreSQLDialect extends Dialect {
 
     @Override
     public String getPrimaryKey(String tableName, JdbcTemplate template) {
-        String sqlQuery = "select conname from pg_constraint where conrelid = (select oid from pg_class where relname = ?) and contype = 'p'";
-        List<String> res = template.queryForList(sqlQuery, String.class, tableName.toLowerCase());
+        String sqlQuery = "select c.conname from pg_constraint c join pg_class t on t.oid = c.conrelid " +
+                          "join pg_namespace n on n.oid = t.relnamespace where c.contype = 'p' and " + tableCondition(tableName);
+        List<String> res = template.queryForList(sqlQuery, String.class, tableArgs(tableName));
         if (res.size() == 0) {
             return null;
         }
@@ -106,20 +176,161 @@ public class PostgreSQLDialect extends Dialect {
     }
 
     public Set<String> getIndexes(String tableName, JdbcTemplate template) {
-        String sqlString = "select indexname from pg_indexes where tablename = ?";
-        Set<String> indexesNames = new HashSet<String>();
-        List<String> indexes = template.queryForList(sqlString, String.class, tableName.toLowerCase());
-        String pk = getPrimaryKey(tableName, template);
-        for (String indexName : indexes) {
-            if (pk != null && pk.equalsIgnoreCase(indexName)) continue;
-            indexesNames.add(indexName);
+        return new HashSet<String>(getIndexDefinitions(tableName, template).keySet());
+    }
+
+    /**
+     * The index backing the PK constraint is told apart by pg_index itself, so the PK isn't looked up.
+     */
+    @Override
+    public Map<String, IndexDescription> getIndexDefinitions(String tableName, JdbcTemplate template) {
+        final Map<String, IndexDescription> definitions = new LinkedHashMap<String, IndexDescription>();
+        template.query(INDEXES_QUERY + " and not i.indisprimary and " + tableCondition(tableName), new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                definitions.put(rs.getString("indexname"), parseIndexDefinition(rs.getString("indexdef")));
+            }
+        }, tableArgs(tableName));
+        return definitions;
+    }
+
+    /**
+     * Parses the output of pg_get_indexdef, e.g. <code>CREATE UNIQUE INDEX ix ON t USING btree (lower((c)::text))</code>
+     * or <code>CREATE INDEX ix ON t USING btree (c) INCLUDE (d) WHERE ((c)::text = 'X'::text)</code>.
+     */
+    static IndexDescription parseIndexDefinition(String indexDef) {
+        IndexDescription indexDescription = new IndexDescription();
+        String upperIndexDef = indexDef.toUpperCase();
+        if (upperIndexDef.startsWith("CREATE UNIQUE ")) {
+            indexDescription.unique();
+        }
+
+        int where = upperIndexDef.lastIndexOf(" WHERE ");
+        if (where != -1) {
+            indexDescription.where(indexDef.substring(where + " WHERE ".length()));
         }
-        return indexesNames;
+        int include = upperIndexDef.indexOf(" INCLUDE (");
+        if (include != -1) {
+            for (String element : splitIndexElements(indexDef, include + " INCLUDE ".length())) {
+                indexDescription.include(element.replaceAll("[()\"]", "").trim().toUpperCase());
+            }
+        }
+
+        int using = upperIndexDef.indexOf(" USING ");
+        for (String element : splitIndexElements(indexDef, indexDef.indexOf('(', using == -1 ? 0 : using))) {
+            String column = element.trim();
+            if (column.toLowerCase().startsWith("lower(")) {
+                indexDescription.lower();
+                column = column.substring("lower".length());
+            }
+            column = column.replaceAll("::[\\w ]+", "").replaceAll("[()\"]", "").trim();
+            indexDescription.addColumn(column.toUpperCase());
+        }
+        return indexDescription;
+    }
+
+    /**
+     * @param start the position of the parenthesis opening the list
+     */
+    private static List<String> splitIndexElements(String indexDef, int start) {
+        List<String> elements = new ArrayList<String>();
+        if (start == -1) {
+            return elements;
+        }
+
+        int depth = 0;
+        int elementStart = start + 1;
+        for (int i = start; i < indexDef.length(); i++) {
+            char c = indexDef.charAt(i);
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+                if (depth == 0) {
+                    elements.add(indexDef.substring(elementStart, i));
+                    break;
+                }
+            } else if (c == ',' && depth == 1) {
+                elements.add(indexDef.substring(elementStart, i));
+                elementStart = i + 1;
+            }
+        }
+        return elements;
+    }
+
+    @Override
+    public CatalogSnapshot getCatalogSnapshot(JdbcTemplate template) {
+        final CatalogSnapshot snapshot = new CatalogSnapshot();
+        snapshot.setSchemaQualified(true);
+        String snapshotColumns = "n.nspname, pg_table_is_visible(t.oid) as visible, ";
+
+        template.query("select " + snapshotColumns + "t.relname, t.reltuples from pg_class t join pg_namespace n on n.oid = t.relnamespace " +
+                       "where t.relkind in ('r', 'p') and n.nspname not in " + SYSTEM_SCHEMAS, new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                for (String tableName : getSnapshotNames(rs, "relname")) {
+                    snapshot.addTable(tableName);
+                    snapshot.setRowEstimate(tableName, Math.max(0, rs.getLong("reltuples")));
+                }
+            }
+        });
+
+        template.query(COLUMNS_QUERY.replaceFirst("select ", "select " + snapshotColumns) + " and n.nspname not in " + SYSTEM_SCHEMAS,
+                       new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                ColumnDescription column = readColumn(rs);
+                for (String tableName : getSnapshotNames(rs, "table_name")) {
+                    snapshot.addColumn(tableName, column);
+                }
+            }
+        });
+
+        template.query(INDEXES_QUERY.replaceFirst("select ", "select " + snapshotColumns) + " and n.nspname not in " + SYSTEM_SCHEMAS,
+                       new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                IndexDescription index = parseIndexDefinition(rs.getString("indexdef"));
+                for (String tableName : getSnapshotNames(rs, "tablename")) {
+                    snapshot.addIndexDefinition(tableName, rs.getString("indexname"), index);
+                    if (!rs.getBoolean("indisvalid")) {
+                        snapshot.addInvalidIndex(tableName, rs.getString("indexname"));
+                    }
+                }
+            }
+        });
+
+        template.query("select " + snapshotColumns + "t.relname, c.conname from pg_constraint c join pg_class t on t.oid = c.conrelid " +
+                       "join pg_namespace n on n.oid = t.relnamespace " +
+                       "where c.contype = 'p' and n.nspname not in " + SYSTEM_SCHEMAS, new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                for (String tableName : getSnapshotNames(rs, "relname")) {
+                    snapshot.setPrimaryKey(tableName, rs.getString("conname"));
+                }
+            }
+        });
+
+        return snapshot;
+    }
+
+    /**
+     * Same-named tables of different schemas are told apart by their schema-qualified names; the one the search_path
+     * resolves the bare name to goes by that name as well.
+     */
+    private static List<String> getSnapshotNames(ResultSet rs, String tableColumn) throws SQLException {
+        String tableName = rs.getString(tableColumn);
+        String qualifiedName = rs.getString("nspname") + "." + tableName;
+        return rs.getBoolean("visible") ? Arrays.asList(tableName, qualifiedName) : Collections.singletonList(qualifiedName);
+    }
+
+    /**
+     * NAMEDATALEN - 1; longer names are silently truncated
+     */
+    @Override
+    public int getMaxIdentifierLength() {
+        return 63;
     }
 
     @Override
     public boolean tableExists(String tableName, JdbcTemplate template) {
-        return super.tableExists(tableName.toLowerCase(), template);
+        return !template.queryForList(TABLE_EXISTENCE_QUERY + tableCondition(tableName), Object.class,
+                                      tableArgs(tableName)).isEmpty();
     }
 
     @Override
@@ -136,6 +347,20 @@ public class PostgreSQLDialect extends Dialect {
         return "alter table " + tableName + " add column " + columnSQL;
     }
 
+    /**
+     * Every alter table takes an ACCESS EXCLUSIVE lock, and a type change rewrites the table, so all the changes
+     * go into a single statement: alter column clauses are "alter column X ..."
+     */
+    @Override
+    public List<String> composeAlterTableStatements(String tableName, List<String> addedColumns, List<String> alteredColumns) {
+        List<String> clauses = new ArrayList<String>();
+        for (String columnSQL : addedColumns) {
+            clauses.add("add column " + columnSQL);
+        }
+        clauses.addAll(alteredColumns);
+        return Collections.singletonList("alter table " + tableName + " " + StringUtils.join(clauses, ", "));
+    }
+
     @Override
     public int getVarbinaryColumnSize(Integer requiredSize) {
         return 0;
@@ -161,11 +386,371 @@ public class PostgreSQLDialect extends Dialect {
         return false;
     }
 
+    @Override
+    public boolean supportsOnlineIndexBuilds() {
+        return true;
+    }
+
+    @Override
+    public boolean onlineIndexBuildsRequireAutoCommit() {
+        return true;
+    }
+
+    @Override
+    public String getOnlineIndexModifier() {
+        return "concurrently";
+    }
+
+    @Override
+    public String getDropIndexStatement(String indexName, boolean online) {
+        return "drop index " + (online ? "concurrently " : "") + indexName;
+    }
+
+    @Override
+    public String getOnlineIndexBuildCleanupStatement(String indexName) {
+        return "drop index concurrently if exists " + indexName; // the INVALID index of a failed build
+    }
+
+    @Override
+    public boolean supportsOnlineColumnTypeChanges() {
+        return true;
+    }
+
+    @Override
+    public List<String> getShadowColumnSyncStatements(String tableName, String columnName, String shadowColumnName) {
+        String trigger = SchemaUtil.composeSyncTriggerName(tableName, columnName);
+        String function = SchemaUtil.getSchemaPrefix(tableName) + trigger;
+        return Arrays.asList(
+            "create or replace function " + function + "() returns trigger as $$ begin new." + shadowColumnName +
+            " := new." + columnName + "; return new; end $$ language plpgsql",
+            "drop trigger if exists " + trigger + " on " + tableName,
+            "create trigger " + trigger + " before insert or update on " + tableName +
+            " for each row execute procedure " + function + "()");
+    }
+
+    @Override
+    public boolean supportsOnlinePrimaryKeyTypeChanges() {
+        return true;
+    }
+
+    /**
+     * A NOT VALID check is added instantly; it's validated under a lock that doesn't block writes, and then
+     * set not null (and add primary key using index) skip the scan of the table (PostgreSQL 12+).
+     */
+    @Override
+    public List<String> getNotNullConstraintStatements(String tableName, String columnName) {
+        String check = SchemaUtil.composeNotNullConstraintName(tableName, columnName);
+        return Arrays.asList(
+            "alter table " + tableName + " drop constraint if exists " + check,
+            "alter table " + tableName + " add constraint " + check + " check (" + columnName + " is not null) not valid");
+    }
+
+    @Override
+    public List<String> getNotNullValidationStatements(String tableName, String columnName) {
+        return Collections.singletonList("alter table " + tableName + " validate constraint " +
+                                         SchemaUtil.composeNotNullConstraintName(tableName, columnName));
+    }
+
+    @Override
+    public List<String> getNotNullPromotionStatements(String tableName, String columnName) {
+        return Arrays.asList(
+            "alter table " + tableName + " alter column " + columnName + " set not null",
+            "alter table " + tableName + " drop constraint " + SchemaUtil.composeNotNullConstraintName(tableName, columnName));
+    }
+
+    /**
+     * All in one transaction: the table is locked exclusively for the time it takes to change the catalog only.
+     */
+    @Override
+    public List<String> getShadowColumnSwapStatements(String tableName, String columnName, String shadowColumnName,
+                                                      boolean notNull, String pkName, String pkIndexName) {
+        String trigger = SchemaUtil.composeSyncTriggerName(tableName, columnName);
+        String retiredColumnName = SchemaUtil.composeRetiredColumnName(columnName);
+
+        List<String> statements = new ArrayList<String>();
+        statements.add("drop trigger if exists " + trigger + " on " + tableName);
+        statements.add("drop function if exists " + SchemaUtil.getSchemaPrefix(tableName) + trigger + "()");
+        if (pkName != null) {
+            statements.add("alter table " + tableName + " drop constraint " + pkName);
+        }
+        statements.add("alter table " + tableName + " rename column " + columnName + " to " + retiredColumnName);
+        statements.add("alter table " + tableName + " rename column " + shadowColumnName + " to " + columnName);
+        if (notNull) {
+            statements.add("alter table " + tableName + " alter column " + columnName + " set not null");
+        }
+        if (pkName != null) {
+            statements.add("alter table " + tableName + " add constraint " + pkName + " primary key using index " + pkIndexName);
+        }
+        if (notNull) {
+            statements.add("alter table " + tableName + " drop constraint " +
+                           SchemaUtil.composeNotNullConstraintName(tableName, shadowColumnName));
+        }
+        statements.add("alter table " + tableName + " drop column " + retiredColumnName);
+        return statements;
+    }
+
+    @Override
+    public List<String> getDdlTimeoutStatements(long lockTimeoutMillis, long statementTimeoutMillis) {
+        List<String> statements = new ArrayList<String>();
+        if (lockTimeoutMillis > 0) {
+            statements.add("set lock_timeout = " + lockTimeoutMillis);
+        }
+        if (statementTimeoutMillis > 0) {
+            statements.add("set statement_timeout = " + statementTimeoutMillis);
+        }
+        return statements;
+    }
+
+    @Override
+    public List<String> getDdlTimeoutResetStatements() {
+        return Arrays.asList("reset lock_timeout", "reset statement_timeout");
+    }
+
+    @Override
+    public boolean isLockTimeout(SQLException e) {
+        return "55P03".equals(e.getSQLState()); // lock_not_available
+    }
+
+    @Override
+    public boolean supportsPartitioning() {
+        return true;
+    }
+
+    @Override
+    public boolean uniqueKeysRequirePartitionColumn() {
+        return true;
+    }
+
+    @Override
+    public String getPartitionByClause(String tableName, PartitionDescription partitioning, Date firstPeriod) {
+        return " partition by " + partitioning.getType().toString().toLowerCase() + " (" + partitioning.getColumnName() + ")";
+    }
+
+    /**
+     * Partitions are tables of their own, created in the schema of the partitioned table. A range partitioned table
+     * gets a DEFAULT partition for the rows no range partition takes: those older than the table, and those of periods
+     * whose partitions weren't created in time. Creating a range partition scans the DEFAULT one for rows it should take,
+     * and fails if there are any.
+     */
+    @Override
+    public List<String> getPartitionCreationStatements(String tableName, PartitionDescription partitioning) {
+        List<String> statements = new ArrayList<String>();
+        String schemaPrefix = SchemaUtil.getSchemaPrefix(tableName);
+        if (partitioning.getType() == PartitionDescription.Type.LIST) {
+            for (Map.Entry<String, List<String>> list : partitioning.getLists().entrySet()) {
+                statements.add("create table " + schemaPrefix + SchemaUtil.composePartitionName(tableName, list.getKey()) +
+                               " partition of " + tableName + " for values in (" + StringUtils.join(list.getValue(), ", ") + ")");
+            }
+        } else if (partitioning.getType() == PartitionDescription.Type.HASH) {
+            for (int i = 0; i < partitioning.getHashPartitions(); i++) {
+                statements.add("create table " + schemaPrefix + SchemaUtil.composePartitionName(tableName, "P" + i) +
+                               " partition of " + tableName +
+                               " for values with (modulus " + partitioning.getHashPartitions() + ", remainder " + i + ")");
+            }
+        } else if (partitioning.getType() == PartitionDescription.Type.RANGE) {
+            statements.add("create table " + schemaPrefix + SchemaUtil.composePartitionName(tableName, "DEFAULT") +
+                           " partition of " + tableName + " default");
+        }
+        return statements;
+    }
+
+    @Override
+    public String getRangePartitionCreationStatement(String tableName, String partitionName, Date from, Date to) {
+        return "create table if not exists " + SchemaUtil.getSchemaPrefix(tableName) + partitionName +
+               " partition of " + tableName + " for values from ('" + PartitionDescription.formatDate(from) +
+               "') to ('" + PartitionDescription.formatDate(to) + "')";
+    }
+
+    /**
+     * A detached partition stays around as a plain table, to be archived or dropped by hand.
+     */
+    @Override
+    public String getExpiredPartitionStatement(String tableName, String partitionName, boolean drop) {
+        String partition = SchemaUtil.getSchemaPrefix(tableName) + partitionName;
+        return drop ? "drop table " + partition : "alter table " + tableName + " detach partition " + partition;
+    }
+
+    @Override
+    public Map<String, String> getPartitionBounds(String tableName, JdbcTemplate template) {
+        final Map<String, String> bounds = new LinkedHashMap<String, String>();
+        final boolean[] partitioned = new boolean[1];
+        template.query("select p.relname as partition_name, pg_get_expr(p.relpartbound, p.oid) as bound " +
+                       "from pg_class t join pg_namespace n on n.oid = t.relnamespace " +
+                       "left join pg_inherits i on i.inhparent = t.oid left join pg_class p on p.oid = i.inhrelid " +
+                       "where t.relkind = 'p' and " + tableCondition(tableName), new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                partitioned[0] = true;
+                if (rs.getString("partition_name") != null) {
+                    bounds.put(rs.getString("partition_name").toUpperCase(), rs.getString("bound"));
+                }
+            }
+        }, tableArgs(tableName));
+        return partitioned[0] ? bounds : null;
+    }
+
+    @Override
+    public boolean supportsOnlinePartitionedIndexBuilds() {
+        return false; // create index concurrently isn't supported on a partitioned table
+    }
+
+    @Override
+    public String getStorageClause(StorageOptions storage, boolean index) {
+        Map<String, String> parameters = getStorageParameters(storage, index);
+        return parameters.isEmpty() ? "" : " with (" + joinStorageParameters(parameters) + ")";
+    }
+
+    @Override
+    public Map<String, String> getStorageParameters(StorageOptions storage, boolean index) {
+        Map<String, String> parameters = new TreeMap<String, String>();
+        if (storage.getFillFactor() > 0) {
+            parameters.put("fillfactor", String.valueOf(storage.getFillFactor()));
+        }
+        parameters.putAll(storage.getParameters());
+        return parameters;
+    }
+
+    /**
+     * Reads pg_class.reloptions, which lists the parameters set explicitly, as name=value.
+     */
+    @Override
+    public Map<String, String> readStorageParameters(String tableName, String indexName, JdbcTemplate template) {
+        List<String> options;
+        if (indexName == null) {
+            options = template.queryForList("select array_to_string(t.reloptions, ',') from pg_class t " +
+                                            "join pg_namespace n on n.oid = t.relnamespace where " + tableCondition(tableName),
+                                            String.class, tableArgs(tableName));
+        } else {
+            List<Object> args = new ArrayList<Object>();
+            args.add(SchemaUtil.stripSchema(indexName).toLowerCase());
+            args.addAll(Arrays.asList(tableArgs(tableName)));
+            options = template.queryForList("select array_to_string(c.reloptions, ',') from pg_index i " +
+                                            "join pg_class c on c.oid = i.indexrelid join pg_class t on t.oid = i.indrelid " +
+                                            "join pg_namespace n on n.oid = t.relnamespace where c.relname = ? and " +
+                                            tableCondition(tableName), String.class, args.toArray());
+        }
+
+        Map<String, String> parameters = new TreeMap<String, String>();
+        if (options.isEmpty() || StringUtils.isEmpty(options.get(0))) {
+            return parameters;
+        }
+        for (String option : options.get(0).split(",")) {
+            int pos = option.indexOf('=');
+            if (pos > 0) {
+                parameters.put(option.substring(0, pos).toLowerCase(), option.substring(pos + 1));
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Changing a storage parameter takes a SHARE UPDATE EXCLUSIVE lock at most, and doesn't rewrite the table;
+     * a new fill factor applies to the pages written from then on.
+     */
+    @Override
+    public List<String> getStorageAlterationStatements(String tableName, String indexName, Map<String, String> parameters) {
+        String target = indexName == null ? "table " + tableName : "index " + SchemaUtil.getSchemaPrefix(tableName) + indexName;
+        return Collections.singletonList("alter " + target + " set (" + joinStorageParameters(parameters) + ")");
+    }
+
+    @Override
+    public List<String> getStorageAlterationClauses(Map<String, String> parameters) {
+        return Collections.singletonList("set (" + joinStorageParameters(parameters) + ")");
+    }
+
+    private static String joinStorageParameters(Map<String, String> parameters) {
+        List<String> assignments = new ArrayList<String>();
+        for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+            assignments.add(parameter.getKey() + "=" + parameter.getValue());
+        }
+        return StringUtils.join(assignments, ", ");
+    }
+
+    /**
+     * Values longer than about 2kB are compressed (and moved out of line only if still too long) under the EXTENDED
+     * storage; with a compression method where the server has them (14+): lz4, much faster to compress and decompress,
+     * or pglz, which compresses somewhat better, for {@link Compression#HIGH}.
+     */
+    @Override
+    public String getColumnCompression(ColumnDescription column, List<String> compressionMethods) {
+        ColumnType type = column.getType();
+        if (!SchemaUtil.isLOB(column) && type != ColumnType.VARCHAR && type != ColumnType.VARBINARY) {
+            return null;
+        }
+
+        if (compressionMethods.isEmpty()) {
+            return "extended";
+        }
+        return "extended " + (column.getCompression() != Compression.HIGH && compressionMethods.contains("lz4") ? "lz4" : "pglz");
+    }
+
+    @Override
+    public Map<String, String> readColumnCompressions(String tableName, List<String> compressionMethods, JdbcTemplate template) {
+        final boolean methods = !compressionMethods.isEmpty();
+        final Map<String, String> compressions = new HashMap<String, String>();
+        template.query("select a.attname, a.attstorage" + (methods ? ", a.attcompression" : "") + " from pg_attribute a " +
+                       "join pg_class t on t.oid = a.attrelid join pg_namespace n on n.oid = t.relnamespace " +
+                       "where a.attnum > 0 and not a.attisdropped and a.attstorage <> 'p' and " + tableCondition(tableName),
+                       new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                String storage = STORAGES.get(rs.getString("attstorage"));
+                if (methods) {
+                    String method = rs.getString("attcompression");
+                    storage += " " + ("l".equals(method) ? "lz4" : "p".equals(method) ? "pglz" : "default");
+                }
+                compressions.put(rs.getString("attname").toUpperCase(), storage);
+            }
+        }, tableArgs(tableName));
+        return compressions;
+    }
+
+    /**
+     * A new compression method applies to the values written from then on; the existing ones are left as they are.
+     */
+    @Override
+    public List<String> getColumnCompressionClauses(String columnName, String compression, String current) {
+        String[] storageAndMethod = compression.split(" ");
+        List<String> clauses = new ArrayList<String>();
+        clauses.add("alter column " + columnName + " set storage " + storageAndMethod[0]);
+        if (storageAndMethod.length > 1) {
+            clauses.add("alter column " + columnName + " set compression " + storageAndMethod[1]);
+        }
+        return clauses;
+    }
+
+    /**
+     * @return the compression methods the server has; empty before 14, where the method can't be chosen
+     */
+    @Override
+    public List<String> getCompressionMethods(JdbcTemplate template) {
+        List<String> enumValues = template.queryForList("select array_to_string(enumvals, ',') from pg_settings " +
+                                                        "where name = 'default_toast_compression'", String.class);
+        return enumValues.isEmpty() ? Collections.<String>emptyList() : Arrays.asList(enumValues.get(0).split(","));
+    }
+
+    @Override
+    public Set<String> getInvalidIndexes(String tableName, JdbcTemplate template) {
+        String sqlString = "select c.relname from pg_index i join pg_class c on c.oid = i.indexrelid " +
+                           "join pg_class t on t.oid = i.indrelid join pg_namespace n on n.oid = t.relnamespace " +
+                           "where not i.indisvalid and " + tableCondition(tableName);
+        return new HashSet<String>(template.queryForList(sqlString, String.class, tableArgs(tableName)));
+    }
+
+    @Override
+    public boolean supportsConcurrentIndexBuilds() {
+        return true; // create index takes a SHARE lock, which doesn't conflict with itself
+    }
+
     @Override
     public boolean indexExists(String indexName, String tableName, JdbcTemplate template) {
-        String sql = indexExistenceQuery();
-        List<Object> res = template.queryForList(sql, Object.class, indexName.toLowerCase(), tableName.toLowerCase());
-        return res != null && !res.isEmpty();
+        List<Object> args = new ArrayList<Object>();
+        args.add(SchemaUtil.stripSchema(indexName).toLowerCase());
+        args.addAll(Arrays.asList(tableArgs(tableName)));
+        return !template.queryForList(INDEX_EXISTENCE_QUERY + tableCondition(tableName), Object.class, args.toArray()).isEmpty();
+    }
+
+    @Override
+    public boolean supportsLowerIndex() {
+        return true;
     }
 
     @Override
@@ -173,6 +758,21 @@ public class PostgreSQLDialect extends Dialect {
         return "((lower(" + column + ")))";
     }
 
+    @Override
+    public boolean supportsPartialIndexes() {
+        return true;
+    }
+
+    @Override
+    public String getPartialIndexClause(String predicate) {
+        return " where " + predicate;
+    }
+
+    @Override
+    public boolean supportsIncludedColumns() {
+        return true; // 11+
+    }
+
     @Override
     public void addCheckConstraints(TableDescription tableDescription, StringBuffer sql, String expressionSeparator) {
         for (String check : tableDescription.getChecks()) {
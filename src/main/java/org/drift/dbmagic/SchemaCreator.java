@@ -1,14 +1,18 @@
 package org.drift.dbmagic;
 
 import org.apache.log4j.Logger;
+import org.drift.dbmagic.utils.ReflectionUtils;
 import org.drift.dbmagic.utils.StringUtils;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.sql.DataSource;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
 import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
 
 /**
  * @author Dima Frid
@@ -24,6 +28,64 @@ public class SchemaCreator {
 
     private String dialectName;
 
+    private boolean catalogSnapshotEnabled = true;
+
+    private volatile CatalogSnapshot catalog;
+
+    private volatile List<String> compressionMethods; // of the server, read once per sync
+
+    private final Set<String> databaseCompressions = Collections.synchronizedSet(new HashSet<String>()); // set in this sync
+
+    private int parallelism = 1;
+
+    private int maxConnections = 0;
+
+    private boolean onlineIndexBuilds = false;
+
+    private int onlineIndexBuildAttempts = 3;
+
+    private long onlineIndexBuildRetryDelay = 1000;
+
+    private long lockTimeout = 0;
+
+    private long statementTimeout = 0;
+
+    private long lockRetryBudget = 60000;
+
+    private long lockRetryDelay = 100;
+
+    private int indexBuildParallelism = 0;
+
+    private boolean noLoggingIndexBuilds = false;
+
+    private boolean onlineColumnTypeChanges = false;
+
+    private boolean onlineNotNullChanges = false;
+
+    private int backfillChunkSize = 10000;
+
+    private long backfillThrottle = 0;
+
+    private boolean bootstrapEnabled = true;
+
+    private boolean fingerprintsEnabled = false;
+
+    private int fingerprintSpotChecks = 0;
+
+    private int bootstrapBatchSize = 500;
+
+    private MigrationExecutor migrationExecutor;
+
+    private JdbcMigrationExecutor defaultExecutor;
+
+    private final ThreadLocal<List<MigrationStep>> plannedSteps = new ThreadLocal<List<MigrationStep>>();
+
+    private final ConcurrentMap<String, Object> tableLocks = new ConcurrentHashMap<String, Object>();
+
+    private final List<MigrationListener> listeners = new CopyOnWriteArrayList<MigrationListener>();
+
+    private final ThreadLocal<TableProgress> tableProgress = new ThreadLocal<TableProgress>();
+
     public SchemaCreator() { }
 
     public SchemaCreator(DataSource dataSource, String dialectName) {
@@ -37,113 +99,732 @@ public class SchemaCreator {
     }
 
     public List<TableDescription> createTablesFromJPA(Collection<Class<?>> classes) {
-        Set<TableDescription> tables = new HashSet<TableDescription>();
-        for (Class<?> clazz : classes) {
-            int modifiers = clazz.getModifiers();
-            if (DBTable.class.isAssignableFrom(clazz) && !Modifier.isAbstract(modifiers)) {
-                try {
-                    Method method = clazz.getMethod("tableDescription");
-                    TableDescription tableDescription = (TableDescription) method.invoke(clazz.newInstance());
-                    tables.add(tableDescription);
-                } catch (Exception e) {
-                    logError("Failed to retrieve table description for class: " + clazz, e);
-                }
-            }
+        Map<Class<?>, Exception> failures = new LinkedHashMap<Class<?>, Exception>();
+        List<TableDescription> tables = TableDescriptionUtil.getDBTableDescriptions(classes, failures);
+        for (Map.Entry<Class<?>, Exception> entry : failures.entrySet()) {
+            logError("Failed to retrieve table description for class: " + entry.getKey(), entry.getValue());
         }
 
-        return createTables(tables);
+        return createTables(new LinkedHashSet<TableDescription>(tables));
     }
 
     public List<TableDescription> createTables(Collection<TableDescription> tables) {
+        return createTables(tables, new LinkedHashMap<TableDescription, Exception>());
+    }
+
+    /**
+     * Creates or updates the given tables, using up to {@link #setParallelism parallelism} workers.
+     * With {@link #setFingerprintsEnabled fingerprints} enabled, tables that haven't changed since they were last
+     * synced are skipped.
+     *
+     * @param failures filled with the tables that failed and the respective errors
+     * @return the tables that were created or updated successfully (or skipped), in the order they were given
+     */
+    public List<TableDescription> createTables(Collection<TableDescription> tables, Map<TableDescription, Exception> failures) {
+        if (!fingerprintsEnabled) {
+            return syncTables(tables, failures);
+        }
+
+        Map<String, String> storedFingerprints = loadFingerprints();
+        List<TableDescription> unchanged = new ArrayList<TableDescription>();
+        List<TableDescription> changed = new ArrayList<TableDescription>();
+        Map<String, String> fingerprints = new HashMap<String, String>();
+        for (TableDescription table : tables) {
+            String fingerprint = SchemaFingerprints.fingerprint(table);
+            String key = table.getFullTableName().toUpperCase();
+            fingerprints.put(key, fingerprint);
+            if (fingerprint.equals(storedFingerprints.get(key))) {
+                unchanged.add(table);
+            } else {
+                changed.add(table);
+            }
+        }
+        changed.addAll(spotCheck(unchanged));
+        logInfo(changed.size() + " of " + tables.size() + " tables changed since they were last synced");
+
+        Map<String, String> syncedFingerprints = new HashMap<String, String>();
+        for (TableDescription table : syncTables(changed, failures)) {
+            String key = table.getFullTableName().toUpperCase();
+            syncedFingerprints.put(key, fingerprints.get(key));
+        }
+        storeFingerprints(syncedFingerprints);
+
         List<TableDescription> successful = new ArrayList<TableDescription>();
         for (TableDescription table : tables) {
-            try {
-                _createTable(table);
+            if (!failures.containsKey(table)) {
                 successful.add(table);
-            } catch (Exception e) {
-                logError("Failed to create or update table: " + table, e);
             }
         }
+        return successful;
+    }
+
+    private Map<String, String> loadFingerprints() {
+        try {
+            if (getDialect().tableExists(SchemaFingerprints.TABLE_NAME, template())) {
+                return SchemaFingerprints.load(template());
+            }
+        } catch (Exception e) {
+            logError("Failed to load schema fingerprints; syncing all tables", e);
+        }
+        return new HashMap<String, String>();
+    }
+
+    private void storeFingerprints(Map<String, String> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+
+        try {
+            _createTable(SchemaFingerprints.tableDescription());
+            SchemaFingerprints.store(template(), fingerprints);
+        } catch (Exception e) {
+            // the tables will be synced again next time
+            logError("Failed to store schema fingerprints", e);
+        }
+    }
+
+    /**
+     * Makes sure that a sample of the tables that seem unchanged is actually there, along with its PK and indexes;
+     * to catch tables changed or dropped behind our back.
+     *
+     * @return the tables that failed the check and should be synced after all
+     */
+    private List<TableDescription> spotCheck(List<TableDescription> unchanged) {
+        List<TableDescription> sample = new ArrayList<TableDescription>(unchanged);
+        Collections.shuffle(sample);
+        sample = sample.subList(0, Math.min(fingerprintSpotChecks, sample.size()));
+
+        List<TableDescription> failed = new ArrayList<TableDescription>();
+        for (TableDescription table : sample) {
+            if (!existsAsDescribed(table)) {
+                logInfo("Table " + table.getFullTableName() + " doesn't match its fingerprint; syncing it");
+                failed.add(table);
+            }
+        }
+        return failed;
+    }
+
+    private boolean existsAsDescribed(TableDescription table) {
+        String tableName = table.getTableName();
+        if (!tableExists(table.getFullTableName())) {
+            return false;
+        }
+
+        Set<String> indexNames = new HashSet<String>();
+        if (table.getPrimaryKey() != null && getDialect().pkRequiresIndex()) {
+            indexNames.add(SchemaUtil.composePKName(tableName));
+        }
+        for (IndexDescription index : table.getIndexes()) {
+            indexNames.add(composeIndexName(index, tableName));
+        }
+        for (String indexName : indexNames) {
+            if (!indexExists(indexName, table.getFullTableName())) {
+                return false;
+            }
+        }
+
+        for (TableDescription joinTable : table.getJoinTablesDescriptions()) {
+            if (!existsAsDescribed(joinTable)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<TableDescription> syncTables(Collection<TableDescription> tables, Map<TableDescription, Exception> failures) {
+        List<TableDescription> successful = new ArrayList<TableDescription>();
+        if (tables.isEmpty()) {
+            return successful;
+        }
+        beginSync();
+
+        if (bootstrapEnabled && bootstrap(tables)) {
+            successful.addAll(tables);
+            return successful;
+        }
+
+        loadCatalog();
+        try {
+            int workers = getEffectiveParallelism(tables.size());
+            if (workers > 1 && TransactionSynchronizationManager.isActualTransactionActive()) {
+                // the workers' connections wouldn't take part in it
+                logInfo("Synchronizing tables sequentially, within the transaction of the caller");
+                workers = 1;
+            }
+            if (workers > 1) {
+                createTablesInParallel(tables, workers, successful, failures);
+            } else {
+                for (TableDescription table : tables) {
+                    try {
+                        _createTable(table);
+                        successful.add(table);
+                    } catch (Exception e) {
+                        logError("Failed to create or update table: " + table, e);
+                        failures.put(table, e);
+                    }
+                }
+            }
+        } finally {
+            catalog = null;
+        }
 
         return successful;
     }
 
+    /**
+     * Fast path for an empty schema: there's nothing to introspect, so the DDL of all the tables is generated up front
+     * and sent in as few round trips as possible.
+     *
+     * @return false if the schema isn't empty, or if the DDL failed and the tables should be synced one by one
+     */
+    private boolean bootstrap(Collection<TableDescription> tables) {
+        long start = System.currentTimeMillis();
+        List<MigrationStep> steps = new ArrayList<MigrationStep>();
+        try {
+            if (!getDialect().isSchemaEmpty(template())) {
+                return false;
+            }
+
+            catalog = new CatalogSnapshot(); // nothing exists yet
+            plannedSteps.set(steps);
+            Set<String> plannedTables = new HashSet<String>();
+            for (TableDescription table : tables) {
+                planTable(table, plannedTables);
+            }
+        } catch (Exception e) {
+            logError("Failed to check whether the schema is empty; syncing tables one by one", e);
+            return false;
+        } finally {
+            plannedSteps.remove();
+            catalog = null;
+        }
+
+        try {
+            executeBatched(steps);
+        } catch (Exception e) {
+            logError("Failed to bootstrap the schema; syncing tables one by one", e);
+            return false;
+        }
+
+        logInfo("Bootstrapped empty schema with " + tables.size() + " tables (" + steps.size() + " statements) in " +
+                (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
+    private void executeBatched(List<MigrationStep> steps) {
+        if (migrationExecutor != null) { // a custom executor gets to see every step
+            for (MigrationStep step : steps) {
+                executeNow(step);
+            }
+            return;
+        }
+
+        for (int from = 0; from < steps.size(); from += bootstrapBatchSize) {
+            List<String> statements = new ArrayList<String>();
+            for (MigrationStep step : steps.subList(from, Math.min(from + bootstrapBatchSize, steps.size()))) {
+                statements.add(step.getSql());
+            }
+
+            String script = getDialect().composeScript(statements);
+            String sql = script != null ? script : StringUtils.join(statements, ";\n");
+            fire(new MigrationEvent(MigrationEvent.Type.DDL_START, null, null, null, sql, 0, statements.size(), null));
+            long start = System.currentTimeMillis();
+            try {
+                if (script != null) {
+                    template().execute(script);
+                } else {
+                    template().batchUpdate(statements.toArray(new String[statements.size()]));
+                }
+            } catch (RuntimeException e) {
+                fire(new MigrationEvent(MigrationEvent.Type.FAILURE, null, null, null, sql,
+                                        System.currentTimeMillis() - start, statements.size(), e));
+                throw e;
+            }
+            fire(new MigrationEvent(MigrationEvent.Type.DDL_END, null, null, null, sql,
+                                    System.currentTimeMillis() - start, statements.size(), null));
+        }
+    }
+
+    private void createTablesInParallel(Collection<TableDescription> tables, int workers, List<TableDescription> successful,
+                                        Map<TableDescription, Exception> failures) {
+        logInfo("Synchronizing " + tables.size() + " tables using " + workers + " workers");
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers, new SyncThreadFactory());
+        try {
+            Map<TableDescription, Future<?>> futures = new LinkedHashMap<TableDescription, Future<?>>();
+            for (final TableDescription table : tables) {
+                futures.put(table, executor.submit(new Callable<Void>() {
+                    public Void call() throws Exception {
+                        _createTable(table);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Map.Entry<TableDescription, Future<?>> entry : futures.entrySet()) {
+                TableDescription table = entry.getKey();
+                try {
+                    entry.getValue().get();
+                    successful.add(table);
+                } catch (ExecutionException e) {
+                    Exception cause = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    logError("Failed to create or update table: " + table, cause);
+                    failures.put(table, cause);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    logError("Interrupted while waiting for table: " + table, e);
+                    failures.put(table, e);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    int getEffectiveParallelism(int tableCount) {
+        return Math.max(1, Math.min(Math.min(parallelism, tableCount), getDataSourceCapacity()));
+    }
+
+    /**
+     * @return the number of connections the data source can hand out concurrently;
+     * either as set explicitly or as reported by the common connection pools
+     */
+    private int getDataSourceCapacity() {
+        if (maxConnections > 0) {
+            return maxConnections;
+        }
+
+        Integer poolSize = ReflectionUtils.getIntProperty(dataSource, "getMaxActive", "getMaxTotal", "getMaximumPoolSize", "getMaxPoolSize");
+        if (poolSize != null && poolSize > 0) {
+            return poolSize;
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    private void loadCatalog() {
+        if (!catalogSnapshotEnabled) {
+            return;
+        }
+
+        try {
+            long start = System.currentTimeMillis();
+            catalog = getDialect().getCatalogSnapshot(template());
+            logInfo("Catalog snapshot of " + catalog.getTableCount() + " tables loaded in " +
+                    (System.currentTimeMillis() - start) + " ms");
+        } catch (Exception e) {
+            logError("Failed to load catalog snapshot; falling back to per-table introspection", e);
+            catalog = null;
+        }
+    }
+
     public void createTable(DBTable dbTable) throws SQLException {
-        TableDescription tableDescription = dbTable.tableDescription();
-        _createTable(tableDescription);
+        createTable(dbTable.tableDescription());
     }
 
     public void createTable(TableDescription tableDescription) throws SQLException {
+        beginSync();
         _createTable(tableDescription);
     }
 
+    /**
+     * Forgets what the previous sync learned of the server beyond the catalog snapshot.
+     */
+    private void beginSync() {
+        compressionMethods = null;
+        databaseCompressions.clear();
+    }
+
+    private List<String> getCompressionMethods() {
+        List<String> methods = compressionMethods;
+        if (methods == null) {
+            methods = getDialect().getCompressionMethods(template());
+            compressionMethods = methods;
+        }
+        return methods;
+    }
+
     private void _createTable(TableDescription tableDescription) throws SQLException {
         String tableName = tableDescription.getTableName();
 
-        if (!tableExists(tableName)) {
-            String sql = composeTableCreationSql(tableDescription);
-            logInfo("Creating table " + tableName);
-            template().execute(sql);
+        // parallel workers may meet the same (join) table; only one of them gets to sync it at a time
+        synchronized (getTableLock(tableName)) {
+            TableProgress previous = tableProgress.get();
+            TableProgress progress = new TableProgress(tableName);
+            tableProgress.set(progress);
+            fire(new MigrationEvent(MigrationEvent.Type.TABLE_START, tableName, tableDescription.getFullTableName(), null, null, 0, -1, null));
+            try {
+                createOrUpdateTable(tableDescription);
+                fire(new MigrationEvent(MigrationEvent.Type.TABLE_END, tableName, tableDescription.getFullTableName(), null, null,
+                                        progress.elapsed(), progress.statements, null));
+            } catch (SQLException | RuntimeException e) {
+                fire(new MigrationEvent(MigrationEvent.Type.FAILURE, tableName, tableDescription.getFullTableName(), null, null,
+                                        progress.elapsed(), progress.statements, e));
+                throw e;
+            } finally {
+                tableProgress.set(previous);
+            }
+        }
+
+        for (TableDescription joinTableDescription : tableDescription.getJoinTablesDescriptions()) {
+            _createTable(joinTableDescription);
+        }
+    }
 
-            for (ColumnDescription column : tableDescription.getColumns().values()) {
-                setCompressedStorage(tableDescription, column);
+    private Object getTableLock(String tableName) {
+        String key = tableName.toUpperCase();
+        Object lock = tableLocks.get(key);
+        if (lock == null) {
+            Object newLock = new Object();
+            lock = tableLocks.putIfAbsent(key, newLock);
+            if (lock == null) {
+                lock = newLock;
             }
+        }
+        return lock;
+    }
+
+    private void createOrUpdateTable(TableDescription tableDescription) throws SQLException {
+        String tableName = tableDescription.getFullTableName();
 
+        if (!tableExists(tableName)) {
+            createTableWithoutIndexes(tableDescription);
             createPrimaryKey(tableDescription);
             createIndexes(tableDescription);
         } else {
             updateTable(tableDescription);
         }
+        invalidateCatalog(tableName);
+    }
+
+    private void createTableWithoutIndexes(TableDescription tableDescription) {
+        String sql = composeTableCreationSql(tableDescription);
+        logInfo("Creating table " + tableDescription.getTableName());
+        execute(new MigrationStep(MigrationStep.Type.CREATE_TABLE, tableDescription.getTableName(),
+                                  tableDescription.getFullTableName(), sql, 0));
+
+        TableAlteration alteration = new TableAlteration();
+        updateCompression(tableDescription, alteration);
+        alterTable(tableDescription, alteration);
+
+        createPartitions(tableDescription);
+    }
+
+    private void createPartitions(TableDescription tableDescription) {
+        PartitionDescription partitioning = tableDescription.getPartitioning();
+        if (partitioning == null || !getDialect().supportsPartitioning()) {
+            return;
+        }
 
-        for (TableDescription joinTableDescription : tableDescription.getJoinTablesDescriptions()) {
-            _createTable(joinTableDescription);
+        String tableName = tableDescription.getTableName();
+        for (String sql : getDialect().getPartitionCreationStatements(tableDescription.getFullTableName(), partitioning)) {
+            execute(new MigrationStep(MigrationStep.Type.CREATE_PARTITION, tableName, tableDescription.getFullTableName(), sql, 0));
+        }
+        if (partitioning.getType() == PartitionDescription.Type.RANGE) {
+            createRangePartitions(tableDescription, new Date(), Collections.<Date>emptySet());
         }
     }
 
-    private void updateTable(TableDescription tableDescription) throws SQLException {
-        if (DBType.getDbTypeByName(getDialectName()).isH2()) {
+    /**
+     * Creates the partitions of the current period and of the {@link PartitionDescription#premake premade} ones
+     * following it, unless the database creates them on its own.
+     *
+     * @param existingUpperBounds upper bounds of the existing partitions, which aren't created again
+     */
+    private void createRangePartitions(TableDescription tableDescription, Date now, Set<Date> existingUpperBounds) {
+        PartitionDescription partitioning = tableDescription.getPartitioning();
+        String tableName = tableDescription.getTableName();
+        Date period = partitioning.getPeriodStart(now);
+        for (int i = 0; i <= partitioning.getPremake(); i++) {
+            Date next = partitioning.addPeriods(period, 1);
+            if (!existingUpperBounds.contains(next)) {
+                String partitionName = SchemaUtil.composePartitionName(tableName, partitioning.getPeriodSuffix(period));
+                String sql = getDialect().getRangePartitionCreationStatement(tableDescription.getFullTableName(),
+                                                                             partitionName, period, next);
+                if (sql == null) {
+                    return;
+                }
+                logInfo("Creating partition " + partitionName + " of table " + tableName);
+                execute(new MigrationStep(MigrationStep.Type.CREATE_PARTITION, tableName, partitionName, sql, 0));
+            }
+            period = next;
+        }
+    }
+
+    /**
+     * Creates the partitions of the upcoming periods of the given range partitioned tables ahead of time, and drops or
+     * detaches the partitions older than the tables' retention. The tables synced by {@link #createTables} have it
+     * done along the way, except those skipped as unchanged by their {@link #setFingerprintsEnabled fingerprints},
+     * which rely on {@link PartitionMaintenance} doing it on a schedule. Tables that aren't range partitioned
+     * are skipped.
+     *
+     * @return the tables maintained successfully
+     */
+    public List<TableDescription> maintainPartitions(Collection<TableDescription> tables) {
+        return maintainPartitions(tables, new Date());
+    }
+
+    List<TableDescription> maintainPartitions(Collection<TableDescription> tables, Date now) {
+        List<TableDescription> maintained = new ArrayList<TableDescription>();
+        for (TableDescription table : tables) {
+            PartitionDescription partitioning = table.getPartitioning();
+            if (partitioning == null || partitioning.getType() != PartitionDescription.Type.RANGE) {
+                continue;
+            }
+            try {
+                maintainPartitions(table, now);
+                maintained.add(table);
+            } catch (Exception e) {
+                logError("Failed to maintain the partitions of table " + table.getTableName(), e);
+            }
+        }
+        return maintained;
+    }
+
+    private void maintainPartitions(TableDescription tableDescription, Date now) {
+        PartitionDescription partitioning = tableDescription.getPartitioning();
+        if (partitioning == null || partitioning.getType() != PartitionDescription.Type.RANGE ||
+            !getDialect().supportsPartitioning()) {
             return;
         }
 
         String tableName = tableDescription.getTableName();
-        Map<String, ColumnDescription> existingColumns = getDialect().getColumns(tableName, template());
-        for (ColumnDescription columnDescription : tableDescription.getColumns().values()) {
-            ColumnDescription existingColumn = existingColumns.get(columnDescription.getName());
-            if (existingColumn != null) {
-                updateColumn(tableName, existingColumn, columnDescription);
+        Map<String, String> bounds = getDialect().getPartitionBounds(tableDescription.getFullTableName(), template());
+        if (bounds == null) {
+            logError("Table " + tableName + " is not partitioned (tables are partitioned only when created)");
+            return;
+        }
+
+        Set<Date> upperBounds = new HashSet<Date>();
+        for (String bound : bounds.values()) {
+            Date upperBound = PartitionDescription.parseUpperBound(bound);
+            if (upperBound != null) {
+                upperBounds.add(upperBound);
+            }
+        }
+        createRangePartitions(tableDescription, now, upperBounds);
+
+        if (partitioning.getRetention() <= 0) {
+            return;
+        }
+        Date expiry = partitioning.addPeriods(partitioning.getPeriodStart(now), -partitioning.getRetention());
+        for (Map.Entry<String, String> bound : bounds.entrySet()) {
+            Date upperBound = PartitionDescription.parseUpperBound(bound.getValue());
+            if (upperBound == null || upperBound.after(expiry)) {
                 continue;
             }
 
-            createColumn(tableDescription, columnDescription);
+            String partitionName = bound.getKey();
+            String sql = getDialect().getExpiredPartitionStatement(tableDescription.getFullTableName(), partitionName,
+                                                                   partitioning.isDropExpired());
+            if (sql == null) {
+                logError("Partition " + partitionName + " of table " + tableName + " expired, but can't be detached" +
+                         " (see PartitionDescription.dropExpired)");
+                continue;
+            }
+            logInfo((partitioning.isDropExpired() ? "Dropping" : "Detaching") + " expired partition " + partitionName +
+                    " of table " + tableName);
+            execute(new MigrationStep(MigrationStep.Type.DROP_PARTITION, tableName, partitionName, sql, 0));
         }
+    }
 
-        Set<String> existingIndexes = getDialect().getIndexes(tableName, template());
-        boolean newIndexFound = false;
-        for (IndexDescription indexDescription : tableDescription.getIndexes()) {
-            String requiredIndexName = SchemaUtil.composeIndexName(indexDescription, tableName);
-            if (!existingIndexes.contains(requiredIndexName) && !existingIndexes.contains(requiredIndexName.toLowerCase())) {
-                newIndexFound = true;
-                break;
+    /**
+     * Creates or updates the given tables as a graph of DDL steps rather than table by table:
+     * PK and indexes of a new table depend only on the table itself, so index builds on different tables
+     * (and on the same table, where the dialect allows it) run concurrently, using up to
+     * {@link #setParallelism parallelism} workers.
+     *
+     * @return the executed scheduler, for the per-step timings, failures and critical path
+     */
+    public DdlScheduler createTablesScheduled(Collection<TableDescription> tables) {
+        beginSync();
+        loadCatalog();
+        try {
+            DdlScheduler scheduler = new DdlScheduler(getEffectiveParallelism(Integer.MAX_VALUE));
+            scheduler.setLog(log);
+
+            Set<String> scheduledTables = new HashSet<String>();
+            for (TableDescription table : tables) {
+                scheduleTable(scheduler, table, scheduledTables);
             }
+
+            logInfo("Running " + scheduler.getSteps().size() + " DDL steps using " + scheduler.getParallelism() + " workers");
+            scheduler.execute();
+            logInfo("DDL steps took " + scheduler.getDurationMillis() + " ms; critical path: " + scheduler.getCriticalPath());
+
+            return scheduler;
+        } finally {
+            catalog = null;
         }
+    }
 
-        if (newIndexFound) {
-            dropIndexes(existingIndexes, tableDescription);
-            createIndexes(tableDescription);
+    /**
+     * Computes the steps that {@link #createTables} would execute to bring the schema in line with the given tables,
+     * without changing anything. Requires a catalog snapshot, which the plan is computed against.
+     */
+    public MigrationPlan plan(Collection<TableDescription> tables) {
+        long start = System.currentTimeMillis();
+        beginSync();
+        catalog = getDialect().getCatalogSnapshot(template());
+        List<MigrationStep> steps = new ArrayList<MigrationStep>();
+        plannedSteps.set(steps);
+        try {
+            Set<String> plannedTables = new HashSet<String>();
+            for (TableDescription table : tables) {
+                planTable(table, plannedTables);
+            }
+        } catch (SQLException e) {
+            throw new RuntimeException("Failed to plan the migration", e);
+        } finally {
+            plannedSteps.remove();
+            catalog = null;
+        }
+
+        MigrationPlan plan = new MigrationPlan(steps);
+        logInfo("Planned " + plan + " in " + (System.currentTimeMillis() - start) + " ms");
+        return plan;
+    }
+
+    private void planTable(TableDescription tableDescription, Set<String> plannedTables) throws SQLException {
+        if (plannedTables.add(tableDescription.getTableName().toUpperCase())) {
+            createOrUpdateTable(tableDescription);
+        }
+
+        for (TableDescription joinTableDescription : tableDescription.getJoinTablesDescriptions()) {
+            planTable(joinTableDescription, plannedTables);
+        }
+    }
+
+    /**
+     * Executes the plan's steps through the {@link #setMigrationExecutor migration executor}: steps of the same table
+     * in order, different tables concurrently, using up to {@link #setParallelism parallelism} workers.
+     * The plan is applied as is; it's up to the caller to make sure the schema hasn't changed since it was computed.
+     *
+     * @return the executed scheduler, for the per-step timings, failures and critical path
+     */
+    public DdlScheduler apply(MigrationPlan plan) {
+        DdlScheduler scheduler = new DdlScheduler(getEffectiveParallelism(plan.getTableNames().size()));
+        scheduler.setLog(log);
+
+        Map<String, DdlStep> lastTableSteps = new HashMap<String, DdlStep>();
+        for (final MigrationStep step : plan.getSteps()) {
+            String key = step.getTableName().toUpperCase();
+            DdlStep ddlStep = scheduler.add(new DdlStep(step.getType() + " " + step.getTarget(), step.getTableName()) {
+                protected void execute() {
+                    executeNow(step);
+                }
+            });
+            DdlStep previous = lastTableSteps.put(key, ddlStep);
+            if (previous != null) {
+                ddlStep.dependsOn(previous);
+            }
+        }
+
+        logInfo("Applying " + plan + " using " + scheduler.getParallelism() + " workers");
+        scheduler.execute();
+        logInfo("Plan applied in " + scheduler.getDurationMillis() + " ms; critical path: " + scheduler.getCriticalPath());
+        return scheduler;
+    }
+
+    private void scheduleTable(DdlScheduler scheduler, final TableDescription tableDescription, Set<String> scheduledTables) {
+        final String tableName = tableDescription.getTableName();
+        if (scheduledTables.add(tableName.toUpperCase())) {
+            if (tableExists(tableDescription.getFullTableName())) {
+                scheduler.add(new DdlStep("update table " + tableName, tableName) {
+                    protected void execute() throws Exception {
+                        updateTable(tableDescription);
+                    }
+                });
+            } else {
+                scheduleTableCreation(scheduler, tableDescription);
+            }
+        }
+
+        for (TableDescription joinTableDescription : tableDescription.getJoinTablesDescriptions()) {
+            scheduleTable(scheduler, joinTableDescription, scheduledTables);
+        }
+    }
+
+    private void scheduleTableCreation(DdlScheduler scheduler, final TableDescription tableDescription) {
+        String tableName = tableDescription.getTableName();
+        boolean concurrentIndexBuilds = getDialect().supportsConcurrentIndexBuilds();
+
+        DdlStep createStep = scheduler.add(new DdlStep("create table " + tableName, tableName) {
+            protected void execute() {
+                createTableWithoutIndexes(tableDescription);
+            }
+        });
+
+        // index builds on the same table are chained unless the dialect can run them side by side
+        DdlStep previousIndexStep = createStep;
+        if (tableDescription.getPrimaryKey() != null) {
+            DdlStep pkStep = scheduler.add(new DdlStep("create primary key " + SchemaUtil.composePKName(tableName), tableName) {
+                protected void execute() {
+                    createPrimaryKey(tableDescription);
+                }
+            }).dependsOn(createStep);
+            if (!concurrentIndexBuilds) {
+                previousIndexStep = pkStep;
+            }
+        }
+
+        for (final IndexDescription indexDescription : tableDescription.getIndexes()) {
+            DdlStep indexStep = scheduler.add(new DdlStep("create index " + composeIndexName(indexDescription, tableName), tableName) {
+                protected void execute() {
+                    createIndex(tableDescription, indexDescription);
+                }
+            }).dependsOn(concurrentIndexBuilds ? createStep : previousIndexStep);
+            if (!concurrentIndexBuilds) {
+                previousIndexStep = indexStep;
+            }
+        }
+    }
+
+    private void updateTable(TableDescription tableDescription) throws SQLException {
+        String tableName = tableDescription.getTableName();
+        if (isOnlineIndexBuilds()) {
+            dropInvalidIndexes(tableDescription);
+        }
+
+        Map<String, ColumnDescription> existingColumns = getColumns(tableDescription);
+        TableAlteration alteration = new TableAlteration();
+        for (ColumnDescription columnDescription : tableDescription.getColumns().values()) {
+            ColumnDescription existingColumn = existingColumns.get(columnDescription.getName());
+            if (existingColumn != null) {
+                updateColumn(tableDescription, existingColumns, existingColumn, columnDescription, alteration);
+                continue;
+            }
+
+            createColumn(tableDescription, columnDescription, alteration);
+        }
+        updateCompression(tableDescription, alteration);
+        if (hasTableStorage(tableDescription)) {
+            updateStorage(tableDescription, null, tableDescription.getStorage(), alteration);
         }
+        alterTable(tableDescription, alteration);
+        for (ColumnDescription columnDescription : alteration.tightenedColumns) {
+            makeNotNullOnline(tableDescription, columnDescription);
+        }
+
+        updateIndexes(tableDescription);
 
-        String existingPK = getDialect().getPrimaryKey(tableName, template());
+        String existingPK = getPrimaryKey(tableDescription);
         String pk = SchemaUtil.composePKName(tableName);
         if (existingPK != null && !pk.equalsIgnoreCase(existingPK)) {
-            dropPK(existingPK, tableName);
-            createPrimaryKey(tableDescription);
+            dropPK(existingPK, tableDescription);
+            createPrimaryKey(tableDescription, true);
         }
+
+        maintainPartitions(tableDescription, new Date());
     }
 
-    private void dropPK(String pkName, String tableName) {
+    private void dropPK(String pkName, TableDescription tableDescription) {
         logInfo("Dropping constraint " + pkName);
-        String sql = "alter table " + tableName + " drop constraint " + pkName;
-        template().execute(sql);
+        String sql = "alter table " + tableDescription.getFullTableName() + " drop constraint " + pkName;
+        execute(new MigrationStep(MigrationStep.Type.DROP_PRIMARY_KEY, tableDescription.getTableName(), pkName, sql, 0));
+        CatalogSnapshot snapshot = catalog;
+        if (snapshot != null) {
+            snapshot.removePrimaryKey(tableDescription.getFullTableName());
+        }
     }
 
     private boolean sameBooleanValues(String required, String fromDB) {
@@ -154,12 +835,28 @@ public class SchemaCreator {
         return requiredAsBool.equals(fromDBAsBool);
     }
 
-    private void updateColumn(String tableName, ColumnDescription existingColumnDescription, ColumnDescription columnDescription) {
+    private void updateColumn(TableDescription tableDescription, Map<String, ColumnDescription> existingColumns,
+                              ColumnDescription existingColumnDescription, ColumnDescription columnDescription,
+                              TableAlteration alteration) {
+        String tableName = tableDescription.getTableName();
         String required = getDialect().toMetadataType(columnDescription.getType());
         String actual = existingColumnDescription.getNativeType();
         if (!required.equalsIgnoreCase(actual)) {
-            logError("Column type change [" + actual + " -> " + required + "] is not supported within the scope of schema upgrade");
-            return;
+            if (!onlineColumnTypeChanges || !getDialect().supportsOnlineColumnTypeChanges()) {
+                logError("Column type change [" + actual + " -> " + required + "] is not supported within the scope of schema upgrade" +
+                         " (see SchemaCreator.setOnlineColumnTypeChanges)");
+                return;
+            }
+            if (isCallerTransactionActive()) {
+                logError("Column type change [" + actual + " -> " + required + "] of column " + tableName + "." +
+                         columnDescription.getName() + " can't be made online within a transaction");
+                return;
+            }
+
+            existingColumnDescription = changeColumnTypeOnline(tableDescription, existingColumns, columnDescription);
+            if (existingColumnDescription == null) {
+                return;
+            }
         }
 
         int requiredSize = getColumnSize(columnDescription, tableName);
@@ -176,7 +873,15 @@ public class SchemaCreator {
         }
 
         if (existingColumnDescription.isNullable() && !columnDescription.isNullable()) {
-            logInfo("The constraint change (NULLABLE -> NOT NULLABLE) is unsupported; column [" + columnDescription + "]");
+            if (onlineNotNullChanges && isCallerTransactionActive()) {
+                logInfo("The constraint change (NULLABLE -> NOT NULLABLE) can't be made online within a transaction;" +
+                        " column [" + columnDescription + "]");
+            } else if (onlineNotNullChanges) {
+                alteration.tightenColumn(columnDescription); // once the default value is in place
+            } else {
+                logInfo("The constraint change (NULLABLE -> NOT NULLABLE) is unsupported (see SchemaCreator.setOnlineNotNullChanges);" +
+                        " column [" + columnDescription + "]");
+            }
         }
         boolean useConstraint = (!existingColumnDescription.isNullable() && columnDescription.isNullable());
 
@@ -191,8 +896,9 @@ public class SchemaCreator {
             useDefaultValue = (existingDefaultValue != null);
         }
 
+        String columnName = tableName + "." + columnDescription.getName();
         if (isPostgreSQL()) {
-            String prefix = "alter table " + tableName + " alter column " + columnDescription.getName();
+            String prefix = "alter column " + columnDescription.getName();
             if (useSize) {
                 StringBuilder sql = new StringBuilder(prefix + " type ");
                 sql.append(" " + getDialect().toNativeType(columnDescription.getType()));
@@ -200,13 +906,12 @@ public class SchemaCreator {
                 if (columnSize > 0) {
                     sql.append("(" + columnSize + ")");
                 }
-                template().execute(sql.toString());
+                alteration.alterColumn(sql.toString(), MigrationStep.Type.ALTER_COLUMN, columnName, getRowEstimate(tableName));
                 logInfo("Column [" + columnDescription.getName() + "] size updated to " + columnDescription.getSize());
             }
 
             if (useConstraint) {
-                String sql = prefix + " drop not null";
-                template().execute(sql);
+                alteration.alterColumn(prefix + " drop not null", MigrationStep.Type.ALTER_COLUMN, columnName, 0);
                 logInfo("Column [" + columnDescription.getName() + "] nullable constraint dropped");
             }
 
@@ -216,56 +921,663 @@ public class SchemaCreator {
 
             if (useDefaultValue) {
                 if (defaultValue == null) {
-                    String sql = prefix + " drop default";
-                    template().execute(sql);
+                    alteration.alterColumn(prefix + " drop default", MigrationStep.Type.ALTER_COLUMN, columnName, 0);
                     logInfo("Column [" + columnDescription.getName() + "] default value dropped");
                 } else {
                     String sql = prefix + " set default '" + columnDescription.getDefaultValue() + "'";
-                    template().execute(sql);
+                    alteration.alterColumn(sql, MigrationStep.Type.ALTER_COLUMN, columnName, 0);
                     logInfo("Column [" + columnDescription.getName() + "] default value updated to " + columnDescription.getDefaultValue());
                 }
             }
-        } else if (isOracle()) {
-            if (useSize || useConstraint || useDefaultValue) {
-                String sql = "alter table " + tableName + " modify (" +
-                             composeColumnSQL(tableName, columnDescription, useSize, useConstraint, useDefaultValue) + ")";
-                template().execute(sql);
-                logInfo("Column updated: " + columnDescription);
-            }
+        } else if (isOracle()) {
+            if (useSize || useConstraint || useDefaultValue) {
+                String sql = composeColumnSQL(tableName, columnDescription, useSize, useConstraint, useDefaultValue);
+                alteration.alterColumn(sql, MigrationStep.Type.ALTER_COLUMN, columnName, useSize ? getRowEstimate(tableName) : 0);
+                logInfo("Column updated: " + columnDescription);
+            }
+        } else if (isH2()) {
+            // the size of numbers is neither enforced nor reported by H2
+            if (useSize && existingSize > 0) {
+                // the type clause redefines the whole column, so the default and the nullability go along with it
+                ColumnDescription redefinition = columnDescription.copy()
+                    .setNullable(existingColumnDescription.isNullable() || columnDescription.isNullable());
+                String sql = "alter column " + composeColumnSQL(tableName, redefinition, true, true, defaultValue != null);
+                alteration.alterColumn(sql, MigrationStep.Type.ALTER_COLUMN, columnName, getRowEstimate(tableName));
+                logInfo("Column [" + columnDescription.getName() + "] size updated to " + columnDescription.getSize());
+                return;
+            }
+
+            String prefix = "alter column " + columnDescription.getName();
+            if (useConstraint) {
+                alteration.alterColumn(prefix + " set null", MigrationStep.Type.ALTER_COLUMN, columnName, 0);
+                logInfo("Column [" + columnDescription.getName() + "] nullable constraint dropped");
+            }
+
+            if (columnDescription.getType().equals(ColumnType.BOOLEAN)) {
+                useDefaultValue = !sameBooleanValues(defaultValue, existingDefaultValue);
+            }
+
+            if (useDefaultValue) {
+                String sql = prefix + " set default " + composeDefaultValueLiteral(columnDescription);
+                alteration.alterColumn(sql, MigrationStep.Type.ALTER_COLUMN, columnName, 0);
+                logInfo("Column [" + columnDescription.getName() + "] default value updated to " + columnDescription.getDefaultValue());
+            }
+        }
+    }
+
+    /**
+     * @return whether the DDL of the current thread joins a transaction of the caller; backfills and concurrent index
+     * builds run on connections of their own, and would wait until the transaction commits for the locks the other
+     * steps took in it
+     */
+    private boolean isCallerTransactionActive() {
+        return plannedSteps.get() == null && TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    /**
+     * Changes the type of a column without locking the table for longer than a rename:
+     * <ol>
+     * <li>expand: adds a shadow column of the required type, kept in sync with the column by a trigger</li>
+     * <li>backfill: copies the column into the shadow in chunks of PK ranges, each committed on its own,
+     * {@link #setBackfillThrottle throttled}</li>
+     * <li>contract: drops the trigger, swaps the names and drops the old column, in one short step; a PK moves over to
+     * the shadow along with a unique index built on it beforehand, online</li>
+     * </ol>
+     * Each step can be repeated, so a change that failed half way is resumed by the next sync. The required indexes on the
+     * column are built on the shadow beforehand, online, and take over the names of the old ones in the contract step;
+     * any other index on the column is dropped along with the old column.
+     *
+     * @return the column as it is after the change, for the rest of the diff; null if the change can't be made online
+     */
+    private ColumnDescription changeColumnTypeOnline(TableDescription tableDescription, Map<String, ColumnDescription> existingColumns,
+                                                     ColumnDescription columnDescription) {
+        Dialect dialect = getDialect();
+        String tableName = tableDescription.getTableName();
+        String fullTableName = tableDescription.getFullTableName();
+        String columnName = columnDescription.getName();
+        String shadowColumnName = SchemaUtil.composeShadowColumnName(columnName);
+
+        String chunkColumn = getBackfillChunkColumn(tableDescription);
+        if (chunkColumn == null) {
+            logError("Online type change of column " + tableName + "." + columnName + " requires a single-column numeric primary key");
+            return null;
+        }
+        boolean pkColumn = chunkColumn.equalsIgnoreCase(columnName);
+        boolean notNull = pkColumn || !columnDescription.isNullable();
+        List<String> notNullStatements = notNull ? dialect.getNotNullConstraintStatements(fullTableName, shadowColumnName) : null;
+        if (pkColumn && !dialect.supportsOnlinePrimaryKeyTypeChanges()) {
+            logError("Online type change of primary key column " + tableName + "." + columnName + " is not supported by " + getDialectName());
+            return null;
+        }
+
+        logInfo("Changing the type of column " + tableName + "." + columnName + " online");
+        String target = fullTableName + "." + columnName;
+
+        // expand
+        ColumnDescription shadowColumn = existingColumns.get(shadowColumnName); // left by an interrupted change
+        String shadowDefaultValue = shadowColumn != null ? shadowColumn.getDefaultValue() : columnDescription.getDefaultValue();
+        if (shadowColumn == null) {
+            StringBuilder shadowSQL = new StringBuilder(shadowColumnName).append(" ").append(dialect.toNativeType(columnDescription.getType()));
+            int columnSize = getColumnSize(columnDescription, tableName);
+            if (columnSize > 0) {
+                shadowSQL.append("(").append(columnSize).append(")");
+            }
+            // the column keeps its default through the swap; the backfill overwrites it in the existing rows
+            boolean useDefaultValue = !StringUtils.isEmpty(columnDescription.getDefaultValue());
+            if (useDefaultValue) {
+                shadowSQL.append(" DEFAULT ").append(composeDefaultValueLiteral(columnDescription));
+            }
+            execute(new MigrationStep(MigrationStep.Type.ADD_COLUMN, tableName, fullTableName + "." + shadowColumnName,
+                                      dialect.getAddColumnStatement(fullTableName, shadowSQL.toString()),
+                                      useDefaultValue ? getRowEstimate(tableName) : 0));
+        }
+        for (String sql : dialect.getShadowColumnSyncStatements(fullTableName, columnName, shadowColumnName)) {
+            execute(new MigrationStep(MigrationStep.Type.SYNC_COLUMN, tableName, target, sql, 0));
+        }
+
+        // backfill
+        backfill(tableDescription, chunkColumn, shadowColumnName + " = " + columnName, null, fullTableName + "." + shadowColumnName);
+        if (notNullStatements != null) {
+            for (String sql : notNullStatements) {
+                execute(new MigrationStep(MigrationStep.Type.ALTER_COLUMN, tableName, target, sql, 0));
+            }
+            for (String sql : dialect.getNotNullValidationStatements(fullTableName, shadowColumnName)) {
+                execute(new MigrationStep(MigrationStep.Type.ALTER_COLUMN, tableName, target, sql, getRowEstimate(tableName)));
+            }
+        } else if (notNull) {
+            logInfo("The NOT NULL constraint of column " + target + " is not carried over online");
+        }
+
+        String pkName = null;
+        String pkIndexName = null;
+        if (pkColumn) {
+            pkName = SchemaUtil.composePKName(tableName);
+            IndexDescription pkIndex = new IndexDescription(shadowColumnName).unique().online();
+            pkIndexName = composeIndexName(pkIndex, tableName);
+            createIndex(fullTableName, pkIndex, pkIndexName, true);
+        }
+        Map<String, String> shadowIndexNames = new LinkedHashMap<String, String>();
+        for (IndexDescription indexDescription : tableDescription.getIndexes()) {
+            IndexDescription shadowIndex = toShadowIndex(indexDescription, columnName, shadowColumnName);
+            if (shadowIndex != null && toSupportedIndex(shadowIndex) != null) {
+                String shadowIndexName = composeIndexName(shadowIndex, tableName);
+                createIndex(fullTableName, shadowIndex, shadowIndexName, true);
+                shadowIndexNames.put(shadowIndexName, composeIndexName(indexDescription, tableName));
+            }
+        }
+
+        // contract
+        List<String> swapStatements = new ArrayList<String>(dialect.getShadowColumnSwapStatements(
+            fullTableName, columnName, shadowColumnName, notNullStatements != null, pkName, pkIndexName));
+        for (Map.Entry<String, String> shadowIndexName : shadowIndexNames.entrySet()) {
+            // the old index is gone along with the old column
+            swapStatements.add(dialect.getRenameIndexStatement(tableDescription.getFullIndexName(shadowIndexName.getKey()),
+                                                               shadowIndexName.getValue()));
+        }
+        String script = dialect.composeScript(swapStatements);
+        if (script != null) {
+            execute(new MigrationStep(MigrationStep.Type.SWAP_COLUMN, tableName, target, script, 0));
+        } else {
+            for (String sql : swapStatements) {
+                execute(new MigrationStep(MigrationStep.Type.SWAP_COLUMN, tableName, target, sql, 0));
+            }
+        }
+        if (plannedSteps.get() == null) {
+            invalidateCatalog(fullTableName); // the indexes of the old column are gone, the shadow ones renamed
+        }
+        logInfo("Column " + target + " changed to " + columnDescription.getType());
+
+        ColumnDescription changedColumn = new ColumnDescription(columnName).setNativeType(dialect.toMetadataType(columnDescription.getType()));
+        changedColumn.setNullable(notNullStatements == null);
+        changedColumn.setDefaultValue(shadowDefaultValue);
+        int columnSize = getColumnSize(columnDescription, tableName);
+        if (columnSize > 0) {
+            changedColumn.ofSize(columnSize);
+        }
+        return changedColumn;
+    }
+
+    /**
+     * @return the index built online on the shadow column in place of the given one; null if it isn't on the column
+     */
+    private static IndexDescription toShadowIndex(IndexDescription indexDescription, String columnName, String shadowColumnName) {
+        IndexDescription shadowIndex = indexDescription.copy().online();
+        boolean indexed = replaceColumn(shadowIndex.getColumnNames(), columnName, shadowColumnName);
+        indexed |= replaceColumn(shadowIndex.getIncludedColumnNames(), columnName, shadowColumnName);
+        if (!indexed) {
+            return null;
+        }
+        if (shadowIndex.isPartial()) {
+            Pattern column = Pattern.compile("\\b" + Pattern.quote(columnName) + "\\b", Pattern.CASE_INSENSITIVE);
+            shadowIndex.where(column.matcher(shadowIndex.getPredicate()).replaceAll(shadowColumnName));
+        }
+        return shadowIndex;
+    }
+
+    private static boolean replaceColumn(List<String> columnNames, String columnName, String newColumnName) {
+        boolean replaced = false;
+        for (ListIterator<String> it = columnNames.listIterator(); it.hasNext(); ) {
+            if (it.next().equalsIgnoreCase(columnName)) {
+                it.set(newColumnName);
+                replaced = true;
+            }
+        }
+        return replaced;
+    }
+
+    /**
+     * @return the single numeric PK column to split the backfill by; null if there's none
+     */
+    private String getBackfillChunkColumn(TableDescription tableDescription) {
+        IndexDescription pk = tableDescription.getPrimaryKey();
+        if (pk == null || pk.getColumnNames().size() != 1) {
+            return null;
+        }
+
+        ColumnDescription pkColumn = tableDescription.getColumns().get(pk.getColumnNames().get(0).toUpperCase());
+        if (pkColumn == null) {
+            return null;
+        }
+        ColumnType type = pkColumn.getType();
+        return type == ColumnType.ID || type == ColumnType.LONG || type == ColumnType.INTEGER ? pkColumn.getName() : null;
+    }
+
+    /**
+     * Updates the table in chunks of PK ranges, each committed on its own, so that the row locks are held briefly;
+     * the chunks are only found when the step runs (see {@link #executeChunked}), so a plan holds a single step.
+     *
+     * @param assignment the set clause
+     * @param condition narrows down the rows to update; null for all of them
+     * @param target the column being filled in, for the steps
+     */
+    private void backfill(TableDescription tableDescription, String chunkColumn, String assignment, String condition, String target) {
+        String fullTableName = tableDescription.getFullTableName();
+        String sql = "update " + fullTableName + " set " + assignment + (condition != null ? " where " + condition : "");
+        execute(new MigrationStep(MigrationStep.Type.BACKFILL_COLUMN, tableDescription.getTableName(), target, sql,
+                                  getRowEstimate(tableDescription.getTableName()), true, null,
+                                  new MigrationStep.Chunking(fullTableName, chunkColumn, condition)));
+    }
+
+    /**
+     * Every chunk is found right before it's updated by walking the key from where the previous one ended,
+     * so that it covers at most backfillChunkSize rows however sparse the keys are.
+     */
+    private void executeChunked(MigrationStep step) {
+        MigrationStep.Chunking chunking = step.getChunking();
+        String keyColumn = chunking.getKeyColumn();
+        String condition = chunking.getCondition();
+        Number lo = (Number) template().queryForMap("select min(" + keyColumn + ") as LO from " + chunking.getTableName() +
+                                                    (condition != null ? " where " + condition : "")).get("LO");
+        if (lo == null) {
+            return; // nothing to fill in: the trigger takes care of whatever comes in
+        }
+
+        String chunkQuery = getDialect().getBackfillChunkQuery(chunking.getTableName(), keyColumn, condition, backfillChunkSize);
+        logInfo("Backfilling " + step.getTarget() + " in chunks of " + backfillChunkSize + " rows");
+        int chunks = 0;
+        long from = lo.longValue();
+        while (true) {
+            Map<String, Object> chunk = template().queryForMap(chunkQuery, from);
+            Number to = (Number) chunk.get("HI");
+            if (to == null) {
+                break;
+            }
+
+            if (backfillThrottle > 0 && chunks > 0) {
+                try {
+                    Thread.sleep(backfillThrottle);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while backfilling " + step.getTarget(), e);
+                }
+            }
+            long rows = ((Number) chunk.get("N")).longValue();
+            executeNow(new MigrationStep(step.getType(), step.getTableName(), step.getTarget(),
+                                         chunking.getChunkSql(step.getSql(), from, to.longValue()), rows,
+                                         step.isOutsideTransaction(), step.getRetryCleanupSql()));
+            chunks++;
+            if (to.longValue() == Long.MAX_VALUE) {
+                break; // don't overflow past the last possible key
+            }
+            from = to.longValue() + 1;
+        }
+        logInfo("Backfilled " + step.getTarget() + " in " + chunks + " chunks");
+    }
+
+    /**
+     * Makes a nullable column NOT NULL without locking the table for the duration of a full scan:
+     * existing nulls are backfilled with the column's default value (already in place for new rows) in chunks of
+     * PK ranges, a NOT NULL constraint is added for new rows only, the nulls that slipped in meanwhile are backfilled
+     * again, then the constraint is validated without blocking writes and, where needed, promoted to the column's
+     * NOT NULL. A column with nulls and no default value to fill them in with is left nullable; so is a column
+     * without a default value in a plan, which doesn't look at the data.
+     */
+    private void makeNotNullOnline(TableDescription tableDescription, ColumnDescription columnDescription) {
+        Dialect dialect = getDialect();
+        String tableName = tableDescription.getTableName();
+        String fullTableName = tableDescription.getFullTableName();
+        String columnName = columnDescription.getName();
+        String target = fullTableName + "." + columnName;
+
+        List<String> constraintStatements = dialect.getNotNullConstraintStatements(fullTableName, columnName);
+        if (constraintStatements == null) {
+            logInfo("The constraint change (NULLABLE -> NOT NULLABLE) is unsupported by " + getDialectName() + "; column [" + columnDescription + "]");
+            return;
+        }
+        String nullCondition = columnName + " is null";
+        boolean backfill = !StringUtils.isEmpty(columnDescription.getDefaultValue());
+        String chunkColumn = getBackfillChunkColumn(tableDescription);
+        if (backfill && chunkColumn == null) {
+            logError("Backfilling the nulls of column " + target + " requires a single-column numeric primary key");
+            return;
+        }
+        if (!backfill && plannedSteps.get() != null) {
+            logInfo("Column " + target + " is left nullable: whether it has nulls to fill in without a default value " +
+                    "is only known when synced");
+            return;
+        }
+        if (!backfill && !template().queryForList(dialect.rowExistenceQuery(fullTableName, nullCondition)).isEmpty()) {
+            logInfo("Column " + target + " is left nullable: it has nulls and no default value to fill them in with");
+            return;
+        }
+
+        logInfo("Making column " + target + " NOT NULL online");
+        String assignment = columnName + " = " + composeDefaultValueLiteral(columnDescription);
+        if (backfill) {
+            backfill(tableDescription, chunkColumn, assignment, nullCondition, target);
+        }
+        for (String sql : constraintStatements) {
+            execute(new MigrationStep(MigrationStep.Type.ALTER_COLUMN, tableName, target, sql, 0));
+        }
+        if (backfill) {
+            // nulls written by transactions that started before the constraint was added
+            backfill(tableDescription, chunkColumn, assignment, nullCondition, target);
+        }
+        for (String sql : dialect.getNotNullValidationStatements(fullTableName, columnName)) {
+            execute(new MigrationStep(MigrationStep.Type.ALTER_COLUMN, tableName, target, sql, getRowEstimate(tableName)));
+        }
+        for (String sql : dialect.getNotNullPromotionStatements(fullTableName, columnName)) {
+            execute(new MigrationStep(MigrationStep.Type.ALTER_COLUMN, tableName, target, sql, 0));
+        }
+    }
+
+    /**
+     * Diffs the required indexes against the definitions of the existing ones: creates only what is missing
+     * and drops only our indexes that are no longer required (or whose definition changed).
+     * Indexes not named by {@link SchemaUtil#composeIndexName} are left alone.
+     */
+    private void updateIndexes(TableDescription tableDescription) {
+        String tableName = tableDescription.getTableName();
+        Map<String, IndexDescription> existingIndexes = getIndexDefinitions(tableDescription);
+
+        Set<String> matchedIndexes = new HashSet<String>();
+        Map<String, String> renamedIndexes = new LinkedHashMap<String, String>();
+        Map<IndexDescription, String> keptIndexes = new LinkedHashMap<IndexDescription, String>();
+        List<IndexDescription> missingIndexes = new ArrayList<IndexDescription>();
+        for (IndexDescription indexDescription : tableDescription.getIndexes()) {
+            String existingIndex = findMatchingIndex(indexDescription, tableName, existingIndexes, matchedIndexes);
+            if (existingIndex != null) {
+                matchedIndexes.add(existingIndex);
+                String indexName = composeIndexName(indexDescription, tableName);
+                if (!existingIndex.equalsIgnoreCase(indexName) && SchemaUtil.isManagedIndexName(existingIndex)) {
+                    renamedIndexes.put(existingIndex, indexName);
+                    keptIndexes.put(indexDescription, indexName);
+                } else {
+                    keptIndexes.put(indexDescription, existingIndex);
+                }
+            } else {
+                missingIndexes.add(indexDescription);
+            }
+        }
+
+        for (String existingIndex : existingIndexes.keySet()) {
+            if (!matchedIndexes.contains(existingIndex) && SchemaUtil.isManagedIndexName(existingIndex)) {
+                dropIndex(existingIndex, tableDescription);
+            }
+        }
+
+        // e.g. a lower index where lower indexes aren't supported; the name is brought in line once the index is kept
+        for (Map.Entry<String, String> renamedIndex : renamedIndexes.entrySet()) {
+            renameIndex(renamedIndex.getKey(), renamedIndex.getValue(), existingIndexes.get(renamedIndex.getKey()), tableDescription);
+        }
+
+        for (Map.Entry<IndexDescription, String> keptIndex : keptIndexes.entrySet()) {
+            updateStorage(tableDescription, keptIndex.getValue(), keptIndex.getKey().getStorage(), null);
+        }
+
+        for (IndexDescription indexDescription : missingIndexes) {
+            createIndex(tableDescription, indexDescription, true);
+        }
+    }
+
+    /**
+     * On PostgreSQL a partitioned table has no storage of its own, nor storage parameters.
+     */
+    private boolean hasTableStorage(TableDescription tableDescription) {
+        return tableDescription.getStorage() != null &&
+               (tableDescription.getPartitioning() == null || !isPostgreSQL());
+    }
+
+    /**
+     * Alters the storage parameters of the table, or of one of its indexes, that drifted from the required ones.
+     *
+     * @param indexName null for the table itself
+     * @param alteration of the table, which the change of its own parameters goes along with; null for an index
+     */
+    private void updateStorage(TableDescription tableDescription, String indexName, StorageOptions storage,
+                               TableAlteration alteration) {
+        if (storage == null) {
+            return;
+        }
+        Dialect dialect = getDialect();
+        Map<String, String> required = dialect.getStorageParameters(storage, indexName != null);
+        if (required.isEmpty()) {
+            return;
+        }
+
+        Map<String, String> actual = dialect.readStorageParameters(tableDescription.getFullTableName(), indexName, template());
+        Map<String, String> drifted = new TreeMap<String, String>();
+        for (Map.Entry<String, String> parameter : required.entrySet()) {
+            if (!sameStorageValues(parameter.getValue(), actual.get(parameter.getKey()))) {
+                drifted.put(parameter.getKey(), parameter.getValue());
+            }
+        }
+        if (drifted.isEmpty()) {
+            return;
+        }
+
+        String target = indexName == null ? tableDescription.getFullTableName() : indexName;
+        logInfo("Changing storage parameters of " + target + " " + actual + " -> " + drifted);
+        List<String> clauses = alteration != null ? dialect.getStorageAlterationClauses(drifted) : Collections.<String>emptyList();
+        for (String clause : clauses) {
+            alteration.alterTable(clause, MigrationStep.Type.ALTER_STORAGE, target);
+        }
+        if (clauses.isEmpty()) {
+            for (String sql : dialect.getStorageAlterationStatements(tableDescription.getFullTableName(), indexName, drifted)) {
+                execute(new MigrationStep(MigrationStep.Type.ALTER_STORAGE, tableDescription.getTableName(), target, sql, 0));
+            }
+        }
+    }
+
+    /**
+     * Numbers are compared by value, as the catalog may report them written differently (e.g. 0.050 for 0.05)
+     */
+    private static boolean sameStorageValues(String required, String fromDB) {
+        if (fromDB == null) {
+            return false;
+        }
+        try {
+            return new BigDecimal(required).compareTo(new BigDecimal(fromDB)) == 0;
+        } catch (NumberFormatException e) {
+            return required.equalsIgnoreCase(fromDB);
+        }
+    }
+
+    /**
+     * @return the name of an existing index with the required definition, preferring the one of the required name
+     */
+    private String findMatchingIndex(IndexDescription required, String tableName, Map<String, IndexDescription> existingIndexes,
+                                     Set<String> matchedIndexes) {
+        String requiredName = composeIndexName(required, tableName);
+        String match = null;
+        for (Map.Entry<String, IndexDescription> existing : existingIndexes.entrySet()) {
+            String existingName = existing.getKey();
+            if (matchedIndexes.contains(existingName) ||
+                !sameIndexDefinition(required, existing.getValue(), existingName.equalsIgnoreCase(requiredName))) {
+                continue;
+            }
+            if (existingName.equalsIgnoreCase(requiredName)) {
+                return existingName;
+            }
+            if (match == null) {
+                match = existingName;
+            }
+        }
+        return match;
+    }
+
+    /**
+     * @param sameName whether the existing index is named as the required one; the name of a partial index tells
+     * its predicate apart, which the database reports in a normalized form
+     */
+    private boolean sameIndexDefinition(IndexDescription required, IndexDescription existing, boolean sameName) {
+        required = toSupportedIndex(required);
+        if (required == null || required.isUnique() != existing.isUnique()) {
+            return false;
+        }
+        if (required.isPartial() != existing.isPartial()) {
+            return false;
+        }
+        if (required.isPartial() && !sameName &&
+            !normalizePredicate(required.getPredicate()).equals(normalizePredicate(existing.getPredicate()))) {
+            return false;
+        }
+        if (!sameColumns(required.getIncludedColumnNames(), existing.getIncludedColumnNames())) {
+            return false;
+        }
+        if (getDialect().supportsLowerIndex() && required.isLower() != existing.isLower()) {
+            return false;
+        }
+
+        return sameColumns(required.getColumnNames(), existing.getColumnNames());
+    }
+
+    private boolean sameColumns(List<String> requiredColumns, List<String> existingColumns) {
+        if (requiredColumns.size() != existingColumns.size()) {
+            return false;
+        }
+        for (int i = 0; i < requiredColumns.size(); i++) {
+            if (!requiredColumns.get(i).equalsIgnoreCase(existingColumns.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the predicate without the casts, parentheses, quotes and spacing the database may have added to it
+     */
+    private static String normalizePredicate(String predicate) {
+        return predicate.toLowerCase().replaceAll("::[a-z_]+( varying)?", "").replaceAll("[()\"\\s]", "");
+    }
+
+    /**
+     * @return the index as the dialect can create it: included columns it can't carry become trailing key columns
+     * of a non-unique index and are left out of a unique one, and a predicate it can't apply is left out of
+     * a non-unique index; null for a unique partial index the dialect can't create
+     */
+    private IndexDescription toSupportedIndex(IndexDescription indexDescription) {
+        Dialect dialect = getDialect();
+        boolean includeUnsupported = !indexDescription.getIncludedColumnNames().isEmpty() && !dialect.supportsIncludedColumns();
+        boolean predicateUnsupported = indexDescription.isPartial() && !dialect.supportsPartialIndexes();
+        if (!includeUnsupported && !predicateUnsupported) {
+            return indexDescription;
+        }
+        if (predicateUnsupported && indexDescription.isUnique()) {
+            return null;
+        }
+
+        IndexDescription supported = indexDescription.copy().where(predicateUnsupported ? null : indexDescription.getPredicate());
+        if (includeUnsupported) {
+            if (!indexDescription.isUnique()) {
+                for (String column : indexDescription.getIncludedColumnNames()) {
+                    supported.addColumn(column);
+                }
+            }
+            supported.getIncludedColumnNames().clear();
         }
+        return supported;
     }
 
-    private void dropIndexes(Set<String> existingIndexes, TableDescription tableDescription) {
-        for (String existingIndex : existingIndexes) {
-            dropIndex(existingIndex, tableDescription);
+    private void dropInvalidIndexes(TableDescription tableDescription) {
+        for (String invalidIndex : getInvalidIndexes(tableDescription)) {
+            logInfo("Index " + invalidIndex + " is invalid (left by a failed online build)");
+            dropIndex(invalidIndex, tableDescription);
         }
     }
 
     private void dropIndex(String index, TableDescription tableDescription) {
         logInfo("Dropping index " + index);
-        if (indexExists(index, tableDescription.getTableName())) {
-            template().execute("drop index " + tableDescription.getFullIndexName(index));
+        if (indexExists(index, tableDescription.getFullTableName())) {
+            boolean online = isOnlineIndexBuilds() && supportsOnlineIndexBuilds(tableDescription) && !isCallerTransactionActive();
+            String sql = getDialect().getDropIndexStatement(tableDescription.getFullIndexName(index), online);
+            execute(new MigrationStep(MigrationStep.Type.DROP_INDEX, tableDescription.getTableName(), index, sql, 0,
+                                      online && getDialect().onlineIndexBuildsRequireAutoCommit(), null));
+            CatalogSnapshot snapshot = catalog;
+            if (snapshot != null) {
+                snapshot.removeIndex(tableDescription.getFullTableName(), index);
+            }
+        }
+    }
+
+    private void renameIndex(String index, String newIndex, IndexDescription indexDescription, TableDescription tableDescription) {
+        if (indexExists(newIndex, tableDescription.getFullTableName())) {
+            return;
+        }
+
+        logInfo("Renaming index " + index + " to " + newIndex);
+        String sql = getDialect().getRenameIndexStatement(tableDescription.getFullIndexName(index), newIndex);
+        execute(new MigrationStep(MigrationStep.Type.ALTER_INDEX, tableDescription.getTableName(), index, sql, 0));
+        CatalogSnapshot snapshot = catalog;
+        if (snapshot != null) {
+            snapshot.removeIndex(tableDescription.getFullTableName(), index);
+            snapshot.addIndexDefinition(tableDescription.getFullTableName(), newIndex, indexDescription);
         }
     }
 
-    private void createColumn(TableDescription table, ColumnDescription columnDescription) {
+    private void createColumn(TableDescription table, ColumnDescription columnDescription, TableAlteration alteration) {
         String tableName = table.getFullTableName();
         String columnSQL = composeColumnSQL(tableName, columnDescription, true);
-        String sql = getDialect().getAddColumnStatement(tableName, columnSQL);
         logInfo("Creating column [" + columnDescription + "] in table [" + tableName + "]");
-        template().execute(sql);
+        // a default value has to be written to all the existing rows
+        long cost = StringUtils.isEmpty(columnDescription.getDefaultValue()) ? 0 : getRowEstimate(table.getTableName());
+        alteration.addColumn(columnSQL, tableName + "." + columnDescription.getName(), cost);
+    }
+
+    /**
+     * Brings the compression of the compressed columns of the table in line, along with the other changes of its
+     * columns; the other columns are left as they are.
+     * A database-wide compression is set once per sync, by the first table that needs it.
+     */
+    private void updateCompression(TableDescription table, TableAlteration alteration) {
+        Dialect dialect = getDialect();
+        Map<String, String> existingCompressions = null;
+        for (ColumnDescription columnDescription : table.getColumns().values()) {
+            if (!columnDescription.isCompressed()) {
+                continue;
+            }
+            String compression = dialect.getColumnCompression(columnDescription, getCompressionMethods());
+            if (compression == null) {
+                logInfo("Column " + columnDescription.getName() + " of table " + table.getTableName() + " can't be compressed");
+                continue;
+            }
+
+            if (existingCompressions == null) {
+                existingCompressions = dialect.readColumnCompressions(table.getFullTableName(), getCompressionMethods(), template());
+            }
+            String existingCompression = existingCompressions.get(columnDescription.getName());
+            if (compression.equals(existingCompression)) {
+                continue;
+            }
+            if (dialect.isCompressionDatabaseWide() && !databaseCompressions.add(compression)) {
+                continue;
+            }
 
-        setCompressedStorage(table, columnDescription);
+            String target = table.getFullTableName() + "." + columnDescription.getName();
+            logInfo("Compressing column " + target + " [" + existingCompression + " -> " + compression + "]");
+            long cost = dialect.compressionRewritesColumn() ? getRowEstimate(table.getTableName()) : 0;
+            List<String> clauses = dialect.getColumnCompressionClauses(columnDescription.getName(), compression, existingCompression);
+            for (String clause : clauses) {
+                alteration.alterColumn(clause, MigrationStep.Type.ALTER_STORAGE, target, cost);
+            }
+            if (clauses.isEmpty()) {
+                for (String sql : dialect.getColumnCompressionStatements(table.getFullTableName(), columnDescription.getName(),
+                                                                         compression, existingCompression)) {
+                    alteration.follow(new MigrationStep(MigrationStep.Type.ALTER_STORAGE, table.getTableName(), target, sql, cost));
+                }
+            }
+        }
     }
 
-    private void setCompressedStorage(TableDescription table, ColumnDescription columnDescription) {
-        if (columnDescription.isCompressed() && isPostgreSQL()) {
-            String sql = "alter table " + table.getFullTableName() + " alter column " + columnDescription.getName() + " set storage external";
-            template().execute(sql);
+    /**
+     * Sends the changes of the table's columns and storage in as few statements as the dialect allows (usually one),
+     * so that the table is locked, and possibly rewritten, once rather than per change.
+     */
+    private void alterTable(TableDescription table, TableAlteration alteration) {
+        if (!alteration.isEmpty()) {
+            List<String> statements = getDialect().composeAlterTableStatements(table.getFullTableName(), alteration.addedColumns,
+                                                                               alteration.alteredColumns);
+            String target = alteration.targets.size() == 1 ? alteration.targets.get(0) : table.getFullTableName();
+            for (String sql : statements) {
+                execute(new MigrationStep(alteration.type, table.getTableName(), target, sql, alteration.cost));
+            }
+        }
+        for (MigrationStep step : alteration.followingSteps) {
+            execute(step);
         }
     }
 
-    private String composeTableCreationSql(TableDescription tableDescription) {
+    String composeTableCreationSql(TableDescription tableDescription) {
         StringBuffer sql = new StringBuffer("create table ");
 
         String tableName = tableDescription.getFullTableName();
@@ -283,10 +1595,57 @@ public class SchemaCreator {
 
         sql.append(")");
 
+        if (hasTableStorage(tableDescription)) {
+            sql.append(getDialect().getStorageClause(tableDescription.getStorage(), false));
+        }
+
+        PartitionDescription partitioning = tableDescription.getPartitioning();
+        if (partitioning != null) {
+            if (getDialect().supportsPartitioning()) {
+                checkUniqueKeysIncludePartitionColumn(tableDescription);
+                Date firstPeriod = partitioning.getType() == PartitionDescription.Type.RANGE ? partitioning.getPeriodStart(new Date()) : null;
+                sql.append(getDialect().getPartitionByClause(tableName, partitioning, firstPeriod));
+            } else {
+                logInfo("Partitioning is not supported by " + dialectName + "; table " + tableName + " is created unpartitioned");
+            }
+        }
+
         return sql.toString();
     }
 
-    private String composeColumnSQL(String tableName, ColumnDescription columnDescription) {
+    private void checkUniqueKeysIncludePartitionColumn(TableDescription tableDescription) {
+        if (!getDialect().uniqueKeysRequirePartitionColumn()) {
+            return;
+        }
+
+        String partitionColumn = tableDescription.getPartitioning().getColumnName();
+        List<IndexDescription> uniqueKeys = new ArrayList<IndexDescription>();
+        if (tableDescription.getPrimaryKey() != null) {
+            uniqueKeys.add(tableDescription.getPrimaryKey());
+        }
+        for (IndexDescription indexDescription : tableDescription.getIndexes()) {
+            if (indexDescription.isUnique()) {
+                uniqueKeys.add(indexDescription);
+            }
+        }
+        for (IndexDescription uniqueKey : uniqueKeys) {
+            if (!containsIgnoreCase(uniqueKey.getColumnNames(), partitionColumn)) {
+                throw new IllegalArgumentException("Unique key " + uniqueKey + " of table " + tableDescription.getTableName() +
+                                                   " must include its partition column " + partitionColumn + " in " + dialectName);
+            }
+        }
+    }
+
+    private static boolean containsIgnoreCase(List<String> names, String name) {
+        for (String existing : names) {
+            if (existing.equalsIgnoreCase(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    String composeColumnSQL(String tableName, ColumnDescription columnDescription) {
         boolean useDefaultValue = !StringUtils.isEmpty(columnDescription.getDefaultValue());
         return composeColumnSQL(tableName, columnDescription, true, true, useDefaultValue);
     }
@@ -308,12 +1667,7 @@ public class SchemaCreator {
         }
 
         if (useDefaultValue) {
-            String defaultValue = columnDescription.getDefaultValue();
-            if (columnDescription.getType() == ColumnType.LONG || columnDescription.getType() == ColumnType.INTEGER) {
-                sql.append(" DEFAULT " + (defaultValue == null ? "null" : defaultValue));
-            } else {
-                sql.append(" DEFAULT " + (defaultValue == null ? "null" : "'" + defaultValue + "'"));
-            }
+            sql.append(" DEFAULT " + composeDefaultValueLiteral(columnDescription));
         }
 
         if (useConstraint) {
@@ -326,6 +1680,17 @@ public class SchemaCreator {
         return sql.toString();
     }
 
+    private String composeDefaultValueLiteral(ColumnDescription columnDescription) {
+        String defaultValue = columnDescription.getDefaultValue();
+        if (defaultValue == null) {
+            return "null";
+        }
+        if (columnDescription.getType() == ColumnType.LONG || columnDescription.getType() == ColumnType.INTEGER) {
+            return defaultValue;
+        }
+        return "'" + defaultValue + "'";
+    }
+
     private int getColumnSize(ColumnDescription columnDescription, String tableName) {
         int columnSize = 0;
 
@@ -368,19 +1733,158 @@ public class SchemaCreator {
         return DBType.getDbTypeByName(getDialectName()).isOracle();
     }
 
+    private boolean isH2() {
+        return DBType.getDbTypeByName(getDialectName()).isH2();
+    }
+
+    /**
+     * @param tableName qualified by the schema if the table is
+     */
     boolean tableExists(String tableName) {
+        CatalogSnapshot snapshot = catalog;
+        if (snapshot != null && snapshot.covers(tableName)) {
+            return snapshot.tableExists(tableName);
+        }
         return getDialect().tableExists(tableName, template());
     }
 
     boolean indexExists(String indexName, String tableName) {
+        CatalogSnapshot snapshot = catalog;
+        if (snapshot != null && snapshot.covers(tableName)) {
+            return snapshot.indexExists(indexName, tableName);
+        }
         return getDialect().indexExists(indexName, tableName, template());
     }
 
+    private Map<String, ColumnDescription> getColumns(TableDescription tableDescription) {
+        String tableName = tableDescription.getFullTableName();
+        CatalogSnapshot snapshot = catalog;
+        if (snapshot != null && snapshot.covers(tableName)) {
+            return snapshot.getColumns(tableName);
+        }
+        return getDialect().getColumns(tableDescription.getFullTableName(), template());
+    }
+
+    private String getPrimaryKey(TableDescription tableDescription) {
+        String tableName = tableDescription.getFullTableName();
+        CatalogSnapshot snapshot = catalog;
+        if (snapshot != null && snapshot.covers(tableName)) {
+            return snapshot.getPrimaryKey(tableName);
+        }
+        return getDialect().getPrimaryKey(tableDescription.getFullTableName(), template());
+    }
+
+    private Map<String, IndexDescription> getIndexDefinitions(TableDescription tableDescription) {
+        String tableName = tableDescription.getFullTableName();
+        CatalogSnapshot snapshot = catalog;
+        if (snapshot != null && snapshot.covers(tableName)) {
+            return snapshot.getIndexDefinitions(tableName);
+        }
+        return getDialect().getIndexDefinitions(tableDescription.getFullTableName(), template());
+    }
+
+    private Set<String> getInvalidIndexes(TableDescription tableDescription) {
+        String tableName = tableDescription.getFullTableName();
+        CatalogSnapshot snapshot = catalog;
+        if (snapshot != null && snapshot.covers(tableName)) {
+            return snapshot.getInvalidIndexes(tableName);
+        }
+        return getDialect().getInvalidIndexes(tableDescription.getFullTableName(), template());
+    }
+
+    private long getRowEstimate(String tableName) {
+        CatalogSnapshot snapshot = catalog;
+        return snapshot != null ? snapshot.getRowEstimate(SchemaUtil.stripSchema(tableName)) : 0;
+    }
+
+    /**
+     * All the DDL goes through here: it's either collected into the plan being computed or executed right away.
+     */
+    private void execute(MigrationStep step) {
+        List<MigrationStep> steps = plannedSteps.get();
+        if (steps != null) {
+            steps.add(step);
+        } else {
+            executeNow(step);
+        }
+    }
+
+    private void executeNow(MigrationStep step) {
+        if (step.getChunking() != null) {
+            executeChunked(step);
+            return;
+        }
+
+        TableProgress progress = tableProgress.get();
+        if (progress != null) {
+            progress.statements++;
+        }
+
+        if (listeners.isEmpty()) {
+            executor().execute(step);
+            return;
+        }
+
+        fire(MigrationEvent.ofStep(MigrationEvent.Type.DDL_START, step, 0, -1, null));
+        long start = System.currentTimeMillis();
+        try {
+            executor().execute(step);
+        } catch (RuntimeException e) {
+            fire(MigrationEvent.ofStep(MigrationEvent.Type.FAILURE, step, System.currentTimeMillis() - start, -1, e));
+            throw e;
+        }
+        fire(MigrationEvent.ofStep(MigrationEvent.Type.DDL_END, step, System.currentTimeMillis() - start,
+                                   step.getEstimatedCost(), null));
+    }
+
+    private void fire(MigrationEvent event) {
+        for (MigrationListener listener : listeners) {
+            try {
+                listener.onEvent(event);
+            } catch (RuntimeException e) {
+                logError("Migration listener " + listener + " failed on " + event, e);
+            }
+        }
+    }
+
+    private synchronized MigrationExecutor executor() {
+        if (migrationExecutor != null) {
+            return migrationExecutor;
+        }
+
+        if (defaultExecutor == null) {
+            if (dataSource == null) {
+                throw new RuntimeException("Data source is not set");
+            }
+            defaultExecutor = new JdbcMigrationExecutor(dataSource);
+            defaultExecutor.setRetryAttempts(onlineIndexBuildAttempts);
+            defaultExecutor.setRetryDelay(onlineIndexBuildRetryDelay);
+            defaultExecutor.setDialect(getDialect());
+            defaultExecutor.setLockTimeout(lockTimeout);
+            defaultExecutor.setStatementTimeout(statementTimeout);
+            defaultExecutor.setLockRetryBudget(lockRetryBudget);
+            defaultExecutor.setLockRetryDelay(lockRetryDelay);
+            defaultExecutor.setLog(log);
+        }
+        return defaultExecutor;
+    }
+
+    private void invalidateCatalog(String tableName) {
+        CatalogSnapshot snapshot = catalog;
+        if (snapshot != null) {
+            snapshot.invalidate(tableName);
+        }
+    }
+
     private Dialect getDialect() {
         return DialectFactory.getDialect(dialectName);
     }
 
     private void createPrimaryKey(TableDescription tableDescription) {
+        createPrimaryKey(tableDescription, false);
+    }
+
+    private void createPrimaryKey(TableDescription tableDescription, boolean existingTable) {
         IndexDescription pk = tableDescription.getPrimaryKey();
         if (pk == null) {
             return;
@@ -392,7 +1896,7 @@ public class SchemaCreator {
         logInfo("Creating primary key [" + pkName + "] for table " + fullTableName);
 
         if (getDialect().pkRequiresIndex()) {
-            createIndex(fullTableName, pk, pkName);
+            createIndex(fullTableName, pk, pkName, existingTable);
         }
 
         addPKConstraint(fullTableName, pk, pkName);
@@ -411,7 +1915,8 @@ public class SchemaCreator {
         sql.append(appendColumnNames(primaryKey));
         sql.append(")");
 
-        template().execute(sql.toString());
+        String bareTableName = SchemaUtil.stripSchema(tableName);
+        execute(new MigrationStep(MigrationStep.Type.ADD_PRIMARY_KEY, bareTableName, pkName, sql.toString(), getRowEstimate(bareTableName)));
     }
 
     private String appendColumnNames(IndexDescription indexDescription) {
@@ -426,25 +1931,89 @@ public class SchemaCreator {
     }
 
     private void createIndexes(TableDescription tableDescription) {
+        createIndexes(tableDescription, false);
+    }
+
+    private void createIndexes(TableDescription tableDescription, boolean existingTable) {
         for (IndexDescription indexDescription : tableDescription.getIndexes()) {
-            createIndex(tableDescription, indexDescription);
+            createIndex(tableDescription, indexDescription, existingTable);
         }
     }
 
     private void createIndex(TableDescription tableDescription, IndexDescription indexDescription) {
-        String indexName = SchemaUtil.composeIndexName(indexDescription, tableDescription.getTableName());
-        createIndex(tableDescription.getFullTableName(), indexDescription, indexName);
+        createIndex(tableDescription, indexDescription, false);
+    }
+
+    private void createIndex(TableDescription tableDescription, IndexDescription indexDescription, boolean existingTable) {
+        String indexName = composeIndexName(indexDescription, tableDescription.getTableName());
+        // built the plain way where the partitioned table can't have it built online
+        createIndex(tableDescription.getFullTableName(), indexDescription, indexName,
+                    existingTable && supportsOnlineIndexBuilds(tableDescription));
+    }
+
+    /**
+     * @see SchemaUtil#composeIndexName
+     */
+    private String composeIndexName(IndexDescription indexDescription, String tableName) {
+        return SchemaUtil.composeIndexName(indexDescription, tableName, getDialect().getMaxIdentifierLength());
+    }
+
+    private boolean supportsOnlineIndexBuilds(TableDescription tableDescription) {
+        Dialect dialect = getDialect();
+        return tableDescription.getPartitioning() == null ? dialect.supportsOnlineIndexBuilds()
+                                                          : dialect.supportsOnlinePartitionedIndexBuilds();
     }
 
     private void createIndex(String tableName, IndexDescription indexDescription, String indexName) {
+        createIndex(tableName, indexDescription, indexName, false);
+    }
+
+    /**
+     * @param existingTable whether the table existed before; only then it's worth building the index online,
+     * as new tables are empty
+     */
+    private void createIndex(String tableName, IndexDescription indexDescription, String indexName, boolean existingTable) {
         if (!indexExists(indexName, tableName)) {
-            String sql = composeIndexCreationSql(indexDescription, indexName, tableName);
-            logInfo("Creating " + indexName + " index [" + indexDescription + "] for table " + tableName);
-            template().execute(sql);
+            Dialect dialect = getDialect();
+            IndexDescription supportedIndex = toSupportedIndex(indexDescription);
+            if (supportedIndex == null) {
+                logError("Unique index " + indexName + " [" + indexDescription + "] can't be partial in " + dialectName + "; not created");
+                return;
+            }
+            if (supportedIndex != indexDescription) {
+                logInfo("Index " + indexName + " [" + indexDescription + "] is created as [" + supportedIndex + "] in " + dialectName);
+                indexDescription = supportedIndex;
+            }
+            boolean online = existingTable && (onlineIndexBuilds || indexDescription.isOnline()) && dialect.supportsOnlineIndexBuilds() &&
+                             !isCallerTransactionActive();
+            int parallelDegree = indexDescription.getParallelDegree() > 0 ? indexDescription.getParallelDegree() : indexBuildParallelism;
+            boolean noLogging = noLoggingIndexBuilds || indexDescription.isNoLogging();
+
+            String sql = composeIndexCreationSql(indexDescription, indexName, tableName, online, parallelDegree, noLogging);
+            logInfo("Creating " + indexName + " index [" + indexDescription + "] for table " + tableName + (online ? " online" : ""));
+            String bareTableName = SchemaUtil.stripSchema(tableName);
+            String fullIndexName = SchemaUtil.getSchemaPrefix(tableName) + indexName;
+            if (online && dialect.onlineIndexBuildsRequireAutoCommit()) {
+                execute(new MigrationStep(MigrationStep.Type.CREATE_INDEX, bareTableName, fullIndexName, sql, getRowEstimate(bareTableName),
+                                          true, dialect.getOnlineIndexBuildCleanupStatement(fullIndexName)));
+            } else {
+                execute(new MigrationStep(MigrationStep.Type.CREATE_INDEX, bareTableName, fullIndexName, sql, getRowEstimate(bareTableName)));
+            }
+            CatalogSnapshot snapshot = catalog;
+            if (snapshot != null) {
+                snapshot.addIndex(tableName, indexName);
+            }
+
+            // so that queries using the index don't go parallel, nor later changes go unlogged
+            String resetSql = dialect.getIndexBuildResetStatement(fullIndexName, parallelDegree, noLogging);
+            if (resetSql != null) {
+                execute(new MigrationStep(MigrationStep.Type.ALTER_INDEX, bareTableName, indexName, resetSql, 0));
+            }
         }
     }
 
-    private String composeIndexCreationSql(IndexDescription indexDescription, String indexName, String tableName) {
+    String composeIndexCreationSql(IndexDescription indexDescription, String indexName, String tableName,
+                                   boolean online, int parallelDegree, boolean noLogging) {
         StringBuilder sql = new StringBuilder();
 
         sql.append("create ");
@@ -452,16 +2021,20 @@ public class SchemaCreator {
             sql.append("unique ");
         }
         sql.append("index ");
+        if (online && getDialect().getOnlineIndexModifier() != null) {
+            sql.append(getDialect().getOnlineIndexModifier()).append(" ");
+        }
         sql.append(indexName);
 
         sql.append(" on ").append(tableName);
+        String predicate = indexDescription.getPredicate();
         if (indexDescription.isLower()) {
             if (indexDescription.getColumnNames().size() != 1) {
                 logError("Can't have lower flag on composite index. " + indexDescription);
             } else {
                 String column = indexDescription.getColumnNames().iterator().next();
                 String index = getDialect().lowerIndex(column);
-                sql.append(" ").append(index);
+                sql.append(" ").append(predicate == null ? index : getDialect().partialIndexColumn(index, predicate));
             }
         } else {
 
@@ -470,12 +2043,26 @@ public class SchemaCreator {
             String sep = "";
             for (String column : indexDescription.getColumnNames()) {
                 sql.append(sep);
-                sql.append(column);
+                sql.append(predicate == null ? column : getDialect().partialIndexColumn(column, predicate));
                 sep = ", ";
             }
             sql.append(")");
         }
 
+        if (!indexDescription.getIncludedColumnNames().isEmpty()) {
+            sql.append(" include (").append(StringUtils.join(indexDescription.getIncludedColumnNames(), ", ")).append(")");
+        }
+
+        if (indexDescription.getStorage() != null) {
+            sql.append(getDialect().getStorageClause(indexDescription.getStorage(), true));
+        }
+
+        if (predicate != null) {
+            sql.append(getDialect().getPartialIndexClause(predicate));
+        }
+
+        sql.append(getDialect().getIndexBuildClauses(online, parallelDegree, noLogging));
+
         return sql.toString();
     }
 
@@ -483,15 +2070,17 @@ public class SchemaCreator {
         return dialectName;
     }
 
-    public void setDialectName(String dialectName) {
+    public synchronized void setDialectName(String dialectName) {
         this.dialectName = dialectName;
+        defaultExecutor = null;
+        template = null;
     }
 
     public void setDialectName(DBType dbType) {
-        this.dialectName = dbType.toString();
+        setDialectName(dbType.toString());
     }
 
-    private JdbcTemplate template() {
+    private synchronized JdbcTemplate template() {
         if (template != null) {
             return template;
         }
@@ -500,18 +2089,395 @@ public class SchemaCreator {
             throw new RuntimeException("Data source is not set");
         }
 
-        template = new JdbcTemplate(dataSource);
+        template = new ListeningJdbcTemplate(dataSource, new ListeningJdbcTemplate.QueryListener() {
+            public void queried(String sql, long durationMillis, long rows, Exception failure) {
+                if (listeners.isEmpty()) {
+                    return;
+                }
+
+                TableProgress progress = tableProgress.get();
+                String tableName = progress != null ? progress.tableName : null;
+                fire(new MigrationEvent(MigrationEvent.Type.CATALOG_QUERY, tableName, null, null, sql, durationMillis, rows, null));
+                if (failure != null) {
+                    fire(new MigrationEvent(MigrationEvent.Type.FAILURE, tableName, null, null, sql, durationMillis, rows, failure));
+                }
+            }
+        });
         return template;
     }
 
-    public void setDataSource(DataSource dataSource) {
+    public boolean isCatalogSnapshotEnabled() {
+        return catalogSnapshotEnabled;
+    }
+
+    /**
+     * When enabled (the default), {@link #createTables} loads the whole catalog once up front
+     * instead of introspecting every table, index and PK one by one.
+     */
+    public void setCatalogSnapshotEnabled(boolean catalogSnapshotEnabled) {
+        this.catalogSnapshotEnabled = catalogSnapshotEnabled;
+    }
+
+    public synchronized void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
         template = null;
+        defaultExecutor = null;
+    }
+
+    public MigrationExecutor getMigrationExecutor() {
+        return migrationExecutor;
+    }
+
+    /**
+     * Plugs in the executor of all the DDL statements; by default they are executed over JDBC on the data source,
+     * with online index builds retried as per {@link #setOnlineIndexBuildAttempts}.
+     */
+    public synchronized void setMigrationExecutor(MigrationExecutor migrationExecutor) {
+        this.migrationExecutor = migrationExecutor;
+    }
+
+    /**
+     * Registers a listener of the catalog queries, DDL statements and tables this creator goes through;
+     * e.g. {@link MigrationMetrics}.
+     */
+    public void addMigrationListener(MigrationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeMigrationListener(MigrationListener listener) {
+        listeners.remove(listener);
+    }
+
+    public boolean isBootstrapEnabled() {
+        return bootstrapEnabled;
+    }
+
+    /**
+     * When enabled (the default), {@link #createTables} checks first whether the schema is empty, and if so,
+     * creates all the tables without any introspection, sending their DDL in batches.
+     */
+    public void setBootstrapEnabled(boolean bootstrapEnabled) {
+        this.bootstrapEnabled = bootstrapEnabled;
+    }
+
+    public int getBootstrapBatchSize() {
+        return bootstrapBatchSize;
+    }
+
+    /**
+     * @param bootstrapBatchSize max number of statements sent in one round trip when bootstrapping an empty schema
+     */
+    public void setBootstrapBatchSize(int bootstrapBatchSize) {
+        this.bootstrapBatchSize = bootstrapBatchSize;
+    }
+
+    public boolean isFingerprintsEnabled() {
+        return fingerprintsEnabled;
+    }
+
+    /**
+     * When enabled, {@link #createTables} records a fingerprint of every table it syncs in the
+     * {@link SchemaFingerprints#TABLE_NAME} table, and skips the tables whose fingerprints haven't changed since.
+     * Changes made to the schema behind dbmagic's back go unnoticed then; see {@link #setFingerprintSpotChecks}.
+     */
+    public void setFingerprintsEnabled(boolean fingerprintsEnabled) {
+        this.fingerprintsEnabled = fingerprintsEnabled;
+    }
+
+    public int getFingerprintSpotChecks() {
+        return fingerprintSpotChecks;
+    }
+
+    /**
+     * @param fingerprintSpotChecks number of randomly picked unchanged tables to check in the catalog for their existence,
+     * PK and indexes; the ones that fail the check are synced. 0 (the default) means no checks.
+     */
+    public void setFingerprintSpotChecks(int fingerprintSpotChecks) {
+        this.fingerprintSpotChecks = fingerprintSpotChecks;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Sets the number of workers {@link #createTables} syncs tables with; 1 (the default) means sequentially.
+     * The actual number is capped by the number of tables and by what the data source can provide.
+     * Within a Spring-managed transaction the tables are synced sequentially on the calling thread, so that
+     * the DDL takes part in that transaction.
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public boolean isOnlineColumnTypeChanges() {
+        return onlineColumnTypeChanges;
+    }
+
+    /**
+     * When enabled, column type changes (e.g. INTEGER -> LONG, VARCHAR -> CLOB) are made online, where the dialect
+     * supports it (PostgreSQL; Oracle, except for PK columns): expand into a shadow column kept in sync by a trigger,
+     * backfill it in chunks, swap the names. Requires a single-column numeric primary key. Otherwise type changes are
+     * not made at all; nor are they within a transaction of the caller, which the backfill would wait for.
+     */
+    public void setOnlineColumnTypeChanges(boolean onlineColumnTypeChanges) {
+        this.onlineColumnTypeChanges = onlineColumnTypeChanges;
+    }
+
+    public int getBackfillChunkSize() {
+        return backfillChunkSize;
+    }
+
+    /**
+     * @param backfillChunkSize the number of rows updated by every backfill statement of an online type or NOT NULL change
+     */
+    public void setBackfillChunkSize(int backfillChunkSize) {
+        this.backfillChunkSize = backfillChunkSize;
+    }
+
+    public long getBackfillThrottle() {
+        return backfillThrottle;
+    }
+
+    /**
+     * @param backfillThrottle pause, in milliseconds, between the backfill statements of an online type or NOT NULL change,
+     * to leave room for the production traffic; 0 (the default) means no pause
+     */
+    public void setBackfillThrottle(long backfillThrottle) {
+        this.backfillThrottle = backfillThrottle;
+    }
+
+    public boolean isOnlineNotNullChanges() {
+        return onlineNotNullChanges;
+    }
+
+    /**
+     * When enabled, nullable columns required to be NOT NULL are changed online, where the dialect supports it
+     * (PostgreSQL: a NOT VALID check, validated, then set not null; Oracle: a NOT NULL constraint enabled novalidate,
+     * then validated): existing nulls are backfilled with the column's default value in chunks of PK ranges
+     * (see {@link #setBackfillChunkSize}) in between. Otherwise such changes are not made at all; nor are they within
+     * a transaction of the caller, which the backfill would wait for.
+     */
+    public void setOnlineNotNullChanges(boolean onlineNotNullChanges) {
+        this.onlineNotNullChanges = onlineNotNullChanges;
+    }
+
+    public boolean isOnlineIndexBuilds() {
+        return onlineIndexBuilds;
     }
 
-    public void setLog(Logger log) {
+    /**
+     * When enabled, indexes added to existing tables are built without blocking writes to the table
+     * (PostgreSQL's create index concurrently, Oracle's online), where the dialect supports it, and unless the sync
+     * runs within a transaction of the caller, which the build would wait for; see also {@link IndexDescription#online}.
+     */
+    public void setOnlineIndexBuilds(boolean onlineIndexBuilds) {
+        this.onlineIndexBuilds = onlineIndexBuilds;
+    }
+
+    public int getIndexBuildParallelism() {
+        return indexBuildParallelism;
+    }
+
+    /**
+     * Sets the degree of parallelism for index builds, where the dialect supports it (Oracle);
+     * {@link IndexDescription#parallel} overrides it per index. 0 (the default) means serial builds.
+     */
+    public void setIndexBuildParallelism(int indexBuildParallelism) {
+        this.indexBuildParallelism = indexBuildParallelism;
+    }
+
+    public boolean isNoLoggingIndexBuilds() {
+        return noLoggingIndexBuilds;
+    }
+
+    /**
+     * When enabled, indexes are built without redo logging, where the dialect supports it (Oracle);
+     * see also {@link IndexDescription#noLogging}.
+     */
+    public void setNoLoggingIndexBuilds(boolean noLoggingIndexBuilds) {
+        this.noLoggingIndexBuilds = noLoggingIndexBuilds;
+    }
+
+    public int getOnlineIndexBuildAttempts() {
+        return onlineIndexBuildAttempts;
+    }
+
+    public synchronized void setOnlineIndexBuildAttempts(int onlineIndexBuildAttempts) {
+        this.onlineIndexBuildAttempts = onlineIndexBuildAttempts;
+        defaultExecutor = null;
+    }
+
+    public long getOnlineIndexBuildRetryDelay() {
+        return onlineIndexBuildRetryDelay;
+    }
+
+    /**
+     * @param onlineIndexBuildRetryDelay base delay, in milliseconds, before a failed online build is retried;
+     * it grows with every attempt
+     */
+    public synchronized void setOnlineIndexBuildRetryDelay(long onlineIndexBuildRetryDelay) {
+        this.onlineIndexBuildRetryDelay = onlineIndexBuildRetryDelay;
+        defaultExecutor = null;
+    }
+
+    public long getLockTimeout() {
+        return lockTimeout;
+    }
+
+    /**
+     * Sets how long, in milliseconds, every DDL statement may wait for its lock (PostgreSQL's lock_timeout, Oracle's
+     * DDL_LOCK_TIMEOUT); a statement stuck behind a long transaction gives up rather than blocking all the traffic of
+     * the table behind its own lock request, and is retried with a jittered, growing delay within
+     * {@link #setLockRetryBudget the budget}. A couple of hundred milliseconds keeps DDL from stalling production
+     * requests noticeably. 0 (the default) means the database default. Applies to the default executor only.
+     */
+    public synchronized void setLockTimeout(long lockTimeout) {
+        this.lockTimeout = lockTimeout;
+        defaultExecutor = null;
+    }
+
+    public long getStatementTimeout() {
+        return statementTimeout;
+    }
+
+    /**
+     * Sets how long, in milliseconds, a DDL statement may run (PostgreSQL's statement_timeout, the JDBC query timeout
+     * elsewhere); 0 (the default) means no limit. Applies to the default executor only.
+     */
+    public synchronized void setStatementTimeout(long statementTimeout) {
+        this.statementTimeout = statementTimeout;
+        defaultExecutor = null;
+    }
+
+    public long getLockRetryBudget() {
+        return lockRetryBudget;
+    }
+
+    /**
+     * @param lockRetryBudget max time, in milliseconds, to keep retrying a statement that times out waiting for its lock;
+     * then it fails with {@link JdbcMigrationExecutor.LockRetriesExhaustedException}
+     */
+    public synchronized void setLockRetryBudget(long lockRetryBudget) {
+        this.lockRetryBudget = lockRetryBudget;
+        defaultExecutor = null;
+    }
+
+    public long getLockRetryDelay() {
+        return lockRetryDelay;
+    }
+
+    /**
+     * @param lockRetryDelay base delay, in milliseconds, before retrying a statement that timed out waiting for its lock;
+     * it doubles with every attempt
+     */
+    public synchronized void setLockRetryDelay(long lockRetryDelay) {
+        this.lockRetryDelay = lockRetryDelay;
+        defaultExecutor = null;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Caps the parallel workers when the data source doesn't tell its pool size; 0 (the default) means to ask the pool.
+     */
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    public synchronized void setLog(Logger log) {
         this.log = log;
         getDialect().setLog(log);
+        defaultExecutor = null;
+    }
+
+    /**
+     * Column changes of a single table, collected to be sent together
+     */
+    private static class TableAlteration {
+        private final List<String> addedColumns = new ArrayList<String>();
+        private final List<String> alteredColumns = new ArrayList<String>();
+        private final List<String> targets = new ArrayList<String>();
+        private final List<ColumnDescription> tightenedColumns = new ArrayList<ColumnDescription>();
+        private final List<MigrationStep> followingSteps = new ArrayList<MigrationStep>();
+        private MigrationStep.Type type;
+        private long cost;
+
+        /**
+         * The column is to be made NOT NULL online, after the rest of the changes
+         */
+        void tightenColumn(ColumnDescription columnDescription) {
+            tightenedColumns.add(columnDescription);
+        }
+
+        /**
+         * The change can't be combined with the others, and is made right after them
+         */
+        void follow(MigrationStep step) {
+            followingSteps.add(step);
+        }
+
+        void addColumn(String columnSQL, String target, long cost) {
+            addedColumns.add(columnSQL);
+            add(MigrationStep.Type.ADD_COLUMN, target, cost);
+        }
+
+        void alterColumn(String clause, MigrationStep.Type type, String target, long cost) {
+            alteredColumns.add(clause);
+            add(type, target, cost);
+        }
+
+        /**
+         * The clause changes the table itself rather than one of its columns, without rewriting it
+         */
+        void alterTable(String clause, MigrationStep.Type type, String target) {
+            alteredColumns.add(clause);
+            add(type, target, 0);
+        }
+
+        private void add(MigrationStep.Type type, String target, long cost) {
+            this.type = this.type == null || this.type == type ? type : MigrationStep.Type.ALTER_TABLE;
+            if (!targets.contains(target)) {
+                targets.add(target);
+            }
+            // the table is rewritten at most once
+            this.cost = Math.max(this.cost, cost);
+        }
+
+        boolean isEmpty() {
+            return targets.isEmpty();
+        }
+    }
+
+    /**
+     * The table the current thread is syncing, for the events
+     */
+    private static class TableProgress {
+        private final String tableName;
+        private final long start = System.currentTimeMillis();
+        private int statements;
+
+        TableProgress(String tableName) {
+            this.tableName = tableName;
+        }
+
+        long elapsed() {
+            return System.currentTimeMillis() - start;
+        }
+    }
+
+    private static class SyncThreadFactory implements ThreadFactory {
+        private static final AtomicInteger poolNumber = new AtomicInteger(1);
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+        private final String namePrefix = "dbmagic-sync-" + poolNumber.getAndIncrement() + "-";
+
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
     }
 
     private void logDebug(String msg) {
@@ -0,0 +1,141 @@
+package org.drift.dbmagic;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Fingerprints of {@link TableDescription}s and their persistence in a table dbmagic manages, so that tables
+ * whose description hasn't changed since they were last synced can be skipped without introspecting them.
+ * <p/>
+ * A fingerprint covers everything that ends up in the DDL: columns (types, sizes, nullability, defaults, compression),
+ * PK, indexes, checks and join tables. It doesn't cover build options, like online or parallel index builds.
+ *
+ * @author Dima Frid
+ */
+public class SchemaFingerprints {
+    public static final String TABLE_NAME = "DBMAGIC_FINGERPRINTS";
+
+    private static final String TABLE_NAME_COLUMN = "TABLE_NAME";
+    private static final String FINGERPRINT_COLUMN = "FINGERPRINT";
+    private static final String SYNCED_AT_COLUMN = "SYNCED_AT";
+
+    /**
+     * Bumped whenever the way tables are synced changes, so that all the tables get synced again
+     */
+    private static final int VERSION = 1;
+
+    public static TableDescription tableDescription() {
+        TableDescription tableDescription = new TableDescription(TABLE_NAME);
+        tableDescription.addColumn(TABLE_NAME_COLUMN).ofType(ColumnType.VARCHAR).ofSize(255).notNullable();
+        tableDescription.addColumn(FINGERPRINT_COLUMN).ofType(ColumnType.VARCHAR).ofSize(64).notNullable();
+        tableDescription.addColumn(SYNCED_AT_COLUMN).ofType(ColumnType.LONG);
+        tableDescription.setPrimaryKey(new IndexDescription(TABLE_NAME_COLUMN));
+        return tableDescription;
+    }
+
+    public static String fingerprint(TableDescription tableDescription) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(describe(tableDescription).getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder();
+            for (byte b : hash) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * @return canonical description of the table; independent of the order columns, indexes and checks were added in
+     */
+    static String describe(TableDescription tableDescription) {
+        StringBuilder sb = new StringBuilder("v").append(VERSION).append(" table ").append(tableDescription.getFullTableName());
+
+        List<String> columns = new ArrayList<String>();
+        for (ColumnDescription column : tableDescription.getColumns().values()) {
+            columns.add(column.getName() + " " + column.getType() + " " + column.getSize() + " " + column.getNativeType() +
+                        (column.isNullable() ? " null" : " not null") + " default " + column.getDefaultValue() +
+                        (column.isCompressed() ? " compressed " + column.getCompression() : ""));
+        }
+        Collections.sort(columns);
+        sb.append(" columns ").append(columns);
+
+        IndexDescription primaryKey = tableDescription.getPrimaryKey();
+        sb.append(" pk ").append(primaryKey == null ? null : primaryKey.getColumnNames());
+
+        List<String> indexes = new ArrayList<String>();
+        for (IndexDescription index : tableDescription.getIndexes()) {
+            indexes.add(index.getColumnNames() + (index.isUnique() ? " unique" : "") + (index.isLower() ? " lower" : "") +
+                        (index.getStorage() != null ? " storage " + index.getStorage() : "") +
+                        (index.getIncludedColumnNames().isEmpty() ? "" : " include " + index.getIncludedColumnNames()) +
+                        (index.isPartial() ? " where " + index.getPredicate() : ""));
+        }
+        Collections.sort(indexes);
+        sb.append(" indexes ").append(indexes);
+
+        List<String> checks = new ArrayList<String>(tableDescription.getChecks());
+        Collections.sort(checks);
+        sb.append(" checks ").append(checks);
+        if (tableDescription.getPartitioning() != null) {
+            sb.append(" partitioning ").append(tableDescription.getPartitioning());
+        }
+        if (tableDescription.getStorage() != null) {
+            sb.append(" storage ").append(tableDescription.getStorage());
+        }
+
+        List<String> joinTables = new ArrayList<String>();
+        for (TableDescription joinTable : tableDescription.getJoinTablesDescriptions()) {
+            joinTables.add(describe(joinTable));
+        }
+        Collections.sort(joinTables);
+        sb.append(" join tables ").append(joinTables);
+
+        return sb.toString();
+    }
+
+    /**
+     * @return stored fingerprints by upper-cased full table names
+     */
+    public static Map<String, String> load(JdbcTemplate template) {
+        final Map<String, String> fingerprints = new HashMap<String, String>();
+        template.query("select " + TABLE_NAME_COLUMN + ", " + FINGERPRINT_COLUMN + " from " + TABLE_NAME, new RowCallbackHandler() {
+            public void processRow(ResultSet rs) throws SQLException {
+                fingerprints.put(rs.getString(1).toUpperCase(), rs.getString(2));
+            }
+        });
+        return fingerprints;
+    }
+
+    /**
+     * @param fingerprints fingerprints by full table names
+     */
+    public static void store(JdbcTemplate template, Map<String, String> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return;
+        }
+
+        List<Object[]> deletes = new ArrayList<Object[]>();
+        List<Object[]> inserts = new ArrayList<Object[]>();
+        long now = System.currentTimeMillis();
+        for (Map.Entry<String, String> entry : fingerprints.entrySet()) {
+            String tableName = entry.getKey().toUpperCase();
+            deletes.add(new Object[]{tableName});
+            inserts.add(new Object[]{tableName, entry.getValue(), now});
+        }
+
+        template.batchUpdate("delete from " + TABLE_NAME + " where " + TABLE_NAME_COLUMN + " = ?", deletes);
+        template.batchUpdate("insert into " + TABLE_NAME + " (" + TABLE_NAME_COLUMN + ", " + FINGERPRINT_COLUMN + ", " +
+                             SYNCED_AT_COLUMN + ") values (?, ?, ?)", inserts);
+    }
+}
@@ -9,11 +9,24 @@ public class SchemaUtil {
     private static final String INDEX_PREFIX = "IX1_";
     private static final String UNIQUE_INDEX_PREFIX = "UIX1_";
 
+    private static final String SHADOW_COLUMN_SUFFIX = "_NEW";
+    private static final String RETIRED_COLUMN_SUFFIX = "_OLD";
+    private static final String SYNC_TRIGGER_PREFIX = "TRG_SYNC_";
+    private static final String NOT_NULL_PREFIX = "NN_";
+
     public static String composePKName(String tableName) {
         return PRIMARY_KEY_PREFIX + tableName;
     }
 
     public static String composeIndexName(IndexDescription indexDescription, String tableName) {
+        return composeIndexName(indexDescription, tableName, 0);
+    }
+
+    /**
+     * @param maxLength the longest identifier the database takes; 0 for no limit. A longer name is cut short and
+     * told apart from others cut the same way by a hash of the whole name, keeping the hash of the predicate
+     */
+    public static String composeIndexName(IndexDescription indexDescription, String tableName, int maxLength) {
         String prefix = indexDescription.isUnique() ? UNIQUE_INDEX_PREFIX : INDEX_PREFIX;
         StringBuilder buf = new StringBuilder(prefix).append(tableName);
         for (String columnName : indexDescription.getColumnNames()) {
@@ -22,7 +35,72 @@ public class SchemaUtil {
         if (indexDescription.isLower()) {
             buf.append("_LOWER");
         }
-        return buf.toString().toUpperCase();
+        String name = buf.toString().toUpperCase();
+        String suffix = "";
+        if (indexDescription.isPartial()) {
+            // databases normalize the predicate they report, so the name tells whether it's still the required one
+            suffix = ("_W" + Integer.toHexString(indexDescription.getPredicate().trim().hashCode())).toUpperCase();
+        }
+
+        if (maxLength > 0 && name.length() + suffix.length() > maxLength) {
+            String hash = "_" + Integer.toHexString(name.hashCode()).toUpperCase();
+            name = name.substring(0, Math.max(prefix.length(), maxLength - suffix.length() - hash.length())) + hash;
+        }
+        return name + suffix;
+    }
+
+    /**
+     * @return whether the index is named the way {@link #composeIndexName} names indexes
+     */
+    public static boolean isManagedIndexName(String indexName) {
+        String name = stripSchema(indexName).toUpperCase();
+        return name.startsWith(INDEX_PREFIX) || name.startsWith(UNIQUE_INDEX_PREFIX);
+    }
+
+    /**
+     * @return the name of the column an online type change fills in before it takes the place of the given one
+     */
+    public static String composeShadowColumnName(String columnName) {
+        return (columnName + SHADOW_COLUMN_SUFFIX).toUpperCase();
+    }
+
+    /**
+     * @return the name the given column goes by once an online type change replaced it, until it's dropped
+     */
+    public static String composeRetiredColumnName(String columnName) {
+        return (columnName + RETIRED_COLUMN_SUFFIX).toUpperCase();
+    }
+
+    /**
+     * @return the name of the trigger keeping the shadow column of an online type change in sync with the column
+     */
+    public static String composeSyncTriggerName(String tableName, String columnName) {
+        return (SYNC_TRIGGER_PREFIX + stripSchema(tableName) + "_" + columnName).toUpperCase();
+    }
+
+    /**
+     * @return the name of the constraint an online NOT NULL change adds to the column
+     */
+    public static String composeNotNullConstraintName(String tableName, String columnName) {
+        return (NOT_NULL_PREFIX + stripSchema(tableName) + "_" + columnName).toUpperCase();
+    }
+
+    /**
+     * @param suffix the name of a list partition, or the period or number of a range or hash one
+     * @return the name of the partition, which is a table of its own in some dialects
+     */
+    public static String composePartitionName(String tableName, String suffix) {
+        return (stripSchema(tableName) + "_" + suffix).toUpperCase();
+    }
+
+    public static String stripSchema(String fullName) {
+        int pos = fullName.lastIndexOf('.');
+        return pos == -1 ? fullName : fullName.substring(pos + 1);
+    }
+
+    public static String getSchemaPrefix(String fullName) {
+        int pos = fullName.lastIndexOf('.');
+        return pos == -1 ? "" : fullName.substring(0, pos + 1);
     }
 
     public static boolean isLOB(ColumnDescription column) {
@@ -0,0 +1,133 @@
+package org.drift.dbmagic;
+
+import java.io.Serializable;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Physical storage options of a table or an index. They're applied when the table or index is created, and brought
+ * back in line by incremental sync when the database drifts from them; options left unset keep the database default
+ * (or whatever they were set to by hand).
+ * <p/>
+ * The fill factor applies to all dialects (on Oracle as PCTFREE, the percentage of the block left free); the rest
+ * is dialect specific and ignored by the other dialects.
+ *
+ * @author Dima Frid
+ */
+public class StorageOptions implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private int fillFactor;
+    private int initTrans;
+    private boolean deferredSegmentCreation;
+    private Map<String, String> parameters = new TreeMap<String, String>();
+
+    /**
+     * @return a copy that can be changed independently of this one
+     */
+    public StorageOptions copy() {
+        StorageOptions copy = new StorageOptions();
+        copy.fillFactor = fillFactor;
+        copy.initTrans = initTrans;
+        copy.deferredSegmentCreation = deferredSegmentCreation;
+        copy.parameters.putAll(parameters);
+        return copy;
+    }
+
+    /**
+     * @param percent how full (10-100) the pages of the table or index are packed on insert; the rest is left
+     *                for updates, which a table with room on the page can do without touching its indexes
+     */
+    public StorageOptions fillFactor(int percent) {
+        if (percent < 10 || percent > 100) {
+            throw new IllegalArgumentException("Fill factor must be between 10 and 100: " + percent);
+        }
+        fillFactor = percent;
+        return this;
+    }
+
+    public int getFillFactor() {
+        return fillFactor;
+    }
+
+    /**
+     * Oracle only: the number of transaction slots allocated in each block up front, for blocks updated concurrently.
+     */
+    public StorageOptions initTrans(int slots) {
+        initTrans = slots;
+        return this;
+    }
+
+    public int getInitTrans() {
+        return initTrans;
+    }
+
+    /**
+     * Oracle only: no segment is allocated until the first row is inserted. Applies when the table is created.
+     */
+    public StorageOptions deferredSegmentCreation() {
+        deferredSegmentCreation = true;
+        return this;
+    }
+
+    public boolean isDeferredSegmentCreation() {
+        return deferredSegmentCreation;
+    }
+
+    /**
+     * PostgreSQL only: a storage parameter, e.g. autovacuum_vacuum_scale_factor.
+     */
+    public StorageOptions parameter(String name, Object value) {
+        parameters.put(name.toLowerCase(), String.valueOf(value));
+        return this;
+    }
+
+    public StorageOptions autovacuumVacuumScaleFactor(double factor) {
+        return parameter("autovacuum_vacuum_scale_factor", factor);
+    }
+
+    public StorageOptions autovacuumAnalyzeScaleFactor(double factor) {
+        return parameter("autovacuum_analyze_scale_factor", factor);
+    }
+
+    /**
+     * @param bytes the row length above which rows are compressed and moved out of line
+     */
+    public StorageOptions toastTupleTarget(int bytes) {
+        return parameter("toast_tuple_target", bytes);
+    }
+
+    public Map<String, String> getParameters() {
+        return parameters;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        StorageOptions that = (StorageOptions) o;
+
+        if (fillFactor != that.fillFactor) return false;
+        if (initTrans != that.initTrans) return false;
+        if (deferredSegmentCreation != that.deferredSegmentCreation) return false;
+        if (!parameters.equals(that.parameters)) return false;
+
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = fillFactor;
+        result = 31 * result + initTrans;
+        result = 31 * result + parameters.hashCode();
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return (fillFactor > 0 ? "fillfactor " + fillFactor + " " : "") + (initTrans > 0 ? "initrans " + initTrans + " " : "") +
+               (deferredSegmentCreation ? "deferred " : "") + parameters;
+    }
+}
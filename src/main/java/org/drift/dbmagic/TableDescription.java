@@ -17,6 +17,8 @@ public class TableDescription implements Serializable {
     private Collection<IndexDescription> indexes = new ArrayList<IndexDescription>();
     private Collection<String> checks = new ArrayList<String>();
     private Collection<TableDescription> joinTablesDescriptions = new ArrayList<TableDescription>();
+    private PartitionDescription partitioning;
+    private StorageOptions storage;
     private String schema;
 
     public TableDescription(String tableName) {
@@ -28,6 +30,27 @@ public class TableDescription implements Serializable {
         this.schema = schema;
     }
 
+    /**
+     * @return a deep copy that can be changed independently of this one
+     */
+    public TableDescription copy() {
+        TableDescription copy = new TableDescription(tableName, schema);
+        for (ColumnDescription column : columns.values()) {
+            copy.addColumn(column.copy());
+        }
+        copy.primaryKey = primaryKey == null ? null : primaryKey.copy();
+        for (IndexDescription index : indexes) {
+            copy.addIndex(index.copy());
+        }
+        copy.checks.addAll(checks);
+        copy.partitioning = partitioning == null ? null : partitioning.copy();
+        copy.storage = storage == null ? null : storage.copy();
+        for (TableDescription joinTable : joinTablesDescriptions) {
+            copy.addJoinTableDescription(joinTable.copy());
+        }
+        return copy;
+    }
+
     public String getTableName() {
         return tableName;
     }
@@ -150,6 +173,29 @@ public class TableDescription implements Serializable {
         }
     }
 
+    /**
+     * Partitions the table when it's created, where the dialect supports it; an existing table isn't partitioned later.
+     * On PostgreSQL, the primary key and unique indexes must include the partition column.
+     */
+    public void setPartitioning(PartitionDescription partitioning) {
+        this.partitioning = partitioning;
+    }
+
+    public PartitionDescription getPartitioning() {
+        return partitioning;
+    }
+
+    /**
+     * On PostgreSQL, a partitioned table itself has no storage, so the options aren't applied to it.
+     */
+    public void setStorage(StorageOptions storage) {
+        this.storage = storage;
+    }
+
+    public StorageOptions getStorage() {
+        return storage;
+    }
+
     public Collection<String> getChecks() {
         return checks;
     }
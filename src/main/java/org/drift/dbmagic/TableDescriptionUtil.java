@@ -8,14 +8,171 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.AnnotatedElement;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.sql.Timestamp;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * @author Dima Frid
  */
 public class TableDescriptionUtil {
+    /**
+     * Name of the static field a {@link DBTable} class may hold its description in, to spare its instantiation
+     */
+    public static final String TABLE_DESCRIPTION_FIELD = "TABLE_DESCRIPTION";
+
+    private static final int PARALLEL_THRESHOLD = 64;
+
+    private static final ClassValue<TableDescription> JPA_DESCRIPTIONS = new ClassValue<TableDescription>() {
+        @Override
+        protected TableDescription computeValue(Class<?> type) {
+            return extractTableDescription(type);
+        }
+    };
+
+    private static final ClassValue<TableDescription> DB_TABLE_DESCRIPTIONS = new ClassValue<TableDescription>() {
+        @Override
+        protected TableDescription computeValue(Class<?> type) {
+            return extractDBTableDescription(type);
+        }
+    };
+
+    /**
+     * The description of a class is extracted once and cached; every call gets a copy of its own.
+     *
+     * @return null if the class isn't mapped to a table
+     */
     public static TableDescription getTableDescription(Class clazz) {
+        TableDescription table = JPA_DESCRIPTIONS.get(clazz);
+        return table == null ? null : table.copy();
+    }
+
+    /**
+     * Extracts the descriptions of many classes at once; in parallel if there are many of them.
+     *
+     * @return the descriptions in the order of the classes, skipping classes that aren't mapped to tables
+     */
+    public static List<TableDescription> getTableDescriptions(Collection<Class<?>> classes) {
+        return extract(classes, new HashMap<Class<?>, Exception>(), false);
+    }
+
+    /**
+     * Takes the description from the {@link #TABLE_DESCRIPTION_FIELD static field} of the class, if there is one;
+     * otherwise the class is instantiated, once, to ask it. Either way, every call gets a copy of its own.
+     *
+     * @return null if the class isn't a concrete {@link DBTable}
+     */
+    public static TableDescription getDBTableDescription(Class<?> clazz) {
+        TableDescription table = DB_TABLE_DESCRIPTIONS.get(clazz);
+        return table == null ? null : table.copy();
+    }
+
+    /**
+     * Gets the descriptions of many {@link DBTable} classes at once; in parallel if there are many of them.
+     *
+     * @param failures filled with the classes whose descriptions couldn't be retrieved and the respective errors
+     * @return the descriptions in the order of the classes, skipping classes that aren't concrete {@link DBTable}s
+     */
+    public static List<TableDescription> getDBTableDescriptions(Collection<Class<?>> classes, Map<Class<?>, Exception> failures) {
+        return extract(classes, failures, true);
+    }
+
+    private static List<TableDescription> extract(Collection<Class<?>> classes, Map<Class<?>, Exception> failures, boolean dbTables) {
+        List<Class<?>> classList = new ArrayList<Class<?>>(classes);
+        Map<Class<?>, Exception> concurrentFailures = new ConcurrentHashMap<Class<?>, Exception>();
+        ExtractionTask task = new ExtractionTask(classList, 0, classList.size(), concurrentFailures, dbTables);
+
+        List<TableDescription> tables;
+        if (classList.size() <= PARALLEL_THRESHOLD) {
+            tables = task.compute();
+        } else {
+            ForkJoinPool pool = new ForkJoinPool();
+            try {
+                tables = pool.invoke(task);
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        for (Class<?> clazz : classList) {
+            Exception e = concurrentFailures.get(clazz);
+            if (e != null) {
+                failures.put(clazz, e);
+            }
+        }
+        return tables;
+    }
+
+    private static class ExtractionTask extends RecursiveTask<List<TableDescription>> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Class<?>> classes;
+        private final int from;
+        private final int to;
+        private final Map<Class<?>, Exception> failures;
+        private final boolean dbTables;
+
+        ExtractionTask(List<Class<?>> classes, int from, int to, Map<Class<?>, Exception> failures, boolean dbTables) {
+            this.classes = classes;
+            this.from = from;
+            this.to = to;
+            this.failures = failures;
+            this.dbTables = dbTables;
+        }
+
+        @Override
+        protected List<TableDescription> compute() {
+            if (to - from > PARALLEL_THRESHOLD) {
+                int middle = (from + to) >>> 1;
+                ExtractionTask right = new ExtractionTask(classes, middle, to, failures, dbTables);
+                right.fork();
+                List<TableDescription> tables = new ExtractionTask(classes, from, middle, failures, dbTables).compute();
+                tables.addAll(right.join());
+                return tables;
+            }
+
+            List<TableDescription> tables = new ArrayList<TableDescription>();
+            for (Class<?> clazz : classes.subList(from, to)) {
+                try {
+                    TableDescription table = dbTables ? getDBTableDescription(clazz) : getTableDescription(clazz);
+                    if (table != null) {
+                        tables.add(table);
+                    }
+                } catch (Exception e) {
+                    if (!dbTables) {
+                        throw e instanceof RuntimeException ? (RuntimeException) e : new RuntimeException(e);
+                    }
+                    failures.put(clazz, e);
+                }
+            }
+            return tables;
+        }
+    }
+
+    private static TableDescription extractDBTableDescription(Class<?> clazz) {
+        if (!DBTable.class.isAssignableFrom(clazz) || Modifier.isAbstract(clazz.getModifiers())) {
+            return null;
+        }
+
+        try {
+            try {
+                Field field = clazz.getField(TABLE_DESCRIPTION_FIELD);
+                if (Modifier.isStatic(field.getModifiers()) && TableDescription.class.equals(field.getType())) {
+                    return (TableDescription) field.get(null);
+                }
+            } catch (NoSuchFieldException e) {
+                // no static description; ask an instance
+            }
+            return ((DBTable) clazz.newInstance()).tableDescription();
+        } catch (Exception e) {
+            throw new IllegalArgumentException("Failed to retrieve table description for class: " + clazz, e);
+        }
+    }
+
+    static TableDescription extractTableDescription(Class clazz) {
 
         Class theClass = clazz;
 
@@ -59,7 +216,7 @@ public class TableDescriptionUtil {
                     column.ofType(ColumnType.CLOB);
                     Compressed compressedAnnotation = annotatedElement.getAnnotation(Compressed.class);
                     if (compressedAnnotation != null) {
-                        column.setCompressed(true);
+                        column.compressed(compressedAnnotation.value());
                     }
                 } else {
                     column.ofType(ColumnType.BLOB);
@@ -3,6 +3,7 @@ package org.drift.dbmagic.utils;
 import com.sun.beans.ObjectHandler;
 
 import java.lang.reflect.Field;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
@@ -25,6 +26,30 @@ public class ReflectionUtils {
         }
         return allFields;
     }
+    /**
+     * Invokes the first of the given no-arg getters the object has and returns its value if it is a number.
+     */
+    public static Integer getIntProperty(Object object, String... getterNames) {
+        if (object == null) {
+            return null;
+        }
+
+        for (String getterName : getterNames) {
+            try {
+                Method getter = object.getClass().getMethod(getterName);
+                Object value = getter.invoke(object);
+                if (value instanceof Number) {
+                    return ((Number) value).intValue();
+                }
+            } catch (NoSuchMethodException e) {
+                // try the next one
+            } catch (Exception e) {
+                return null;
+            }
+        }
+        return null;
+    }
+
     public static boolean isNumeric(Class type) {
         return Number.class.isAssignableFrom(typeToClass(type));
     }
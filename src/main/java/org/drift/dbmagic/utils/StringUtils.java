@@ -1,5 +1,7 @@
 package org.drift.dbmagic.utils;
 
+import java.util.Collection;
+
 /**
 * @author Dima Frid
 */
@@ -11,5 +13,16 @@ public class StringUtils {
     public static boolean isNotEmpty(String str) {
         return !isEmpty(str);
     }
+
+    public static String join(Collection<String> strings, String separator) {
+        StringBuilder sb = new StringBuilder();
+        for (String str : strings) {
+            if (sb.length() > 0) {
+                sb.append(separator);
+            }
+            sb.append(str);
+        }
+        return sb.toString();
+    }
 }
 
@@ -0,0 +1,120 @@
+package org.drift.dbmagic;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Dima Frid
+ */
+public class JdbcMigrationExecutorTest {
+
+    private static final String TABLE_NAME = "TST_LOCKED";
+
+    private DriverManagerDataSource ds;
+
+    private Connection blocker;
+
+    private JdbcMigrationExecutor executor;
+
+    @Before
+    public void be4() throws SQLException {
+        ds = new DriverManagerDataSource("jdbc:h2:mem:locks;DB_CLOSE_DELAY\\=-1", "sa", "");
+        new JdbcTemplate(ds).execute("create table " + TABLE_NAME + " (ID int)");
+
+        // a long transaction holding a lock on the table
+        blocker = ds.getConnection();
+        blocker.setAutoCommit(false);
+        blocker.createStatement().execute("insert into " + TABLE_NAME + " values (1)");
+
+        executor = new JdbcMigrationExecutor(ds);
+        executor.setDialect(DialectFactory.getDialect(DBType.H2.toString()));
+        executor.setLockTimeout(50);
+        executor.setLockRetryDelay(20);
+        executor.setMaxLockRetryDelay(100);
+    }
+
+    @After
+    public void after() throws SQLException {
+        blocker.rollback();
+        blocker.close();
+        new JdbcTemplate(ds).execute("drop table " + TABLE_NAME);
+    }
+
+    @Test
+    public void testGiveUpAfterLockRetryBudget() {
+        executor.setLockRetryBudget(500);
+
+        long start = System.currentTimeMillis();
+        try {
+            executor.execute(addColumnStep("COL1"));
+            fail("The table is locked");
+        } catch (JdbcMigrationExecutor.LockRetriesExhaustedException e) {
+            // expected
+        }
+        assertTrue(System.currentTimeMillis() - start < 1000);
+    }
+
+    @Test
+    public void testRetryUntilLockReleased() throws Exception {
+        executor.setLockRetryBudget(10000);
+
+        Thread committer = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                    blocker.commit();
+                } catch (Exception e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+        committer.start();
+
+        executor.execute(addColumnStep("COL2"));
+        committer.join();
+
+        assertEquals(0, new JdbcTemplate(ds).queryForInt("select count(COL2) from " + TABLE_NAME));
+    }
+
+    @Test
+    public void testValidIndexIsntCleanedUp() throws SQLException {
+        blocker.commit();
+        JdbcTemplate template = new JdbcTemplate(ds);
+        String sql = "create index IX1_TST_LOCKED_ID on " + TABLE_NAME + " (ID)";
+        template.execute(sql); // by a concurrent sync
+
+        executor.setRetryAttempts(2);
+        executor.setRetryDelay(1);
+        try {
+            executor.execute(new MigrationStep(MigrationStep.Type.CREATE_INDEX, TABLE_NAME, "IX1_TST_LOCKED_ID", sql, 0,
+                                               true, "drop index if exists IX1_TST_LOCKED_ID"));
+            fail("The index exists");
+        } catch (DataAccessException e) {
+            // expected
+        }
+        assertEquals(1, template.queryForInt("select count(*) from information_schema.indexes where index_name = 'IX1_TST_LOCKED_ID'"));
+    }
+
+    @Test
+    public void testLockRetryDelayGrows() {
+        assertEquals(20, executor.getLockRetryDelay(1));
+        assertEquals(40, executor.getLockRetryDelay(2));
+        assertEquals(100, executor.getLockRetryDelay(4));
+        assertEquals(100, executor.getLockRetryDelay(100));
+    }
+
+    private MigrationStep addColumnStep(String columnName) {
+        return new MigrationStep(MigrationStep.Type.ADD_COLUMN, TABLE_NAME, TABLE_NAME + "." + columnName,
+                                 "alter table " + TABLE_NAME + " add column " + columnName + " int", 0);
+    }
+}
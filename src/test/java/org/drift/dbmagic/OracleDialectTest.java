@@ -0,0 +1,123 @@
+package org.drift.dbmagic;
+
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Dima Frid
+ */
+public class OracleDialectTest {
+
+    @Test
+    public void testCatalogQueriesFetchNoLongs() {
+        final List<String> queries = new ArrayList<String>();
+        final List<Integer> fetchSizes = new ArrayList<Integer>();
+        JdbcTemplate template = new JdbcTemplate() {
+            @Override
+            public void query(String sql, PreparedStatementSetter pss, RowCallbackHandler rch) throws DataAccessException {
+                queries.add(sql);
+                try {
+                    pss.setValues(statement(fetchSizes));
+                } catch (SQLException e) {
+                    throw new RuntimeException(e);
+                }
+
+                if (sql.contains("DATA_DEFAULT")) {
+                    StubRows.feed(rch, StubRows.row("TABLE_NAME", "TST_TABLE", "COLUMN_NAME", "STR_COL", "DATA_DEFAULT", "'N/A' "));
+                } else if (sql.contains("USER_TAB_COLUMNS")) {
+                    StubRows.feed(rch, columnRow("ID", "NUMBER", 19, 0), columnRow("STR_COL", "VARCHAR2", 50, 6));
+                } else if (sql.contains("COLUMN_EXPRESSION")) {
+                    StubRows.feed(rch, StubRows.row("INDEX_NAME", "IX1_TST_TABLE_STR_COL_ID", "COLUMN_POSITION", 1,
+                                                    "COLUMN_EXPRESSION", "\"STR_COL\""),
+                                  StubRows.row("INDEX_NAME", "UIX1_TST_TABLE_STR_COL_LOWER", "COLUMN_POSITION", 1,
+                                               "COLUMN_EXPRESSION", "LOWER(\"STR_COL\")"));
+                } else if (sql.contains("USER_IND_COLUMNS")) {
+                    StubRows.feed(rch, indexRow("IX1_TST_TABLE_STR_COL_ID", "NONUNIQUE", "SYS_NC00003$", 1),
+                                  indexRow("IX1_TST_TABLE_STR_COL_ID", "NONUNIQUE", "ID", 2),
+                                  indexRow("UIX1_TST_TABLE_STR_COL_LOWER", "UNIQUE", "SYS_NC00004$", 1));
+                }
+            }
+        };
+
+        OracleDialect dialect = new OracleDialect();
+        Map<String, ColumnDescription> columns = dialect.getColumns("app.TST_TABLE", template);
+        assertEquals(2, columns.size());
+        assertEquals(Integer.valueOf(19), columns.get("ID").getSize());
+        assertNull(columns.get("ID").getDefaultValue());
+        assertEquals("'N/A' ", columns.get("STR_COL").getDefaultValue()); // read by the second query, as DEFAULT_LENGTH > 0
+
+        Map<String, IndexDescription> indexes = dialect.getIndexDefinitions("TST_TABLE", template);
+        IndexDescription descending = indexes.get("IX1_TST_TABLE_STR_COL_ID");
+        assertEquals(Arrays.asList("STR_COL", "ID"), descending.getColumnNames());
+        assertFalse(descending.isUnique());
+        assertFalse(descending.isLower());
+        IndexDescription lower = indexes.get("UIX1_TST_TABLE_STR_COL_LOWER");
+        assertEquals(Arrays.asList("STR_COL"), lower.getColumnNames());
+        assertTrue(lower.isUnique());
+        assertTrue(lower.isLower());
+
+        // DATA_DEFAULT and COLUMN_EXPRESSION are only read when some column has a default or some index is function-based
+        assertEquals(4, queries.size());
+        assertFalse(queries.get(0).contains("DATA_DEFAULT"));
+        assertFalse(queries.get(2).contains("COLUMN_EXPRESSION"));
+        assertTrue(queries.get(2).contains("CONSTRAINT_TYPE = 'P'")); // the PK index is left out by the same query
+        assertEquals(Arrays.asList(1000, 1000, 1000, 1000), fetchSizes);
+    }
+
+    private static Map<String, Object> columnRow(String column, String type, int size, int defaultLength) {
+        return StubRows.row("TABLE_NAME", "TST_TABLE", "COLUMN_NAME", column, "DATA_TYPE", type, "DATA_LENGTH", size,
+                            "DATA_PRECISION", size, "NULLABLE", "Y", "DEFAULT_LENGTH", defaultLength);
+    }
+
+    private static Map<String, Object> indexRow(String index, String uniqueness, String column, int position) {
+        return StubRows.row("TABLE_NAME", "TST_TABLE", "INDEX_NAME", index, "INDEX_TYPE", "FUNCTION-BASED NORMAL",
+                            "UNIQUENESS", uniqueness, "COLUMN_NAME", column, "COLUMN_POSITION", position);
+    }
+
+    /**
+     * @return a statement that records the fetch size set on it and ignores the parameters
+     */
+    private static PreparedStatement statement(final List<Integer> fetchSizes) {
+        return (PreparedStatement) Proxy.newProxyInstance(OracleDialectTest.class.getClassLoader(), new Class[]{PreparedStatement.class},
+                                                          new InvocationHandler() {
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                if (method.getName().equals("setFetchSize")) {
+                    fetchSizes.add((Integer) args[0]);
+                }
+                return null;
+            }
+        });
+    }
+
+    @Test
+    public void testIndexBuildClauses() {
+        SchemaCreator schemaCreator = new SchemaCreator();
+        schemaCreator.setDialectName(DBType.ORACLE);
+        assertEquals("create index IX1_TST_TABLE_ID on TST_TABLE (ID) online parallel 4 nologging",
+                     schemaCreator.composeIndexCreationSql(new IndexDescription("ID"), "IX1_TST_TABLE_ID", "TST_TABLE", true, 4, true));
+        assertEquals("create index IX1_TST_TABLE_ID on TST_TABLE (ID) online",
+                     schemaCreator.composeIndexCreationSql(new IndexDescription("ID"), "IX1_TST_TABLE_ID", "TST_TABLE", true, 1, false));
+
+        OracleDialect dialect = new OracleDialect();
+        assertEquals("alter index IX1_TST_TABLE_ID noparallel logging", dialect.getIndexBuildResetStatement("IX1_TST_TABLE_ID", 4, true));
+        assertEquals("alter index IX1_TST_TABLE_ID noparallel", dialect.getIndexBuildResetStatement("IX1_TST_TABLE_ID", 4, false));
+        assertEquals("alter index IX1_TST_TABLE_ID logging", dialect.getIndexBuildResetStatement("IX1_TST_TABLE_ID", 1, true));
+        assertNull(dialect.getIndexBuildResetStatement("IX1_TST_TABLE_ID", 1, false));
+        assertNull(dialect.getOnlineIndexBuildCleanupStatement("IX1_TST_TABLE_ID"));
+    }
+}
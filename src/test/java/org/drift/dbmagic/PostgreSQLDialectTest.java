@@ -0,0 +1,312 @@
+package org.drift.dbmagic;
+
+import org.junit.Test;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Dima Frid
+ */
+public class PostgreSQLDialectTest {
+
+    @Test
+    public void testParseIndexDefinition() {
+        IndexDescription index = PostgreSQLDialect.parseIndexDefinition(
+            "CREATE INDEX ix1_tst_table_int_col_str_col ON public.tst_table USING btree (int_col, str_col)");
+        assertEquals(Arrays.asList("INT_COL", "STR_COL"), index.getColumnNames());
+        assertFalse(index.isUnique());
+        assertFalse(index.isLower());
+
+        index = PostgreSQLDialect.parseIndexDefinition(
+            "CREATE UNIQUE INDEX uix1_tst_table_str_col_lower ON tst_table USING btree (lower((str_col)::text))");
+        assertEquals(Arrays.asList("STR_COL"), index.getColumnNames());
+        assertTrue(index.isUnique());
+        assertTrue(index.isLower());
+    }
+
+    @Test
+    public void testComposeAlterTableStatements() {
+        List<String> statements = new PostgreSQLDialect().composeAlterTableStatements("tst_table",
+            Arrays.asList("str1_col varchar(20)"),
+            Arrays.asList("alter column str_col type varchar(40)", "alter column str_col drop not null"));
+        assertEquals(Collections.singletonList("alter table tst_table add column str1_col varchar(20), " +
+                                               "alter column str_col type varchar(40), alter column str_col drop not null"),
+                     statements);
+    }
+
+    @Test
+    public void testDdlTimeoutStatements() {
+        PostgreSQLDialect dialect = new PostgreSQLDialect();
+        assertEquals(Arrays.asList("set lock_timeout = 200", "set statement_timeout = 30000"),
+                     dialect.getDdlTimeoutStatements(200, 30000));
+        assertEquals(Arrays.asList("set lock_timeout = 200"), dialect.getDdlTimeoutStatements(200, 0));
+        assertTrue(dialect.isLockTimeout(new SQLException("canceling statement due to lock timeout", "55P03")));
+    }
+
+    @Test
+    public void testShadowColumnSwapStatements() {
+        List<String> statements = new PostgreSQLDialect().getShadowColumnSwapStatements("tst_table", "ID", "ID_NEW", true,
+                                                                                         "PK_TST_TABLE", "UIX1_TST_TABLE_ID_NEW");
+        assertEquals(Arrays.asList("drop trigger if exists TRG_SYNC_TST_TABLE_ID on tst_table",
+                                   "drop function if exists TRG_SYNC_TST_TABLE_ID()",
+                                   "alter table tst_table drop constraint PK_TST_TABLE",
+                                   "alter table tst_table rename column ID to ID_OLD",
+                                   "alter table tst_table rename column ID_NEW to ID",
+                                   "alter table tst_table alter column ID set not null",
+                                   "alter table tst_table add constraint PK_TST_TABLE primary key using index UIX1_TST_TABLE_ID_NEW",
+                                   "alter table tst_table drop constraint NN_TST_TABLE_ID_NEW",
+                                   "alter table tst_table drop column ID_OLD"),
+                     statements);
+    }
+
+    @Test
+    public void testNotNullStatements() {
+        PostgreSQLDialect dialect = new PostgreSQLDialect();
+        assertEquals(Arrays.asList("alter table tst_table drop constraint if exists NN_TST_TABLE_STR_COL",
+                                   "alter table tst_table add constraint NN_TST_TABLE_STR_COL check (STR_COL is not null) not valid"),
+                     dialect.getNotNullConstraintStatements("tst_table", "STR_COL"));
+        assertEquals(Arrays.asList("alter table tst_table validate constraint NN_TST_TABLE_STR_COL"),
+                     dialect.getNotNullValidationStatements("tst_table", "STR_COL"));
+        assertEquals(Arrays.asList("alter table tst_table alter column STR_COL set not null",
+                                   "alter table tst_table drop constraint NN_TST_TABLE_STR_COL"),
+                     dialect.getNotNullPromotionStatements("tst_table", "STR_COL"));
+    }
+
+    @Test
+    public void testOnlineIndexStatements() {
+        PostgreSQLDialect dialect = new PostgreSQLDialect();
+        SchemaCreator schemaCreator = new SchemaCreator();
+        schemaCreator.setDialectName(DBType.POSTGRESQL);
+        assertEquals("create unique index concurrently app.UIX1_TST_TABLE_ID on app.TST_TABLE (ID)",
+                     schemaCreator.composeIndexCreationSql(new IndexDescription("ID").unique(), "app.UIX1_TST_TABLE_ID",
+                                                           "app.TST_TABLE", true, 0, false));
+        assertEquals("create index IX1_TST_TABLE_ID on TST_TABLE (ID)",
+                     schemaCreator.composeIndexCreationSql(new IndexDescription("ID"), "IX1_TST_TABLE_ID", "TST_TABLE", false, 4, true));
+        assertNull(dialect.getIndexBuildResetStatement("IX1_TST_TABLE_ID", 4, true));
+
+        assertEquals("drop index concurrently IX1_TST_TABLE_ID", dialect.getDropIndexStatement("IX1_TST_TABLE_ID", true));
+        assertEquals("drop index IX1_TST_TABLE_ID", dialect.getDropIndexStatement("IX1_TST_TABLE_ID", false));
+        assertEquals("drop index concurrently if exists app.IX1_TST_TABLE_ID",
+                     dialect.getOnlineIndexBuildCleanupStatement("app.IX1_TST_TABLE_ID"));
+        assertTrue(dialect.onlineIndexBuildsRequireAutoCommit());
+    }
+
+    @Test
+    public void testInvalidIndexes() {
+        final List<Object> args = new ArrayList<Object>();
+        JdbcTemplate template = new JdbcTemplate() {
+            @Override
+            public <T> List<T> queryForList(String sql, Class<T> elementType, Object... queryArgs) throws DataAccessException {
+                assertTrue(sql, sql.contains("not i.indisvalid"));
+                args.addAll(Arrays.asList(queryArgs));
+                return Collections.singletonList(elementType.cast("ix1_tst_table_id"));
+            }
+        };
+
+        PostgreSQLDialect dialect = new PostgreSQLDialect();
+        assertEquals(Collections.singleton("ix1_tst_table_id"), dialect.getInvalidIndexes("app.TST_TABLE", template));
+        assertEquals(Arrays.<Object>asList("tst_table", "app"), args);
+    }
+
+    @Test
+    public void testCatalogQueriesAreSchemaAware() {
+        final List<String> queries = new ArrayList<String>();
+        final List<Object> args = new ArrayList<Object>();
+        JdbcTemplate template = new JdbcTemplate() {
+            @Override
+            public void query(String sql, RowCallbackHandler rch, Object... queryArgs) throws DataAccessException {
+                queries.add(sql);
+                args.addAll(Arrays.asList(queryArgs));
+            }
+        };
+
+        PostgreSQLDialect dialect = new PostgreSQLDialect();
+        dialect.getIndexDefinitions("app.TST_TABLE", template);
+        assertEquals(1, queries.size()); // the PK isn't looked up on the side
+        assertTrue(queries.get(0).contains("pg_index"));
+        assertEquals(Arrays.<Object>asList("tst_table", "app"), args);
+
+        queries.clear();
+        args.clear();
+        dialect.getColumns("TST_TABLE", template);
+        assertTrue(queries.get(0).contains("pg_attribute"));
+        assertTrue(queries.get(0).contains("pg_table_is_visible"));
+        assertEquals(Arrays.<Object>asList("tst_table"), args);
+    }
+
+    @Test
+    public void testExistenceQueriesAreSchemaAware() {
+        final List<String> queries = new ArrayList<String>();
+        final List<Object> args = new ArrayList<Object>();
+        JdbcTemplate template = new JdbcTemplate() {
+            @Override
+            public <T> List<T> queryForList(String sql, Class<T> elementType, Object... queryArgs) throws DataAccessException {
+                queries.add(sql);
+                args.addAll(Arrays.asList(queryArgs));
+                return Collections.emptyList();
+            }
+        };
+
+        PostgreSQLDialect dialect = new PostgreSQLDialect();
+        assertFalse(dialect.tableExists("app.TST_TABLE", template));
+        assertTrue(queries.get(0).contains("n.nspname = ?"));
+        assertEquals(Arrays.<Object>asList("tst_table", "app"), args);
+
+        queries.clear();
+        args.clear();
+        assertFalse(dialect.indexExists("IX1_TST_TABLE", "TST_TABLE", template));
+        assertTrue(queries.get(0).contains("pg_table_is_visible"));
+        assertEquals(Arrays.<Object>asList("ix1_tst_table", "tst_table"), args);
+    }
+
+    @Test
+    public void testCatalogSnapshotTellsSchemasApart() {
+        JdbcTemplate template = new JdbcTemplate() {
+            @Override
+            public void query(String sql, RowCallbackHandler rch) throws DataAccessException {
+                if (sql.contains("reltuples")) {
+                    StubRows.feed(rch, StubRows.row("nspname", "public", "visible", true, "relname", "orders", "reltuples", 10),
+                                  StubRows.row("nspname", "archive", "visible", false, "relname", "orders", "reltuples", 1000));
+                } else if (sql.contains("pg_attribute")) {
+                    StubRows.feed(rch, columnRow("public", true, "id"), columnRow("archive", false, "id"),
+                                  columnRow("archive", false, "archived_at"));
+                } else if (sql.contains("pg_index")) {
+                    StubRows.feed(rch, StubRows.row("nspname", "archive", "visible", false, "tablename", "orders",
+                                                    "indexname", "ix1_orders_archived_at", "indisvalid", false,
+                                                    "indexdef", "CREATE INDEX ix1_orders_archived_at ON archive.orders USING btree (archived_at)"));
+                }
+            }
+        };
+
+        CatalogSnapshot snapshot = new PostgreSQLDialect().getCatalogSnapshot(template);
+        assertEquals(Collections.singleton("ID"), snapshot.getColumns("ORDERS").keySet());
+        assertEquals(Collections.singleton("ID"), snapshot.getColumns("public.orders").keySet());
+        assertEquals(2, snapshot.getColumns("ARCHIVE.ORDERS").size());
+        assertEquals(1000, snapshot.getRowEstimate("archive.orders"));
+        assertFalse(snapshot.indexExists("ix1_orders_archived_at", "orders"));
+        assertTrue(snapshot.indexExists("ix1_orders_archived_at", "archive.orders"));
+        assertEquals(Collections.singleton("ix1_orders_archived_at"), snapshot.getInvalidIndexes("archive.orders"));
+        assertTrue(snapshot.covers("archive.orders"));
+        assertFalse(snapshot.tableExists("other.orders"));
+    }
+
+    private static Map<String, Object> columnRow(String schema, boolean visible, String column) {
+        return StubRows.row("nspname", schema, "visible", visible, "table_name", "orders", "column_name", column,
+                            "data_type", "bigint", "character_maximum_length", null, "is_nullable", "f", "column_default", null);
+    }
+
+    @Test
+    public void testPartitionStatements() {
+        PostgreSQLDialect dialect = new PostgreSQLDialect();
+        PartitionDescription range = PartitionDescription.range("CREATED", PartitionDescription.Interval.MONTH);
+        assertEquals(" partition by range (CREATED)", dialect.getPartitionByClause("app.TST_EVENTS", range, null));
+
+        Date october = PartitionDescription.parseUpperBound("FOR VALUES FROM ('2026-09-01') TO ('2026-10-01')");
+        assertEquals("2026-10-01", PartitionDescription.formatDate(october));
+        assertEquals(october, range.getPeriodStart(PartitionDescription.parseUpperBound("2026-10-17")));
+        Date november = range.addPeriods(october, 1);
+        assertEquals("create table if not exists app.TST_EVENTS_P202610 partition of app.TST_EVENTS " +
+                     "for values from ('2026-10-01') to ('2026-11-01')",
+                     dialect.getRangePartitionCreationStatement("app.TST_EVENTS",
+                                                                SchemaUtil.composePartitionName("app.TST_EVENTS", range.getPeriodSuffix(october)),
+                                                                october, november));
+        assertEquals("alter table TST_EVENTS detach partition TST_EVENTS_P202610",
+                     dialect.getExpiredPartitionStatement("TST_EVENTS", "TST_EVENTS_P202610", false));
+        assertEquals(Collections.singletonList("create table app.TST_EVENTS_DEFAULT partition of app.TST_EVENTS default"),
+                     dialect.getPartitionCreationStatements("app.TST_EVENTS", range));
+        assertNull(PartitionDescription.parseUpperBound("DEFAULT"));
+
+        TableDescription events = new TableDescription("TST_EVENTS");
+        events.addColumn("ID").ofType(ColumnType.ID).notNullable();
+        events.addColumn("CREATED").ofType(ColumnType.DATE).notNullable();
+        events.setPrimaryKey(new IndexDescription("ID"));
+        events.setPartitioning(range);
+        SchemaCreator schemaCreator = new SchemaCreator();
+        schemaCreator.setDialectName(DBType.POSTGRESQL);
+        try {
+            schemaCreator.composeTableCreationSql(events);
+            fail("the PK doesn't include the partition column");
+        } catch (IllegalArgumentException expected) {
+        }
+        events.setPrimaryKey(new IndexDescription("ID", "CREATED"));
+        assertTrue(schemaCreator.composeTableCreationSql(events).endsWith(" partition by range (CREATED)"));
+
+        PartitionDescription list = PartitionDescription.list("REGION").addList("eu", "'DE'", "'FR'").addList("us", "'US'");
+        assertEquals(Arrays.asList("create table TST_EVENTS_EU partition of TST_EVENTS for values in ('DE', 'FR')",
+                                   "create table TST_EVENTS_US partition of TST_EVENTS for values in ('US')"),
+                     dialect.getPartitionCreationStatements("TST_EVENTS", list));
+
+        assertEquals(Arrays.asList("create table TST_EVENTS_P0 partition of TST_EVENTS for values with (modulus 2, remainder 0)",
+                                   "create table TST_EVENTS_P1 partition of TST_EVENTS for values with (modulus 2, remainder 1)"),
+                     dialect.getPartitionCreationStatements("TST_EVENTS", PartitionDescription.hash("ID", 2)));
+    }
+
+    @Test
+    public void testStorageParameters() {
+        PostgreSQLDialect dialect = new PostgreSQLDialect();
+        StorageOptions storage = new StorageOptions().fillFactor(70).autovacuumVacuumScaleFactor(0.05);
+        assertEquals(" with (autovacuum_vacuum_scale_factor=0.05, fillfactor=70)", dialect.getStorageClause(storage, false));
+
+        JdbcTemplate template = new JdbcTemplate() {
+            @Override
+            public <T> List<T> queryForList(String sql, Class<T> elementType, Object... args) throws DataAccessException {
+                return Collections.singletonList(elementType.cast("fillfactor=100,autovacuum_vacuum_scale_factor=0.05"));
+            }
+        };
+        Map<String, String> actual = dialect.readStorageParameters("TST_TABLE", null, template);
+        assertEquals("100", actual.get("fillfactor"));
+        assertEquals("0.05", actual.get("autovacuum_vacuum_scale_factor"));
+
+        Map<String, String> drifted = new TreeMap<String, String>();
+        drifted.put("fillfactor", "70");
+        assertEquals(Collections.singletonList("alter table TST_TABLE set (fillfactor=70)"),
+                     dialect.getStorageAlterationStatements("TST_TABLE", null, drifted));
+        assertEquals(Collections.singletonList("set (fillfactor=70)"), dialect.getStorageAlterationClauses(drifted));
+        assertEquals(Collections.singletonList("alter index app.IX1_TST_TABLE_ID set (fillfactor=70)"),
+                     dialect.getStorageAlterationStatements("app.TST_TABLE", "IX1_TST_TABLE_ID", drifted));
+    }
+
+    @Test
+    public void testColumnCompression() {
+        PostgreSQLDialect dialect = new PostgreSQLDialect();
+        final List<String> methods = new ArrayList<String>(Arrays.asList("pglz,lz4"));
+        JdbcTemplate template = new JdbcTemplate() {
+            @Override
+            public <T> List<T> queryForList(String sql, Class<T> elementType) throws DataAccessException {
+                assertTrue(sql.contains("default_toast_compression"));
+                List<T> result = new ArrayList<T>();
+                for (String method : methods) {
+                    result.add(elementType.cast(method));
+                }
+                return result;
+            }
+        };
+
+        List<String> compressionMethods = dialect.getCompressionMethods(template);
+        assertEquals(Arrays.asList("pglz", "lz4"), compressionMethods);
+        ColumnDescription column = new ColumnDescription("PAYLOAD").ofType(ColumnType.CLOB).compressed(Compression.MEDIUM);
+        assertEquals("extended lz4", dialect.getColumnCompression(column, compressionMethods));
+        assertEquals("extended pglz", dialect.getColumnCompression(column.compressed(Compression.HIGH), compressionMethods));
+        assertNull(dialect.getColumnCompression(new ColumnDescription("ID").ofType(ColumnType.LONG).compressed(Compression.HIGH),
+                                                compressionMethods));
+        assertEquals(Arrays.asList("alter column PAYLOAD set storage extended", "alter column PAYLOAD set compression lz4"),
+                     dialect.getColumnCompressionClauses("PAYLOAD", "extended lz4", "external default"));
+
+        methods.clear(); // before 14
+        assertEquals("extended", dialect.getColumnCompression(column, dialect.getCompressionMethods(template)));
+        assertEquals(Collections.singletonList("alter column PAYLOAD set storage extended"),
+                     dialect.getColumnCompressionClauses("PAYLOAD", "extended", "external"));
+    }
+}
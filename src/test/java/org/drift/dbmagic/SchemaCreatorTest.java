@@ -2,10 +2,15 @@ package org.drift.dbmagic;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.Assert.*;
 
@@ -73,11 +78,517 @@ public class SchemaCreatorTest {
     }
 
     @Test
-    public void testUpdate() throws SQLException {
-        if (DBType.getDbTypeByName(schemaCreator.getDialectName()).isH2()) {
-            return;
+    public void testCreateTablesFromCatalogSnapshot() throws SQLException {
+        TableDescription tableDescription = table.tableDescription();
+        TableDescription joinTableDescription = new TableDescription(TEST_TABLE_NAME + "_JOIN");
+        joinTableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.LONG).notNullable();
+        joinTableDescription.addColumn(ID1_COL_NAME).ofType(ColumnType.LONG).notNullable();
+        joinTableDescription.setPrimaryKey(new IndexDescription(ID_COL_NAME, ID1_COL_NAME));
+        tableDescription.addJoinTableDescription(joinTableDescription);
+
+        List<TableDescription> tables = Arrays.asList(tableDescription);
+        assertEquals(tables, schemaCreator.createTables(tables));
+        // second round runs against a snapshot that already contains everything
+        assertEquals(tables, schemaCreator.createTables(tables));
+
+        validateTable(table);
+        assertTrue(schemaCreator.tableExists(joinTableDescription.getTableName()));
+        assertTrue(schemaCreator.indexExists(SchemaUtil.composePKName(joinTableDescription.getTableName()),
+                                             joinTableDescription.getTableName()));
+    }
+
+    @Test
+    public void testCreateTablesInParallel() {
+        List<TableDescription> tables = new ArrayList<TableDescription>();
+        for (int i = 0; i < 6; i++) {
+            TableDescription tableDescription = new TableDescription(TEST_TABLE_NAME + "_P" + i);
+            tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+            tableDescription.addColumn(STR_COL_NAME).ofType(ColumnType.VARCHAR).ofSize(20);
+            tableDescription.setPrimaryKey(new IndexDescription(ID_COL_NAME));
+            tableDescription.addIndex(new IndexDescription(STR_COL_NAME));
+            tables.add(tableDescription);
+        }
+
+        schemaCreator.setParallelism(4);
+        Map<TableDescription, Exception> failures = new HashMap<TableDescription, Exception>();
+        assertEquals(tables, schemaCreator.createTables(tables, failures));
+        assertTrue(failures.isEmpty());
+
+        for (TableDescription tableDescription : tables) {
+            assertTrue(schemaCreator.tableExists(tableDescription.getTableName()));
+        }
+    }
+
+    @Test
+    public void testCreateTablesSequentiallyWithinTransaction() {
+        List<TableDescription> tables = new ArrayList<TableDescription>();
+        for (int i = 0; i < 3; i++) {
+            TableDescription tableDescription = new TableDescription(TEST_TABLE_NAME + "_TX" + i);
+            tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+            tables.add(tableDescription);
+        }
+
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        schemaCreator.addMigrationListener(new MigrationListener() {
+            public void onEvent(MigrationEvent event) {
+                if (event.getType() == MigrationEvent.Type.TABLE_START) {
+                    threads.add(Thread.currentThread());
+                }
+            }
+        });
+        schemaCreator.setBootstrapEnabled(false);
+        schemaCreator.setParallelism(4);
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            assertEquals(tables, schemaCreator.createTables(tables));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+        assertEquals(Collections.singleton(Thread.currentThread()), threads);
+    }
+
+    @Test
+    public void testNoOnlineChangesWithinTransaction() {
+        TableDescription tableDescription = new TableDescription(TEST_TABLE_NAME + "_TXN");
+        tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+        tableDescription.addColumn(INT_COL_NAME).ofType(ColumnType.INTEGER);
+        tableDescription.setPrimaryKey(new IndexDescription(ID_COL_NAME));
+        schemaCreator.createTables(Arrays.asList(tableDescription));
+        JdbcTemplate template = new JdbcTemplate(new DriverManagerDataSource("jdbc:h2:mem:test;DB_CLOSE_DELAY\\=-1;MVCC\\=TRUE", "sa", ""));
+        template.update("insert into " + tableDescription.getTableName() + " (ID) values (1)");
+
+        final List<MigrationStep.Type> types = new ArrayList<MigrationStep.Type>();
+        schemaCreator.addMigrationListener(new MigrationListener() {
+            public void onEvent(MigrationEvent event) {
+                if (event.getType() == MigrationEvent.Type.DDL_START) {
+                    types.add(event.getStepType());
+                }
+            }
+        });
+        schemaCreator.setOnlineNotNullChanges(true);
+        tableDescription.addColumn(INT_COL_NAME).ofType(ColumnType.INTEGER).ofDefaultValue("0").notNullable();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            schemaCreator.createTables(Arrays.asList(tableDescription));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+        assertFalse(types.contains(MigrationStep.Type.BACKFILL_COLUMN));
+        assertTrue(DialectFactory.getDialect(DBType.H2.toString()).getColumns(tableDescription.getTableName(), template)
+                                 .get(INT_COL_NAME).isNullable());
+    }
+
+    @Test
+    public void testCreateTablesScheduled() {
+        TableDescription tableDescription = new TableDescription(TEST_TABLE_NAME + "_S");
+        tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+        tableDescription.addColumn(INT_COL_NAME).ofType(ColumnType.INTEGER);
+        tableDescription.addColumn(STR_COL_NAME).ofType(ColumnType.VARCHAR).ofSize(20);
+        tableDescription.setPrimaryKey(new IndexDescription(ID_COL_NAME));
+        tableDescription.addIndex(new IndexDescription(INT_COL_NAME));
+        tableDescription.addIndex(new IndexDescription(STR_COL_NAME));
+
+        schemaCreator.setParallelism(4);
+        DdlScheduler scheduler = schemaCreator.createTablesScheduled(Arrays.asList(tableDescription));
+
+        assertEquals(4, scheduler.getSteps().size());
+        assertTrue(scheduler.getFailedSteps().isEmpty());
+        for (DdlStep step : scheduler.getSteps()) {
+            assertEquals(DdlStep.Status.DONE, step.getStatus());
+        }
+
+        List<DdlStep> criticalPath = scheduler.getCriticalPath();
+        assertEquals("create table " + tableDescription.getTableName(), criticalPath.get(0).getName());
+
+        for (IndexDescription indexDescription : tableDescription.getIndexes()) {
+            assertTrue(schemaCreator.indexExists(SchemaUtil.composeIndexName(indexDescription, tableDescription.getTableName()),
+                                                 tableDescription.getTableName()));
+        }
+
+        scheduler = schemaCreator.createTablesScheduled(Arrays.asList(tableDescription));
+        assertEquals(1, scheduler.getSteps().size());
+    }
+
+    @Test
+    public void testBootstrapEmptySchema() {
+        final AtomicInteger connections = new AtomicInteger();
+        DriverManagerDataSource ds = new DriverManagerDataSource("jdbc:h2:mem:bootstrap;DB_CLOSE_DELAY\\=-1", "sa", "") {
+            @Override
+            public Connection getConnection() throws SQLException {
+                connections.incrementAndGet();
+                return super.getConnection();
+            }
+        };
+        SchemaCreator bootstrapCreator = new SchemaCreator(ds, DBType.H2);
+
+        List<TableDescription> tables = new ArrayList<TableDescription>();
+        for (int i = 0; i < 5; i++) {
+            TableDescription tableDescription = new TableDescription(TEST_TABLE_NAME + "_B" + i);
+            tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+            tableDescription.addColumn(STR_COL_NAME).ofType(ColumnType.VARCHAR).ofSize(20).ofDefaultValue("x");
+            tableDescription.setPrimaryKey(new IndexDescription(ID_COL_NAME));
+            tableDescription.addIndex(new IndexDescription(STR_COL_NAME));
+            tables.add(tableDescription);
+        }
+
+        assertEquals(tables, bootstrapCreator.createTables(tables));
+        // one query to find the schema empty, one script creating everything
+        assertEquals(2, connections.get());
+
+        for (TableDescription tableDescription : tables) {
+            assertTrue(bootstrapCreator.tableExists(tableDescription.getTableName()));
+        }
+    }
+
+    @Test
+    public void testSkipUnchangedTablesByFingerprint() {
+        final AtomicInteger connections = new AtomicInteger();
+        DriverManagerDataSource ds = new DriverManagerDataSource("jdbc:h2:mem:fingerprints;DB_CLOSE_DELAY\\=-1", "sa", "") {
+            @Override
+            public Connection getConnection() throws SQLException {
+                connections.incrementAndGet();
+                return super.getConnection();
+            }
+        };
+        SchemaCreator fingerprintingCreator = new SchemaCreator(ds, DBType.H2);
+        fingerprintingCreator.setFingerprintsEnabled(true);
+
+        List<TableDescription> tables = new ArrayList<TableDescription>();
+        for (int i = 0; i < 3; i++) {
+            TableDescription tableDescription = new TableDescription(TEST_TABLE_NAME + "_F" + i);
+            tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+            tableDescription.setPrimaryKey(new IndexDescription(ID_COL_NAME));
+            tableDescription.addIndex(new IndexDescription(ID_COL_NAME, INT_COL_NAME));
+            tableDescription.addColumn(INT_COL_NAME).ofType(ColumnType.INTEGER);
+            tables.add(tableDescription);
+        }
+        assertEquals(tables, fingerprintingCreator.createTables(tables));
+
+        Map<String, String> fingerprints = SchemaFingerprints.load(new JdbcTemplate(ds));
+        assertEquals(3, fingerprints.size());
+        assertEquals(SchemaFingerprints.fingerprint(tables.get(0)), fingerprints.get(tables.get(0).getFullTableName()));
+
+        // nothing changed: just the fingerprints are read
+        connections.set(0);
+        assertEquals(tables, fingerprintingCreator.createTables(tables));
+        assertEquals(2, connections.get());
+
+        // dropped behind our back: caught by the spot check
+        new JdbcTemplate(ds).execute("drop table " + tables.get(1).getTableName());
+        fingerprintingCreator.setFingerprintSpotChecks(tables.size());
+        assertEquals(tables, fingerprintingCreator.createTables(tables));
+        assertTrue(fingerprintingCreator.tableExists(tables.get(1).getTableName()));
+    }
+
+    @Test
+    public void testPlanAndApply() {
+        TableDescription tableDescription = new TableDescription(TEST_TABLE_NAME + "_P");
+        tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+        tableDescription.addColumn(INT_COL_NAME).ofType(ColumnType.INTEGER);
+        tableDescription.setPrimaryKey(new IndexDescription(ID_COL_NAME));
+        tableDescription.addIndex(new IndexDescription(INT_COL_NAME));
+
+        MigrationPlan plan = schemaCreator.plan(Arrays.asList(tableDescription));
+
+        MigrationStep lastStep = plan.getSteps().get(plan.size() - 1);
+        assertEquals(MigrationStep.Type.CREATE_TABLE, plan.getSteps().get(0).getType());
+        assertEquals(MigrationStep.Type.ADD_PRIMARY_KEY, plan.getSteps().get(plan.size() - 2).getType());
+        assertEquals(MigrationStep.Type.CREATE_INDEX, lastStep.getType());
+        assertEquals(Collections.singleton(tableDescription.getTableName()), plan.getTableNames());
+        assertFalse(schemaCreator.tableExists(tableDescription.getTableName()));
+
+        DdlScheduler scheduler = schemaCreator.apply(plan);
+        assertTrue(scheduler.getFailedSteps().isEmpty());
+        assertTrue(schemaCreator.tableExists(tableDescription.getTableName()));
+        assertTrue(schemaCreator.indexExists(lastStep.getTarget(), tableDescription.getTableName()));
+
+        assertTrue(schemaCreator.plan(Arrays.asList(tableDescription)).isEmpty());
+    }
+
+    @Test
+    public void testPlannedBackfillFindsChunksWhenApplied() {
+        DriverManagerDataSource ds = new DriverManagerDataSource("jdbc:h2:mem:planfill;DB_CLOSE_DELAY\\=-1", "sa", "");
+        TableDescription tableDescription = new TableDescription(TEST_TABLE_NAME + "_F");
+        tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+        tableDescription.addColumn(INT_COL_NAME).ofType(ColumnType.INTEGER);
+        tableDescription.setPrimaryKey(new IndexDescription(ID_COL_NAME));
+        SchemaCreator creator = new SchemaCreator(ds, DBType.H2);
+        creator.createTables(Arrays.asList(tableDescription));
+        JdbcTemplate template = new JdbcTemplate(ds);
+        for (int id = 1; id <= 5; id++) {
+            template.update("insert into " + tableDescription.getTableName() + " (ID) values (?)", id);
+        }
+
+        final List<String> queries = new ArrayList<String>();
+        creator.addMigrationListener(new MigrationListener() {
+            public void onEvent(MigrationEvent event) {
+                if (event.getType() == MigrationEvent.Type.CATALOG_QUERY) {
+                    queries.add(event.getSql());
+                }
+            }
+        });
+        creator.setOnlineNotNullChanges(true);
+        tableDescription.addColumn(INT_COL_NAME).ofType(ColumnType.INTEGER).ofDefaultValue("0").notNullable();
+        MigrationPlan plan = creator.plan(Arrays.asList(tableDescription));
+        for (String sql : queries) {
+            assertFalse(sql, sql.contains(tableDescription.getTableName())); // the catalog only, not the data
+        }
+        List<MigrationStep> backfills = new ArrayList<MigrationStep>();
+        for (MigrationStep step : plan.getSteps()) {
+            if (step.getType() == MigrationStep.Type.BACKFILL_COLUMN) {
+                backfills.add(step);
+                assertNotNull(step.getChunking());
+            }
+        }
+        assertEquals(2, backfills.size()); // before the constraint is added and after
+
+        // rows the plan has never seen are backfilled all the same
+        template.update("insert into " + tableDescription.getTableName() + " (ID) values (1000)");
+        creator.setBackfillChunkSize(2);
+        assertTrue(creator.apply(plan).getFailedSteps().isEmpty());
+        assertEquals(0, template.queryForInt("select count(*) from " + tableDescription.getTableName() + " where INT_COL is null"));
+        Map<String, ColumnDescription> columns = DialectFactory.getDialect(DBType.H2.toString())
+                                                               .getColumns(tableDescription.getTableName(), template);
+        assertFalse(columns.get(INT_COL_NAME).isNullable());
+    }
+
+    @Test
+    public void testMigrationListenerAndMetrics() throws Exception {
+        TableDescription tableDescription = new TableDescription(TEST_TABLE_NAME + "_M");
+        tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+        tableDescription.addColumn(INT_COL_NAME).ofType(ColumnType.INTEGER);
+        tableDescription.setPrimaryKey(new IndexDescription(ID_COL_NAME));
+        tableDescription.addIndex(new IndexDescription(INT_COL_NAME));
+
+        final List<MigrationEvent> events = new ArrayList<MigrationEvent>();
+        MigrationMetrics metrics = new MigrationMetrics();
+        schemaCreator.addMigrationListener(metrics);
+        schemaCreator.addMigrationListener(new MigrationListener() {
+            public void onEvent(MigrationEvent event) {
+                events.add(event);
+            }
+        });
+        schemaCreator.setBootstrapEnabled(false);
+        schemaCreator.createTables(Arrays.asList(tableDescription));
+
+        Set<MigrationEvent.Type> types = new HashSet<MigrationEvent.Type>();
+        int ddlEnds = 0;
+        for (MigrationEvent event : events) {
+            types.add(event.getType());
+            if (event.getType() == MigrationEvent.Type.CATALOG_QUERY || event.getType() == MigrationEvent.Type.DDL_END) {
+                assertNotNull(event.getSql());
+            }
+            if (event.getType() == MigrationEvent.Type.DDL_END) {
+                ddlEnds++;
+                assertEquals(event.getSql(), 0, event.getAffected()); // a new table has no rows to rewrite
+            }
+            if (event.getType() == MigrationEvent.Type.CATALOG_QUERY) {
+                assertTrue(event.getSql(), event.getAffected() >= 0);
+            }
+        }
+        assertEquals(EnumSet.of(MigrationEvent.Type.CATALOG_QUERY, MigrationEvent.Type.TABLE_START, MigrationEvent.Type.DDL_START,
+                                MigrationEvent.Type.DDL_END, MigrationEvent.Type.TABLE_END), types);
+
+        MigrationEvent tableEnd = events.get(events.size() - 1);
+        assertEquals(MigrationEvent.Type.TABLE_END, tableEnd.getType());
+        assertEquals(tableDescription.getTableName(), tableEnd.getTableName());
+
+        assertEquals(1, metrics.getTablesSynced());
+        assertEquals(tableEnd.getAffected(), metrics.getDdlStatements());
+        assertEquals(ddlEnds, metrics.getDdlStatements());
+        assertEquals(Long.valueOf(1), metrics.getDdlStatementsByType().get(MigrationStep.Type.CREATE_TABLE.toString()));
+        assertEquals(0, metrics.getFailures());
+        assertTrue(metrics.getSlowestTables().containsKey(tableDescription.getTableName()));
+
+        metrics.register("test");
+        try {
+            Object tablesSynced = ManagementFactory.getPlatformMBeanServer().getAttribute(metrics.getObjectName(), "TablesSynced");
+            assertEquals(1L, tablesSynced);
+        } finally {
+            metrics.unregister();
+        }
+    }
+
+    @Test
+    public void testBackfillChunks() {
+        DriverManagerDataSource ds = new DriverManagerDataSource("jdbc:h2:mem:chunks;DB_CLOSE_DELAY\\=-1", "sa", "");
+        JdbcTemplate template = new JdbcTemplate(ds);
+        template.execute("create table TST_CHUNKS (ID bigint primary key, STR_COL varchar(20))");
+        for (long id : new long[]{1, 2, 3, 1000, 1000000, Long.MAX_VALUE}) {
+            template.update("insert into TST_CHUNKS values (?, ?)", id, id == 2 ? "x" : null);
+        }
+
+        // sparse keys make no empty chunks
+        String query = DialectFactory.getDialect(DBType.H2.toString()).getBackfillChunkQuery("TST_CHUNKS", ID_COL_NAME, null, 2);
+        Map<String, Object> chunk = template.queryForMap(query, 1L);
+        assertEquals(2L, ((Number) chunk.get("HI")).longValue());
+        assertEquals(2L, ((Number) chunk.get("N")).longValue());
+        chunk = template.queryForMap(query, 3L);
+        assertEquals(1000L, ((Number) chunk.get("HI")).longValue());
+        chunk = template.queryForMap(query, 1000001L);
+        assertEquals(Long.MAX_VALUE, ((Number) chunk.get("HI")).longValue());
+        assertEquals(1L, ((Number) chunk.get("N")).longValue());
+
+        query = DialectFactory.getDialect(DBType.H2.toString()).getBackfillChunkQuery("TST_CHUNKS", ID_COL_NAME, "STR_COL is null", 3);
+        chunk = template.queryForMap(query, 1L);
+        assertEquals(1000L, ((Number) chunk.get("HI")).longValue());
+        assertEquals(3L, ((Number) chunk.get("N")).longValue());
+        chunk = template.queryForMap(query, 1001L);
+        assertEquals(Long.MAX_VALUE, ((Number) chunk.get("HI")).longValue());
+        assertEquals(2L, ((Number) chunk.get("N")).longValue());
+
+        query = DialectFactory.getDialect(DBType.H2.toString()).getBackfillChunkQuery("TST_CHUNKS", ID_COL_NAME, "STR_COL is not null", 3);
+        assertNull(template.queryForMap(query, 3L).get("HI")); // past the last row
+    }
+
+    @Test
+    public void testDatabaseWideCompressionSetOncePerSync() {
+        DriverManagerDataSource ds = new DriverManagerDataSource("jdbc:h2:mem:compression;DB_CLOSE_DELAY\\=-1", "sa", "");
+        SchemaCreator creator = new SchemaCreator(ds, DBType.H2);
+        creator.setBootstrapEnabled(false);
+        final List<String> statements = new ArrayList<String>();
+        creator.addMigrationListener(new MigrationListener() {
+            public void onEvent(MigrationEvent event) {
+                if (event.getType() == MigrationEvent.Type.DDL_END && event.getSql().contains("compress_lob")) {
+                    statements.add(event.getSql());
+                }
+            }
+        });
+
+        List<TableDescription> tables = new ArrayList<TableDescription>();
+        for (String tableName : new String[]{"TST_DOCS", "TST_NOTES"}) {
+            TableDescription tableDescription = new TableDescription(tableName);
+            tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+            tableDescription.addColumn("BODY").ofType(ColumnType.CLOB).compressed(Compression.MEDIUM);
+            tableDescription.addColumn("SUMMARY").ofType(ColumnType.CLOB).compressed(Compression.HIGH);
+            tables.add(tableDescription);
         }
+        creator.createTables(tables);
+        assertEquals(Collections.singletonList("set compress_lob deflate"), statements);
+    }
+
+    @Test
+    public void testLongIndexNames() {
+        IndexDescription index = new IndexDescription("CUSTOMER_ID", "CREATED_AT").where("STATUS = 'PENDING'");
+        String name = SchemaUtil.composeIndexName(index, "CUSTOMER_ORDER_HISTORY", 30);
+        String fullName = SchemaUtil.composeIndexName(index, "CUSTOMER_ORDER_HISTORY");
+        assertEquals(30, name.length());
+        assertTrue(name.startsWith("IX1_CUST"));
+        assertTrue(SchemaUtil.isManagedIndexName(name));
+        assertEquals(fullName.substring(fullName.lastIndexOf("_W")), name.substring(name.lastIndexOf("_W")));
+
+        // cut the same way, told apart by the hash
+        String otherName = SchemaUtil.composeIndexName(new IndexDescription("CUSTOMER_ID", "UPDATED_AT").where("STATUS = 'PENDING'"),
+                                                       "CUSTOMER_ORDER_HISTORY", 30);
+        assertFalse(name.equals(otherName));
+        assertEquals(fullName, SchemaUtil.composeIndexName(index, "CUSTOMER_ORDER_HISTORY", 63));
+    }
+
+    @Test
+    public void testIncrementalSync() {
+        DriverManagerDataSource ds = new DriverManagerDataSource("jdbc:h2:mem:resync;DB_CLOSE_DELAY\\=-1", "sa", "");
+        TableDescription tableDescription = new TableDescription(TEST_TABLE_NAME + "_R");
+        tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+        tableDescription.addColumn(INT_COL_NAME).ofType(ColumnType.INTEGER);
+        tableDescription.addColumn(STR_COL_NAME).ofType(ColumnType.VARCHAR).ofSize(20).notNullable();
+        tableDescription.addColumn(STR1_COL_NAME).ofType(ColumnType.VARCHAR).ofDefaultValue("Chupacabra");
+        tableDescription.setPrimaryKey(new IndexDescription(ID_COL_NAME));
+        tableDescription.addIndex(new IndexDescription(INT_COL_NAME));
+        new SchemaCreator(ds, DBType.H2).createTables(Arrays.asList(tableDescription));
+
+        JdbcTemplate template = new JdbcTemplate(ds);
+        template.update("insert into " + tableDescription.getTableName() + " (ID, STR_COL) values (1, 'x')");
+
+        // a database left over by a previous run is only patched
+        final List<String> statements = new ArrayList<String>();
+        SchemaCreator resyncCreator = new SchemaCreator(ds, DBType.H2);
+        resyncCreator.setOnlineNotNullChanges(true);
+        resyncCreator.addMigrationListener(new MigrationListener() {
+            public void onEvent(MigrationEvent event) {
+                if (event.getType() == MigrationEvent.Type.DDL_START) {
+                    statements.add(event.getSql());
+                }
+            }
+        });
+        resyncCreator.createTables(Arrays.asList(tableDescription));
+        assertEquals(Collections.<String>emptyList(), statements);
+
+        tableDescription.addColumn(INT_COL_NAME).ofType(ColumnType.INTEGER).ofDefaultValue("0").notNullable();
+        tableDescription.addColumn(STR_COL_NAME).ofType(ColumnType.VARCHAR).ofSize(30).notNullable();
+        tableDescription.addColumn(STR1_COL_NAME).ofType(ColumnType.VARCHAR).ofDefaultValue("Manute");
+        tableDescription.addColumn(BOOL_COL_NAME).ofType(ColumnType.BOOLEAN);
+        tableDescription.addIndex(new IndexDescription(STR_COL_NAME, BOOL_COL_NAME));
+        resyncCreator.createTables(Arrays.asList(tableDescription));
+        assertFalse(statements.isEmpty());
+
+        Map<String, ColumnDescription> columns = DialectFactory.getDialect(DBType.H2.toString())
+            .getColumns(tableDescription.getTableName(), template);
+        assertEquals(Integer.valueOf(30), columns.get(STR_COL_NAME).getSize());
+        assertFalse(columns.get(STR_COL_NAME).isNullable());
+        assertEquals("Manute", columns.get(STR1_COL_NAME).getDefaultValue());
+        assertFalse(columns.get(INT_COL_NAME).isNullable());
+        assertTrue(columns.containsKey(BOOL_COL_NAME));
+        assertEquals(0, template.queryForInt("select INT_COL from " + tableDescription.getTableName()));
+        assertTrue(resyncCreator.indexExists(SchemaUtil.composeIndexName(new IndexDescription(STR_COL_NAME, BOOL_COL_NAME),
+                                                                         tableDescription.getTableName()),
+                                             tableDescription.getTableName()));
+
+        statements.clear();
+        resyncCreator.createTables(Arrays.asList(tableDescription));
+        assertEquals(Collections.<String>emptyList(), statements);
+    }
 
+    @Test
+    public void testPartialAndCoveringIndexes() {
+        IndexDescription pending = new IndexDescription(ID_COL_NAME).include(INT_COL_NAME).where("STR_COL = 'PENDING'");
+        String indexName = SchemaUtil.composeIndexName(pending, TEST_TABLE_NAME);
+        assertTrue(indexName.startsWith("IX1_TST_TABLE_ID_W"));
+
+        SchemaCreator postgreSQLCreator = new SchemaCreator(null, DBType.POSTGRESQL);
+        assertEquals("create index " + indexName + " on TST_TABLE (ID) include (INT_COL) where STR_COL = 'PENDING'",
+                     postgreSQLCreator.composeIndexCreationSql(pending, indexName, TEST_TABLE_NAME, false, 0, false));
+        SchemaCreator oracleCreator = new SchemaCreator(null, DBType.ORACLE);
+        assertEquals("create index " + indexName + " on TST_TABLE ((case when STR_COL = 'PENDING' then ID end))",
+                     oracleCreator.composeIndexCreationSql(new IndexDescription(ID_COL_NAME).where("STR_COL = 'PENDING'"),
+                                                           indexName, TEST_TABLE_NAME, false, 0, false));
+
+        IndexDescription parsed = PostgreSQLDialect.parseIndexDefinition(
+            "CREATE INDEX ix ON public.tst_table USING btree (id) INCLUDE (int_col) WHERE ((str_col)::text = 'PENDING'::text)");
+        assertEquals(Arrays.asList(ID_COL_NAME), parsed.getColumnNames());
+        assertEquals(Arrays.asList(INT_COL_NAME), parsed.getIncludedColumnNames());
+        assertEquals("((str_col)::text = 'PENDING'::text)", parsed.getPredicate());
+
+        // H2 has neither: the index covers all the rows, with the included column as a key column, and stays put on resync
+        DriverManagerDataSource ds = new DriverManagerDataSource("jdbc:h2:mem:partial;DB_CLOSE_DELAY\\=-1", "sa", "");
+        TableDescription tableDescription = new TableDescription(TEST_TABLE_NAME + "_P");
+        tableDescription.addColumn(ID_COL_NAME).ofType(ColumnType.ID).notNullable();
+        tableDescription.addColumn(INT_COL_NAME).ofType(ColumnType.INTEGER);
+        tableDescription.addColumn(STR_COL_NAME).ofType(ColumnType.VARCHAR).ofSize(20);
+        tableDescription.addIndex(pending);
+        tableDescription.addIndex(new IndexDescription(INT_COL_NAME).unique().where("STR_COL = 'PENDING'"));
+        SchemaCreator h2Creator = new SchemaCreator(ds, DBType.H2);
+        h2Creator.createTables(Arrays.asList(tableDescription));
+
+        Map<String, IndexDescription> indexes = DialectFactory.getDialect(DBType.H2.toString())
+            .getIndexDefinitions(tableDescription.getTableName(), new JdbcTemplate(ds));
+        assertEquals(1, indexes.size()); // a unique index can't be partial here
+        assertEquals(Arrays.asList(ID_COL_NAME, INT_COL_NAME),
+                     indexes.get(SchemaUtil.composeIndexName(pending, tableDescription.getTableName())).getColumnNames());
+
+        final List<String> statements = new ArrayList<String>();
+        h2Creator.addMigrationListener(new MigrationListener() {
+            public void onEvent(MigrationEvent event) {
+                if (event.getType() == MigrationEvent.Type.DDL_START) {
+                    statements.add(event.getSql());
+                }
+            }
+        });
+        h2Creator.createTables(Arrays.asList(tableDescription));
+        assertEquals(Collections.<String>emptyList(), statements);
+    }
+
+    @Test
+    public void testUpdate() throws SQLException {
         schemaCreator.createTable(table);
 
         DBTable table1 = new DBTable() {
@@ -141,7 +652,7 @@ public class SchemaCreatorTest {
 
         for (IndexDescription indexDescription : tableDescription.getIndexes()) {
             String indexName = SchemaUtil.composeIndexName(indexDescription, tableName);
-            assertTrue(schemaCreator.indexExists(indexName, tableName));
+            assertTrue(indexName, schemaCreator.indexExists(indexName, tableName));
         }
 
         IndexDescription pk = tableDescription.getPrimaryKey();
@@ -188,4 +699,24 @@ public class SchemaCreatorTest {
         assertEquals("ID", columnDescription.getName());
         assertEquals(ColumnType.ID, columnDescription.getType());
     }
+
+    @Test
+    public void testCachedTableDescriptionsFromJPA() {
+        TableDescription tableDescription = TableDescriptionUtil.getTableDescription(TstJPAEntity.class);
+        tableDescription.addColumn("EXTRA").ofType(ColumnType.INTEGER);
+
+        // every call gets a copy of its own
+        TableDescription other = TableDescriptionUtil.getTableDescription(TstJPAEntity.class);
+        assertNotSame(tableDescription, other);
+        assertNull(other.getColumns().get("EXTRA"));
+
+        List<Class<?>> classes = new ArrayList<Class<?>>();
+        for (int i = 0; i < 200; i++) {
+            classes.add(TstJPAEntity.class);
+            classes.add(Object.class);
+        }
+        List<TableDescription> tables = TableDescriptionUtil.getTableDescriptions(classes);
+        assertEquals(200, tables.size());
+        assertEquals(other.getColumns(), tables.get(199).getColumns());
+    }
 }
@@ -0,0 +1,76 @@
+package org.drift.dbmagic;
+
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Rows of a catalog query, fed to the RowCallbackHandler of a dialect the way JdbcTemplate would feed the ResultSet.
+ * Only reading the current row by column label is supported.
+ *
+ * @author Dima Frid
+ */
+class StubRows {
+
+    /**
+     * @param columnsAndValues column label, value, column label, value...
+     */
+    static Map<String, Object> row(Object... columnsAndValues) {
+        Map<String, Object> row = new TreeMap<String, Object>(String.CASE_INSENSITIVE_ORDER);
+        for (int i = 0; i < columnsAndValues.length; i += 2) {
+            row.put((String) columnsAndValues[i], columnsAndValues[i + 1]);
+        }
+        return row;
+    }
+
+    static void feed(RowCallbackHandler rch, Map<String, Object>... rows) {
+        for (Map<String, Object> row : rows) {
+            try {
+                rch.processRow(resultSet(row));
+            } catch (SQLException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static ResultSet resultSet(final Map<String, Object> row) {
+        return (ResultSet) Proxy.newProxyInstance(StubRows.class.getClassLoader(), new Class[]{ResultSet.class}, new InvocationHandler() {
+            private Object last;
+
+            public Object invoke(Object proxy, Method method, Object[] args) {
+                String name = method.getName();
+                if (name.equals("wasNull")) {
+                    return last == null;
+                }
+                if (!name.startsWith("get") || args == null || args.length != 1 || !(args[0] instanceof String)) {
+                    throw new UnsupportedOperationException(name);
+                }
+
+                if (!row.containsKey((String) args[0])) {
+                    throw new IllegalArgumentException("No column " + args[0]);
+                }
+                last = row.get(args[0]);
+                Class<?> type = method.getReturnType();
+                if (type == String.class) {
+                    return last == null ? null : String.valueOf(last);
+                }
+                if (type == boolean.class) {
+                    return last != null && Boolean.valueOf(String.valueOf(last));
+                }
+                if (type == int.class) {
+                    return last == null ? 0 : ((Number) last).intValue();
+                }
+                if (type == long.class) {
+                    return last == null ? 0L : ((Number) last).longValue();
+                }
+                return last;
+            }
+        });
+    }
+}